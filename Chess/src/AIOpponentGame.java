@@ -1,9 +1,43 @@
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * A game against MiniMax. While the human thinks, the AI ponders: it guesses
+ * the human's move (the reply its own search expected) and searches the board
+ * after it on a background thread. If the human plays that move, the search is
+ * already under way and the AI answers as soon as the think time, counted
+ * from when pondering began, is up, usually at once. Otherwise the pondering
+ * search is stopped, and what it left in the transposition table still makes
+ * the real search quicker. Without a guess the AI ponders the human's board.
+ * <p>
+ * Before any of that the AI looks the board up in the opening book (see
+ * OpeningBook.defaultBook), and plays a book move without searching.
+ */
 public class AIOpponentGame extends Game implements GameWithOpponent {
     
+    public static final long DEFAULT_THINK_TIME = 2000; //milliseconds per AI move
+    public static final long PONDER_TIME_LIMIT = 60000; //longest the AI ponders, in milliseconds
+    private static final long STOP_POLL_MILLIS = 10; //how often a search that hasn't stopped yet is asked again
+    
     private String team;
     private MiniMax ai;
+    private MiniMax ponderAi; //searches on the ponder thread, sharing ai's transposition table
+    private OpeningBook book = OpeningBook.defaultBook(); //null if there is no book
+    private long thinkTime;
+    private char pendingPromotion = 0; //piece for the pawn the AI just moved to the last row, 0 if none
+    private boolean pondering = true;
+    private ExecutorService ponderThread; //created the first time the AI ponders
+    private Future<Integer> ponderSearch; //the running (or finished) pondering search, null if none
+    private long ponderKey; //Zobrist key of the board being pondered
+    private long ponderStart; //when pondering began, in System.currentTimeMillis() time
+    private int bookMoves = 0; //AI moves played from the opening book
+    private int ponderHits = 0; //AI moves the pondering search found
+    private int ponderMisses = 0; //AI moves searched after a wrong guess
 
     @Override
     public String getTeam() {
@@ -16,9 +50,21 @@ public class AIOpponentGame extends Game implements GameWithOpponent {
      *             is playing as
      */
     public AIOpponentGame(String team){
+        this(team, DEFAULT_THINK_TIME);
+    }
+    
+    /**
+     * Creates a new game using the default fen and given team
+     * @param team The team, "white" or "black", that this player
+     *             is playing as
+     * @param thinkTime How long the AI may think about each move, in milliseconds
+     */
+    public AIOpponentGame(String team, long thinkTime){
         super();
         this.team = team;
-        ai = new MiniMax();
+        this.thinkTime = thinkTime;
+        ai = createAI(thinkTime);
+        ponderAi = createPonderAI(ai);
     }
     
     /**
@@ -27,25 +73,215 @@ public class AIOpponentGame extends Game implements GameWithOpponent {
      *             is playing as
      * @param fens The fen list for the game up until this point
      */
-    public AIOpponentGame(String team, ArrayList<String> fens){
+    public AIOpponentGame(String team, List<String> fens){
+        this(team, fens, DEFAULT_THINK_TIME);
+    }
+    
+    /**
+     * Creates a new game using the given fen list and given team
+     * @param team The team, "white" or "black", that this player
+     *             is playing as
+     * @param fens The fen list for the game up until this point
+     * @param thinkTime How long the AI may think about each move, in milliseconds
+     */
+    public AIOpponentGame(String team, List<String> fens, long thinkTime){
         super(fens);
         this.team = team;
-        ai = new MiniMax();
+        this.thinkTime = thinkTime;
+        ai = createAI(thinkTime);
+        ponderAi = createPonderAI(ai);
+    }
+    
+    /**
+     * Creates the AI, which searches as deep as it can in the given time
+     * @param thinkTime Time per move in milliseconds
+     * @return the AI
+     */
+    private static MiniMax createAI(long thinkTime){
+        MiniMax ai = new MiniMax(MiniMax.MAX_DEPTH);
+        ai.setTimeLimit(thinkTime);
+        return ai;
+    }
+    
+    /**
+     * Creates the AI that ponders. It has its own time limit and stop, so the
+     * two never change each other's settings, but shares the transposition
+     * table so the real search finds what pondering left there
+     * @param ai The AI that makes the moves
+     * @return the pondering AI
+     */
+    private static MiniMax createPonderAI(MiniMax ai){
+        MiniMax ponderAi = new MiniMax(MiniMax.MAX_DEPTH, ai.table, new PositionalBoardEvaluator());
+        ponderAi.setTimeLimit(PONDER_TIME_LIMIT);
+        return ponderAi;
+    }
+    
+    /**
+     * Turns pondering on or off. Turning it off stops any pondering search.
+     * @param pondering true to let the AI think on the human's time
+     */
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) {
+            stopPondering();
+        }
+    }
+    
+    /**
+     * Sets the opening book the AI plays from
+     * @param book The book, or null to always search
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+    
+    /**
+     * Returns how many of the AI's moves came from the opening book
+     * @return the number of book moves
+     */
+    public int getBookMoves() {
+        return bookMoves;
     }
     
     /**
-     * Applies the AI move.
+     * Returns how many of the AI's moves the pondering search found because
+     * the human made the guessed move
+     * @return the number of ponder hits
+     */
+    public int getPonderHits() {
+        return ponderHits;
+    }
+    
+    /**
+     * Returns how many of the AI's moves had to be searched after pondering
+     * because the human made another move (or the pondering search failed)
+     * @return the number of ponder misses
+     */
+    public int getPonderMisses() {
+        return ponderMisses;
+    }
+    
+    /**
+     * Stops the pondering search, if there is one, and forgets it. For when
+     * the game is abandoned while the human is thinking.
+     */
+    public void stopPondering() {
+        if (ponderSearch != null) {
+            stopSearch(ponderSearch);
+            ponderSearch = null;
+        }
+    }
+    
+    /**
+     * Applies the AI move. The AI promotes a pawn in one move but Game does it
+     * in two, so the pawn is moved first and the piece it promotes to is
+     * remembered for when the display asks for the next move.
      * @param disp The display to update 
      */
     @Override
     public void doOpponentMove(Display disp) {
-        Move aiMove = ai.doMiniMax(disp.currentGame.currentBoard);
-        if (aiMove.isPawnPromotion) {
-            disp.attemptPawnPromotion("" + aiMove.getPromotionPiece());
+        if (pendingPromotion != 0 && currentBoard.promotingPawn() != null) {
+            char piece = pendingPromotion;
+            pendingPromotion = 0;
+            disp.attemptPawnPromotion("" + piece);
+            return;
+        }
+        pendingPromotion = 0;
+        int aiMove = book == null ? CompactMove.NONE : book.move(currentBoard);
+        if (aiMove != CompactMove.NONE) {
+            bookMoves++;
+            stopPondering();
         } else {
-            int startIndex = aiMove.getStartIndex();
-            int endIndex = aiMove.getEndIndex();
-            disp.attemptMove(startIndex, endIndex);
+            aiMove = finishPondering();
+        }
+        if (aiMove == CompactMove.NONE) {
+            aiMove = ai.search(currentBoard);
+        }
+        if (CompactMove.hasFlag(aiMove, CompactMove.PROMOTE_IN_PLACE)) {
+            disp.attemptPawnPromotion("" + BitBoard.PIECES.charAt(CompactMove.promotion(aiMove)));
+        } else {
+            if (CompactMove.isPromotion(aiMove)) {
+                pendingPromotion = BitBoard.PIECES.charAt(CompactMove.promotion(aiMove));
+            }
+            disp.attemptMove(CompactMove.from(aiMove), CompactMove.to(aiMove));
+        }
+        startPondering();
+    }
+    
+    /**
+     * Starts pondering if it's the human's turn and the AI isn't already
+     */
+    private void startPondering() {
+        if (!pondering || ponderSearch != null || !inProgress || !isLocalPlayersTurn()
+                || currentBoard.promotingPawn() != null) {
+            return;
+        }
+        Board board = Board.fromFen(currentBoard.getFen());
+        int guess = ai.tableMove(board);
+        if (guess != CompactMove.NONE) {
+            board.makeMove(guess);
+        }
+        ponderKey = board.zobristKey();
+        ponderStart = System.currentTimeMillis();
+        if (ponderThread == null) {
+            ponderThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "ponder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        ponderSearch = ponderThread.submit(() -> ponderAi.search(board));
+    }
+    
+    /**
+     * Ends pondering now that the human has moved. On a hit (the human made
+     * the guessed move) the search runs until the think time is up, counting
+     * from when it started, and its move is returned.
+     * @return the move to play, or CompactMove.NONE if the AI has to search
+     */
+    private int finishPondering() {
+        if (ponderSearch == null) {
+            return CompactMove.NONE;
+        }
+        Future<Integer> search = ponderSearch;
+        ponderSearch = null;
+        boolean hit = currentBoard.zobristKey() == ponderKey;
+        long remaining = ponderStart + thinkTime - System.currentTimeMillis();
+        if (hit && remaining > 0) {
+            try {
+                search.get(remaining, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //used up its time, stopped below
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+        int move = stopSearch(search);
+        if (hit && move != CompactMove.NONE) {
+            ponderHits++;
+            return move;
+        }
+        ponderMisses++;
+        return CompactMove.NONE;
+    }
+    
+    /**
+     * Stops a search running on the ponder thread and waits for it
+     * @param search The search
+     * @return its move, or CompactMove.NONE if it failed
+     */
+    private int stopSearch(Future<Integer> search) {
+        while (true) {
+            //a search that hasn't started yet clears the stop when it does, so keep asking
+            ponderAi.stop();
+            try {
+                return search.get(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //not stopped yet
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+                return CompactMove.NONE;
+            }
         }
     }
     
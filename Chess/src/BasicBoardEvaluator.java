@@ -10,43 +10,58 @@ public class BasicBoardEvaluator {
         int score = 0;
         for (int i = 0; i < 8; i++) {
             for (int j = 0; j < 8; j++){
-                char currentChar = fen.charAt(i * 8 + j);
-                switch (currentChar) {
-                    case 'p':
-                        score += 10 + i;
-                        break;
-                    case 'r':
-                        score += 40 + i * 2;
-                        break;
-                    case 'h':
-                        score += 40 + i * 2;
-                        break;
-                    case 'b':
-                        score += 40 + i * 2;
-                        break;
-                    case 'q':
-                        score += 100 + i * 2;
-                        break;
-                    case 'P':
-                        score -= (10 + (7 - i));
-                        break;
-                    case 'R':
-                        score -= (40 + (7 - i) * 2);
-                        break;
-                    case 'H':
-                        score -= (40 + (7 - i) * 2);
-                        break;
-                    case 'B':
-                        score -= (40 + (7 - i) * 2);
-                        break;
-                    case 'Q':
-                        score -= (100 + (7 - i) * 2);
-                        break;
-                    default:
-                        break;
-                }     
+                score += pieceScore(fen.charAt(i * 8 + j), i);
             }
         }
         return score; 
     }
+    
+    /**
+     * Evaluates the given board without building its fen, so it works the
+     * same on any Board backend
+     * @param board The board to evaluate
+     * @return The score. High number = good for white. negative number = good for black
+     */
+    public static int evaluate(Board board) {
+        int score = 0;
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++){
+                score += pieceScore(board.fenChar(i * 8 + j), i);
+            }
+        }
+        return score;
+    }
+    
+    /**
+     * Returns the score for a single piece
+     * @param currentChar The fen char of the piece
+     * @param i The row the piece is on, 0 - 7
+     * @return The score. Positive for white pieces, negative for black
+     */
+    private static int pieceScore(char currentChar, int i) {
+        switch (currentChar) {
+            case 'p':
+                return 10 + i;
+            case 'r':
+                return 40 + i * 2;
+            case 'h':
+                return 40 + i * 2;
+            case 'b':
+                return 40 + i * 2;
+            case 'q':
+                return 100 + i * 2;
+            case 'P':
+                return -(10 + (7 - i));
+            case 'R':
+                return -(40 + (7 - i) * 2);
+            case 'H':
+                return -(40 + (7 - i) * 2);
+            case 'B':
+                return -(40 + (7 - i) * 2);
+            case 'Q':
+                return -(100 + (7 - i) * 2);
+            default:
+                return 0;
+        }
+    }
 }
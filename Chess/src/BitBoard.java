@@ -0,0 +1,951 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A Board backed by twelve 64 bit piece bitboards instead of a fen String.
+ * Bit i of each bitboard is fen index i, so a1 is bit 0 and h8 is bit 63.
+ * The rest of the fen (turn, has-moved flags and the double jumper) is
+ * packed into a single int. Converting to and from the fen is exact, so
+ * a BitBoard can be used anywhere a Board is.
+ */
+public class BitBoard extends Board {
+    
+    public static final String PIECES = "prhbqkPRHBQK"; //piece index -> fen char
+    private static final char[] PIECE_CHARS = PIECES.toCharArray();
+    public static final int EMPTY = -1;
+    public static final int WHITE = 0;
+    public static final int BLACK = 1;
+    
+    //layout of the packed state
+    static final int TURN_BIT = 1; //set when it is black's turn
+    static final int HAS_MOVED_SHIFT = 1; //6 has-moved flags, in fen order
+    static final int DOUBLE_JUMPER_Y_SHIFT = 7;
+    static final int DOUBLE_JUMPER_X_SHIFT = 11;
+    static final int DOUBLE_JUMPER_MASK = 0xF;
+    
+    static final long FIRST_ROW = 0xFFL;
+    static final long LAST_ROW = 0xFFL << 56;
+    
+    //piece types, i.e. piece index % 6
+    static final int PAWN = 0;
+    static final int ROOK = 1;
+    static final int HORSE = 2;
+    static final int BISHOP = 3;
+    static final int QUEEN = 4;
+    static final int KING = 5;
+    private static final int[] PROMOTION_TYPES = {ROOK, BISHOP, HORSE, QUEEN}; //same order as Board
+    
+    //which moves generateMoves generates
+    private static final int ALL_MOVES = 0;
+    private static final int CAPTURES = 1; //captures and promotions
+    private static final int QUIETS = 2; //everything else
+    
+    //target squares from each square, in the order Board tries them
+    private static final int[][] HORSE_TARGETS = targets(new int[][] {{2, 1}, {-2, 1}, {-2, -1}, {2, -1},
+                                                                       {1, 2}, {-1, 2}, {1, -2}, {-1, -2}});
+    private static final int[][] KING_TARGETS = targets(new int[][] {{1, 1}, {1, 0}, {1, -1}, {0, -1},
+                                                                      {-1, -1}, {-1, 0}, {-1, 1}, {0, 1}});
+    //attacked squares from each square, as bitboards
+    static final long[] HORSE_ATTACKS = attacks(HORSE_TARGETS);
+    static final long[] KING_ATTACKS = attacks(KING_TARGETS);
+    static final long[][] PAWN_ATTACKS = new long[2][64]; //[side][square]
+    //squares strictly between two squares on the same row, column or diagonal, 0 otherwise
+    private static final long[][] BETWEEN = new long[64][64];
+    static {
+        for (int square = 0; square < 64; square++) {
+            int y = square / 8;
+            int x = square % 8;
+            for (int dx = -1; dx <= 1; dx += 2) {
+                if (x + dx >= 0 && x + dx < 8) {
+                    if (y < 7) {
+                        PAWN_ATTACKS[WHITE][square] |= 1L << (square + 8 + dx);
+                    }
+                    if (y > 0) {
+                        PAWN_ATTACKS[BLACK][square] |= 1L << (square - 8 + dx);
+                    }
+                }
+            }
+            for (int dy = -1; dy <= 1; dy++) {
+                for (int dx = -1; dx <= 1; dx++) {
+                    long between = 0L;
+                    for (int ny = y + dy, nx = x + dx; (dy != 0 || dx != 0) && ny >= 0 && ny < 8 && nx >= 0 && nx < 8;
+                         ny += dy, nx += dx) {
+                        BETWEEN[square][ny * 8 + nx] = between;
+                        between |= 1L << (ny * 8 + nx);
+                    }
+                }
+            }
+        }
+    }
+    //has moved bit for the rook that starts on each square, 0 where no rook starts
+    private static final int[] ROOK_HAS_MOVED_MASKS = new int[64];
+    static {
+        for (int square = 0; square < 64; square++) {
+            int index = ROOK_HAS_MOVED_INDEXES[square];
+            if (index != -1) {
+                ROOK_HAS_MOVED_MASKS[square] = 1 << (HAS_MOVED_SHIFT + index - FenUtility.WHITE_LEFT_ROOK_HAS_MOVED);
+            }
+        }
+    }
+    private static final int[] KING_HAS_MOVED_MASKS = {
+        1 << (HAS_MOVED_SHIFT + FenUtility.WHITE_KING_HAS_MOVED - FenUtility.WHITE_LEFT_ROOK_HAS_MOVED),
+        1 << (HAS_MOVED_SHIFT + FenUtility.BLACK_KING_HAS_MOVED - FenUtility.WHITE_LEFT_ROOK_HAS_MOVED)
+    };
+    
+    long[] pieces = new long[12]; // one bitboard per piece index
+    long[] occupancy = new long[2]; // all white pieces, all black pieces
+    int[] squares = new int[64]; // piece index on each square, or EMPTY
+    int state; // turn, has-moved flags and double jumper
+    char status; // fen index 64. ' ' while the game is in progress
+    long key; // Zobrist key but for the double jumper (see zobristKey), kept up to date by every change to the board
+    long pawnKey; // Zobrist key of the pawns alone, kept up to date the same way
+    int middlegameScore; // sums of the pieces' PieceSquareTables values, kept up to date the same way
+    int endgameScore;
+    int phase;
+    
+    //undo records, one per made move. Each holds the packed state from before
+    //the move (has-moved flags, double jumper, turn) in the high 32 bits and, for
+    //a CompactMove, the move in the low 32 bits (CompactMove.NONE for a null
+    //move). A made Move also keeps the Move
+    //and whatever was on each square it changed, i.e. the captured piece or the
+    //pawn being promoted
+    private long[] undoRecords = new long[64];
+    private Move[] madeMoves = new Move[64]; // null for CompactMoves
+    private int[] savedSquares = new int[256];
+    private int movesMade; // number of undo records
+    private int savedSquaresSize;
+    
+    private long[] pinRays = new long[64]; //for each pinned piece, the squares it can still move to
+    private final int[] pieceMoves = new int[CompactMove.MAX_MOVES]; //for findMove
+    
+    /**
+     * Creates a new BitBoard from the given fen
+     * @param startFen The fen to start from
+     */
+    public BitBoard(String startFen){
+        loadFen(startFen);
+    }
+    
+    /**
+     * Creates an empty BitBoard. Used for copies and saved states.
+     */
+    private BitBoard(){
+    }
+    
+    /**
+     * Sets this board to the state described by the given fen
+     * @param newFen The fen to load
+     */
+    public void loadFen(String newFen){
+        Arrays.fill(pieces, 0L);
+        occupancy[WHITE] = 0L;
+        occupancy[BLACK] = 0L;
+        Arrays.fill(squares, EMPTY);
+        state = 0;
+        key = Zobrist.stateKey(state);
+        pawnKey = 0L;
+        middlegameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        for (int i = FenUtility.BOARD_START; i < newFen.length(); i++) {
+            setFenChar(i, newFen.charAt(i));
+        }
+    }
+    
+    /**
+     * Builds the fen for the current state of this board
+     * @return the fen
+     */
+    @Override
+    public String getFen(){
+        char[] charFen = new char[FenUtility.DOUBLE_JUMPER_X + 1];
+        for (int i = 0; i < charFen.length; i++) {
+            charFen[i] = fenChar(i);
+        }
+        return new String(charFen);
+    }
+    
+    @Override
+    public char fenChar(int index){
+        if (index <= FenUtility.BOARD_END) {
+            return squares[index] == EMPTY ? '-' : PIECE_CHARS[squares[index]];
+        } else if (index == FenUtility.TURN) {
+            return (state & TURN_BIT) == 0 ? 'w' : 'b';
+        } else if (index >= FenUtility.WHITE_LEFT_ROOK_HAS_MOVED && index <= FenUtility.BLACK_RIGHT_ROOK_HAS_MOVED) {
+            int bit = 1 << (HAS_MOVED_SHIFT + index - FenUtility.WHITE_LEFT_ROOK_HAS_MOVED);
+            return (state & bit) == 0 ? 'f' : 't';
+        } else if (index == FenUtility.DOUBLE_JUMPER_Y) {
+            return (char) ('0' + ((state >>> DOUBLE_JUMPER_Y_SHIFT) & DOUBLE_JUMPER_MASK));
+        } else if (index == FenUtility.DOUBLE_JUMPER_X) {
+            return (char) ('0' + ((state >>> DOUBLE_JUMPER_X_SHIFT) & DOUBLE_JUMPER_MASK));
+        }
+        return status;
+    }
+    
+    /**
+     * Sets the fen character at the given index, updating the bitboards
+     * and packed state to match
+     * @param index The index in the fen
+     * @param c The new value
+     */
+    public void setFenChar(int index, char c){
+        if (index <= FenUtility.BOARD_END) {
+            if (squares[index] != EMPTY) {
+                removePiece(index);
+            }
+            if (c != '-') {
+                putPiece(index, PIECES.indexOf(c));
+            }
+        } else if (index == FenUtility.TURN) {
+            setState(c == 'w' ? state & ~TURN_BIT : state | TURN_BIT);
+        } else if (index >= FenUtility.WHITE_LEFT_ROOK_HAS_MOVED && index <= FenUtility.BLACK_RIGHT_ROOK_HAS_MOVED) {
+            int bit = 1 << (HAS_MOVED_SHIFT + index - FenUtility.WHITE_LEFT_ROOK_HAS_MOVED);
+            setState(c == 't' ? state | bit : state & ~bit);
+        } else if (index == FenUtility.DOUBLE_JUMPER_Y) {
+            setState((state & ~(DOUBLE_JUMPER_MASK << DOUBLE_JUMPER_Y_SHIFT)) | ((c - '0') << DOUBLE_JUMPER_Y_SHIFT));
+        } else if (index == FenUtility.DOUBLE_JUMPER_X) {
+            setState((state & ~(DOUBLE_JUMPER_MASK << DOUBLE_JUMPER_X_SHIFT)) | ((c - '0') << DOUBLE_JUMPER_X_SHIFT));
+        } else {
+            status = c;
+        }
+    }
+    
+    /**
+     * Replaces the packed state, updating the key to match
+     * @param newState The new packed state
+     */
+    void setState(int newState){
+        key ^= Zobrist.stateKey(state) ^ Zobrist.stateKey(newState);
+        state = newState;
+    }
+    
+    /**
+     * Puts a piece on an empty square
+     * @param square The fen index of the square
+     * @param piece The piece index
+     */
+    void putPiece(int square, int piece){
+        long bit = 1L << square;
+        pieces[piece] |= bit;
+        occupancy[piece < 6 ? WHITE : BLACK] |= bit;
+        squares[square] = piece;
+        key ^= Zobrist.pieceKey(piece, square);
+        if (piece % 6 == PAWN) {
+            pawnKey ^= Zobrist.pieceKey(piece, square);
+        }
+        middlegameScore += PieceSquareTables.MIDDLEGAME[piece][square];
+        endgameScore += PieceSquareTables.ENDGAME[piece][square];
+        phase += PieceSquareTables.PHASE[piece];
+    }
+    
+    /**
+     * Removes the piece on the given square
+     * @param square The fen index of the square
+     * @pre the square is not empty
+     */
+    void removePiece(int square){
+        int piece = squares[square];
+        long bit = 1L << square;
+        pieces[piece] &= ~bit;
+        occupancy[piece < 6 ? WHITE : BLACK] &= ~bit;
+        squares[square] = EMPTY;
+        key ^= Zobrist.pieceKey(piece, square);
+        if (piece % 6 == PAWN) {
+            pawnKey ^= Zobrist.pieceKey(piece, square);
+        }
+        middlegameScore -= PieceSquareTables.MIDDLEGAME[piece][square];
+        endgameScore -= PieceSquareTables.ENDGAME[piece][square];
+        phase -= PieceSquareTables.PHASE[piece];
+    }
+    
+    /**
+     * Returns the piece index for the given piece char, or EMPTY for '-'
+     * @param c The fen char
+     * @return the piece index
+     */
+    public static int pieceIndex(char c){
+        return PIECES.indexOf(c);
+    }
+    
+    /**
+     * Returns the bitboard for the given fen piece char
+     * @param c The fen char, e.g. 'p' for white pawns
+     * @return the bitboard
+     */
+    public long bitboard(char c){
+        return pieces[pieceIndex(c)];
+    }
+    
+    @Override
+    public long occupied(){
+        return occupancy[WHITE] | occupancy[BLACK];
+    }
+    
+    @Override
+    public long occupiedBy(String player){
+        return occupancy["white".equals(player) ? WHITE : BLACK];
+    }
+    
+    /**
+     * Returns WHITE or BLACK depending on whose turn it is
+     * @return WHITE or BLACK
+     */
+    public int sideToMove(){
+        return state & TURN_BIT;
+    }
+    
+    @Override
+    public long zobristKey(){
+        int y = (state >>> DOUBLE_JUMPER_Y_SHIFT) & DOUBLE_JUMPER_MASK;
+        int x = (state >>> DOUBLE_JUMPER_X_SHIFT) & DOUBLE_JUMPER_MASK;
+        return key ^ Zobrist.doubleJumperKey(y, x, canTakeEnPassant());
+    }
+    
+    @Override
+    public boolean canTakeEnPassant(){
+        int y = (state >>> DOUBLE_JUMPER_Y_SHIFT) & DOUBLE_JUMPER_MASK;
+        int x = (state >>> DOUBLE_JUMPER_X_SHIFT) & DOUBLE_JUMPER_MASK;
+        if (y == 0) {
+            return false;
+        }
+        int jumper = (y - 1) * 8 + x - 1;
+        long beside = (x > 1 ? 1L << (jumper - 1) : 0L) | (x < 8 ? 1L << (jumper + 1) : 0L);
+        return (pieces[(state & TURN_BIT) * 6 + PAWN] & beside) != 0;
+    }
+    
+    @Override
+    public long pawnKey(){
+        return pawnKey;
+    }
+    
+    @Override
+    public int pieceSquareScore(){
+        return PieceSquareTables.taper(middlegameScore, endgameScore, phase);
+    }
+    
+    @Override
+    public String owner(int fenIndex){
+        long bit = 1L << fenIndex;
+        if ((occupancy[WHITE] & bit) != 0) {
+            return "white";
+        } else if ((occupancy[BLACK] & bit) != 0) {
+            return "black";
+        }
+        return "empty";
+    }
+    
+    @Override
+    public String turn(){
+        return sideToMove() == WHITE ? "white" : "black";
+    }
+    
+    @Override
+    public String promotingPawn(){
+        int side = promotingSide();
+        if (side == EMPTY) {
+            return null;
+        }
+        return side == WHITE ? "white" : "black";
+    }
+    
+    @Override
+    public Board copyBoard(){
+        BitBoard copy = new BitBoard();
+        copy.copyFrom(this);
+        copy.undoRecords = undoRecords.clone();
+        copy.madeMoves = madeMoves.clone();
+        copy.savedSquares = savedSquares.clone();
+        copy.movesMade = movesMade;
+        copy.savedSquaresSize = savedSquaresSize;
+        return copy;
+    }
+    
+    /**
+     * Copies the position (but not the undo records) of another BitBoard into this one
+     * @param other The board to copy
+     */
+    void copyFrom(BitBoard other){
+        System.arraycopy(other.pieces, 0, pieces, 0, pieces.length);
+        System.arraycopy(other.occupancy, 0, occupancy, 0, occupancy.length);
+        System.arraycopy(other.squares, 0, squares, 0, squares.length);
+        state = other.state;
+        status = other.status;
+        key = other.key;
+        pawnKey = other.pawnKey;
+        middlegameScore = other.middlegameScore;
+        endgameScore = other.endgameScore;
+        phase = other.phase;
+    }
+    
+    @Override
+    public void makeMove(Move m){
+        List<BoardUpdate> changes = m.getChanges();
+        growUndoRecords();
+        if (savedSquaresSize + changes.size() > savedSquares.length) {
+            savedSquares = Arrays.copyOf(savedSquares, (savedSquaresSize + changes.size()) * 2);
+        }
+        madeMoves[movesMade] = m;
+        undoRecords[movesMade] = (long) state << 32;
+        movesMade++;
+        for (int i = 0; i < changes.size(); i++) {
+            int index = changes.get(i).fenIndex;
+            if (index <= FenUtility.BOARD_END) {
+                savedSquares[savedSquaresSize++] = squares[index];
+            } else if (index == FenUtility.STATUS) {
+                savedSquares[savedSquaresSize++] = status;
+            }
+        }
+        forceFenUpdate(m);
+    }
+    
+    @Override
+    public void makeMove(int move){
+        growUndoRecords();
+        madeMoves[movesMade] = null;
+        undoRecords[movesMade] = ((long) state << 32) | (move & 0xFFFFFFFFL);
+        movesMade++;
+        int from = CompactMove.from(move);
+        int to = CompactMove.to(move);
+        int piece = CompactMove.piece(move);
+        int newState = (state ^ TURN_BIT) & ~(DOUBLE_JUMPER_MASK << DOUBLE_JUMPER_Y_SHIFT)
+                                          & ~(DOUBLE_JUMPER_MASK << DOUBLE_JUMPER_X_SHIFT);
+        if ((move & CompactMove.PROMOTE_IN_PLACE) != 0) {
+            removePiece(from);
+            putPiece(from, CompactMove.promotion(move));
+            setState(newState);
+            return;
+        }
+        //has moved flags get set the same way Board sets them: by the king moving, a rook
+        //moving off its starting square, or a rook being captured on its starting square
+        int side = state & TURN_BIT;
+        if (piece - side * 6 == KING) {
+            newState |= KING_HAS_MOVED_MASKS[side];
+        } else if (piece - side * 6 == ROOK && (side == WHITE ? from <= FenUtility.BOARD_FIRST_ROW_END
+                                                            : from >= FenUtility.BOARD_LAST_ROW_START)) {
+            newState |= ROOK_HAS_MOVED_MASKS[from];
+        }
+        if ((move & CompactMove.EN_PASSANT) != 0) {
+            removePiece(CompactMove.enPassantSquare(move));
+        } else if (squares[to] != EMPTY) {
+            if (squares[to] % 6 == ROOK) {
+                newState |= ROOK_HAS_MOVED_MASKS[to];
+            }
+            removePiece(to);
+        }
+        removePiece(from);
+        putPiece(to, CompactMove.isPromotion(move) ? CompactMove.promotion(move) : piece);
+        if ((move & CompactMove.CASTLE) != 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            int rook = squares[rookFrom];
+            removePiece(rookFrom);
+            putPiece(rookTo, rook);
+            newState |= ROOK_HAS_MOVED_MASKS[rookFrom];
+        } else if ((move & CompactMove.DOUBLE_JUMP) != 0) {
+            newState |= (to / 8 + 1) << DOUBLE_JUMPER_Y_SHIFT | (to % 8 + 1) << DOUBLE_JUMPER_X_SHIFT;
+        }
+        setState(newState);
+    }
+    
+    @Override
+    public void makeNullMove(){
+        growUndoRecords();
+        madeMoves[movesMade] = null;
+        undoRecords[movesMade] = ((long) state << 32) | CompactMove.NONE;
+        movesMade++;
+        setState((state ^ TURN_BIT) & ~(DOUBLE_JUMPER_MASK << DOUBLE_JUMPER_Y_SHIFT)
+                                    & ~(DOUBLE_JUMPER_MASK << DOUBLE_JUMPER_X_SHIFT));
+    }
+    
+    @Override
+    public boolean onlyPawnsLeft(String player){
+        int side = "white".equals(player) ? WHITE : BLACK;
+        return (occupancy[side] & ~pieces[side * 6 + PAWN] & ~pieces[side * 6 + KING]) == 0;
+    }
+    
+    @Override
+    public void unmakeMove(){
+        movesMade--;
+        if (madeMoves[movesMade] == null) {
+            if ((int) undoRecords[movesMade] != CompactMove.NONE) {
+                unmakeCompactMove((int) undoRecords[movesMade]);
+            }
+            setState((int) (undoRecords[movesMade] >>> 32));
+            return;
+        }
+        List<BoardUpdate> changes = madeMoves[movesMade].getChanges();
+        madeMoves[movesMade] = null;
+        //walk backwards so a square changed twice ends up with its oldest value
+        for (int i = changes.size() - 1; i >= 0; i--) {
+            int index = changes.get(i).fenIndex;
+            if (index <= FenUtility.BOARD_END) {
+                if (squares[index] != EMPTY) {
+                    removePiece(index);
+                }
+                int piece = savedSquares[--savedSquaresSize];
+                if (piece != EMPTY) {
+                    putPiece(index, piece);
+                }
+            } else if (index == FenUtility.STATUS) {
+                status = (char) savedSquares[--savedSquaresSize];
+            }
+        }
+        setState((int) (undoRecords[movesMade] >>> 32));
+    }
+    
+    /**
+     * Puts the pieces back the way they were before the given move was made
+     * @param move The move
+     */
+    private void unmakeCompactMove(int move){
+        int from = CompactMove.from(move);
+        int to = CompactMove.to(move);
+        int piece = CompactMove.piece(move);
+        removePiece(to);
+        putPiece(from, piece);
+        if ((move & CompactMove.PROMOTE_IN_PLACE) != 0) {
+            return;
+        }
+        if ((move & CompactMove.EN_PASSANT) != 0) {
+            putPiece(CompactMove.enPassantSquare(move), CompactMove.captured(move));
+        } else if (CompactMove.isCapture(move)) {
+            putPiece(to, CompactMove.captured(move));
+        } else if ((move & CompactMove.CASTLE) != 0) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            int rook = squares[rookTo];
+            removePiece(rookTo);
+            putPiece(rookFrom, rook);
+        }
+    }
+    
+    /**
+     * Makes room for one more undo record
+     */
+    private void growUndoRecords(){
+        if (movesMade == undoRecords.length) {
+            undoRecords = Arrays.copyOf(undoRecords, movesMade * 2);
+            madeMoves = Arrays.copyOf(madeMoves, movesMade * 2);
+        }
+    }
+    
+    @Override
+    public int movesMade(){
+        return movesMade;
+    }
+    
+    @Override
+    public void forceFenUpdate(Move m){
+        List<BoardUpdate> changes = m.getChanges();
+        for (int i = 0; i < changes.size(); i++) {
+            BoardUpdate b = changes.get(i);
+            setFenChar(b.fenIndex, b.newValue);
+        }
+    }
+    
+    /**
+     * Generates the moves like Board.generateMoves, but instead of making each
+     * move to see if it leaves the king attacked, works out up front which
+     * pieces are pinned to the king and, when in check, which squares block or
+     * capture the checker. Only king moves and en passant need an attack test.
+     */
+    @Override
+    public int generateMoves(int[] moves, int start){
+        return generateMoves(moves, start, ALL_MOVES, -1L);
+    }
+    
+    @Override
+    public int generateCaptures(int[] moves, int start){
+        return generateMoves(moves, start, CAPTURES, -1L);
+    }
+    
+    @Override
+    public int generateQuiets(int[] moves, int start){
+        return generateMoves(moves, start, QUIETS, -1L);
+    }
+    
+    /**
+     * Finds the move by generating only the moves of the piece on its from square
+     */
+    @Override
+    public int findMove(int code){
+        int from = CompactMove.from(code);
+        int end = generateMoves(pieceMoves, 0, ALL_MOVES, 1L << from);
+        for (int i = 0; i < end; i++) {
+            if (CompactMove.code(pieceMoves[i]) == code) {
+                return pieceMoves[i];
+            }
+        }
+        return CompactMove.NONE;
+    }
+    
+    /**
+     * Puts the legal moves into the buffer
+     * @param moves The buffer. Needs room for CompactMove.MAX_MOVES moves from start
+     * @param start Where in the buffer to put the first move
+     * @param mode ALL_MOVES, CAPTURES (captures and promotions) or QUIETS (the rest)
+     * @param fromSquares Bitboard of the squares whose pieces' moves are wanted
+     * @return the index after the last move
+     */
+    private int generateMoves(int[] moves, int start, int mode, long fromSquares){
+        int side = sideToMove();
+        int end = generatePseudoLegalMoves(moves, start, side, mode, fromSquares);
+        long king = pieces[side * 6 + KING];
+        int enemy = side ^ 1;
+        //a side in the middle of promoting a pawn attacks nothing, see Board.playerInCheck
+        if (king == 0 || promotingSide() == enemy) {
+            return end;
+        }
+        int kingSquare = Long.numberOfTrailingZeros(king);
+        long all = occupied();
+        long checkers = attackersOf(kingSquare, enemy, all);
+        long checkMask = -1L; //squares a non king move has to end on
+        if (checkers != 0) {
+            boolean doubleCheck = (checkers & (checkers - 1)) != 0;
+            checkMask = doubleCheck ? 0L : checkers | BETWEEN[kingSquare][Long.numberOfTrailingZeros(checkers)];
+        }
+        long pinned = pinnedPieces(kingSquare, side, all);
+        long allButKing = all & ~king;
+        int legal = start;
+        for (int i = start; i < end; i++) {
+            int move = moves[i];
+            int from = CompactMove.from(move);
+            long to = 1L << CompactMove.to(move);
+            boolean isLegal;
+            if ((move & CompactMove.PROMOTE_IN_PLACE) != 0) {
+                isLegal = checkers == 0;
+            } else if (from == kingSquare) {
+                //the king can't hide from a slider by stepping back along its line
+                isLegal = attackersOf(CompactMove.to(move), enemy, allButKing) == 0;
+            } else if ((move & CompactMove.EN_PASSANT) != 0) {
+                //takes two pieces off one row, so just try it
+                makeMove(move);
+                isLegal = !isSquareAttacked(kingSquare, enemy);
+                unmakeMove();
+            } else {
+                isLegal = (checkMask & to) != 0 && ((pinned & (1L << from)) == 0 || (pinRays[from] & to) != 0);
+            }
+            if (isLegal) {
+                moves[legal++] = move;
+            }
+        }
+        return legal;
+    }
+    
+    /**
+     * Returns true if any of the given side's pieces attacks the given square
+     * @param square The fen index of the square
+     * @param side WHITE or BLACK
+     */
+    public boolean isSquareAttacked(int square, int side){
+        return attackersOf(square, side, occupied()) != 0;
+    }
+    
+    @Override
+    public boolean isSquareAttacked(int square, String player){
+        return isSquareAttacked(square, "white".equals(player) ? WHITE : BLACK);
+    }
+    
+    @Override
+    public boolean playerInCheck(String player){
+        int side = "white".equals(player) ? WHITE : BLACK;
+        long king = pieces[side * 6 + KING];
+        if (king == 0 || promotingSide() == (side ^ 1)) {
+            return false;
+        }
+        return isSquareAttacked(Long.numberOfTrailingZeros(king), side ^ 1);
+    }
+    
+    /**
+     * Returns the given side's pieces that attack the given square, working
+     * outwards from the square: a piece attacks it if the same piece on the
+     * square would attack the piece (with pawns looking the other way)
+     * @param square The fen index of the square
+     * @param side WHITE or BLACK
+     * @param occupied The occupied squares, which block sliders
+     * @return the bitboard of attackers
+     */
+    long attackersOf(int square, int side, long occupied){
+        int base = side * 6;
+        long queens = pieces[base + QUEEN];
+        return (PAWN_ATTACKS[side ^ 1][square] & pieces[base + PAWN])
+            | (HORSE_ATTACKS[square] & pieces[base + HORSE])
+            | (KING_ATTACKS[square] & pieces[base + KING])
+            | (MagicBitboards.rookAttacks(square, occupied) & (pieces[base + ROOK] | queens))
+            | (MagicBitboards.bishopAttacks(square, occupied) & (pieces[base + BISHOP] | queens));
+    }
+    
+    /**
+     * Finds the given side's pieces that are the only thing between their king
+     * and an enemy slider, and records in pinRays where each of them can still go
+     * @return the bitboard of pinned pieces
+     */
+    private long pinnedPieces(int kingSquare, int side, long all){
+        int enemyBase = (side ^ 1) * 6;
+        long queens = pieces[enemyBase + QUEEN];
+        long snipers = (MagicBitboards.rookAttacks(kingSquare, 0L) & (pieces[enemyBase + ROOK] | queens))
+                     | (MagicBitboards.bishopAttacks(kingSquare, 0L) & (pieces[enemyBase + BISHOP] | queens));
+        long pinned = 0L;
+        while (snipers != 0) {
+            int sniper = Long.numberOfTrailingZeros(snipers);
+            snipers &= snipers - 1;
+            long blockers = BETWEEN[kingSquare][sniper] & all;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0 && (blockers & occupancy[side]) != 0) {
+                pinned |= blockers;
+                pinRays[Long.numberOfTrailingZeros(blockers)] = BETWEEN[kingSquare][sniper] | (1L << sniper);
+            }
+        }
+        return pinned;
+    }
+    
+    /**
+     * Puts every move the given side could make into the buffer, including ones
+     * that leave its own king attacked. Moves come out in the same order as
+     * Board.generateMoves, with each pawn move to the last row expanded into one
+     * move per promotion piece.
+     * @param moves The buffer
+     * @param end Where in the buffer to put the first move
+     * @param side WHITE or BLACK
+     * @param mode ALL_MOVES, CAPTURES or QUIETS
+     * @param fromSquares Bitboard of the squares whose pieces' moves are wanted
+     * @return the index after the last move
+     */
+    private int generatePseudoLegalMoves(int[] moves, int end, int side, int mode, long fromSquares){
+        int base = side * 6;
+        long promoting = side == WHITE ? pieces[PAWN] & LAST_ROW : pieces[6 + PAWN] & FIRST_ROW;
+        if (promoting != 0 && promotingSide() == side) {
+            if (mode == QUIETS) {
+                return end;
+            }
+            int square = Long.numberOfTrailingZeros(promoting);
+            for (int type : PROMOTION_TYPES) {
+                moves[end++] = CompactMove.of(square, square, base + PAWN, CompactMove.NO_PIECE, base + type,
+                                              CompactMove.PROMOTE_IN_PLACE);
+            }
+            return end;
+        }
+        long own = occupancy[side];
+        long all = own | occupancy[side ^ 1];
+        long targets = mode == ALL_MOVES ? ~own : mode == CAPTURES ? occupancy[side ^ 1] : ~all;
+        long skip = ~targets;
+        long remaining = own & fromSquares;
+        while (remaining != 0) {
+            int from = Long.numberOfTrailingZeros(remaining);
+            remaining &= remaining - 1;
+            int piece = squares[from];
+            switch (piece - base) {
+            case PAWN:
+                end = addPawnMoves(moves, end, from, side, mode);
+                break;
+            case ROOK:
+                end = addTargets(moves, end, from, piece, MagicBitboards.rookAttacks(from, all) & targets);
+                break;
+            case HORSE:
+                end = addTargets(moves, end, from, piece, HORSE_TARGETS[from], skip);
+                break;
+            case BISHOP:
+                end = addTargets(moves, end, from, piece, MagicBitboards.bishopAttacks(from, all) & targets);
+                break;
+            case QUEEN:
+                end = addTargets(moves, end, from, piece, MagicBitboards.rookAttacks(from, all) & targets);
+                end = addTargets(moves, end, from, piece, MagicBitboards.bishopAttacks(from, all) & targets);
+                break;
+            case KING:
+                end = addTargets(moves, end, from, piece, KING_TARGETS[from], skip);
+                if (mode != CAPTURES) {
+                    end = addCastlingMoves(moves, end, from, side);
+                }
+                break;
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Adds a move to each square in the given bitboard, in square order
+     */
+    private int addTargets(int[] moves, int end, int from, int piece, long targets){
+        while (targets != 0) {
+            int to = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves[end++] = CompactMove.of(from, to, piece, capturedOn(to), CompactMove.NO_PIECE, 0);
+        }
+        return end;
+    }
+    
+    /**
+     * Adds a move to each of the given squares not in skip, in the given order
+     */
+    private int addTargets(int[] moves, int end, int from, int piece, int[] targets, long skip){
+        for (int to : targets) {
+            if ((skip & (1L << to)) == 0) {
+                moves[end++] = CompactMove.of(from, to, piece, capturedOn(to), CompactMove.NO_PIECE, 0);
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Adds the moves of the pawn on the given square: forward one, the two
+     * captures, forward two and en passant. CAPTURES leaves out the pushes that
+     * don't promote, QUIETS the captures, en passant and promotions
+     */
+    private int addPawnMoves(int[] moves, int end, int from, int side, int mode){
+        int piece = side * 6 + PAWN;
+        int forward = side == WHITE ? 8 : -8;
+        int to = from + forward;
+        if (to < 0 || to > 63) {
+            return end;
+        }
+        long enemy = occupancy[side ^ 1];
+        int x = from % 8;
+        boolean promotes = to <= FenUtility.BOARD_FIRST_ROW_END || to >= FenUtility.BOARD_LAST_ROW_START;
+        if (squares[to] == EMPTY && (mode == ALL_MOVES || promotes == (mode == CAPTURES))) {
+            end = addPawnMove(moves, end, from, to, piece, CompactMove.NO_PIECE, side);
+        }
+        if (mode == QUIETS) {
+            return from / 8 == (side == WHITE ? 1 : 6) ? addDoubleJump(moves, end, from, to, piece, forward) : end;
+        }
+        if (x > 0 && (enemy & (1L << (to - 1))) != 0) {
+            end = addPawnMove(moves, end, from, to - 1, piece, squares[to - 1], side);
+        }
+        if (x < 7 && (enemy & (1L << (to + 1))) != 0) {
+            end = addPawnMove(moves, end, from, to + 1, piece, squares[to + 1], side);
+        }
+        if (mode == ALL_MOVES && from / 8 == (side == WHITE ? 1 : 6)) {
+            end = addDoubleJump(moves, end, from, to, piece, forward);
+        }
+        int jumperY = (state >>> DOUBLE_JUMPER_Y_SHIFT) & DOUBLE_JUMPER_MASK;
+        int jumperX = (state >>> DOUBLE_JUMPER_X_SHIFT) & DOUBLE_JUMPER_MASK;
+        if (jumperY == from / 8 + 1 && Math.abs(jumperX - 1 - x) == 1) {
+            int jumper = from - x + jumperX - 1;
+            if ((enemy & (1L << jumper)) != 0 && squares[jumper + forward] == EMPTY) {
+                moves[end++] = CompactMove.of(from, jumper + forward, piece, squares[jumper], CompactMove.NO_PIECE,
+                                              CompactMove.EN_PASSANT);
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Adds the pawn's move forward two if both squares are empty
+     */
+    private int addDoubleJump(int[] moves, int end, int from, int to, int piece, int forward){
+        if (squares[to] == EMPTY && squares[to + forward] == EMPTY) {
+            moves[end++] = CompactMove.of(from, to + forward, piece, CompactMove.NO_PIECE, CompactMove.NO_PIECE,
+                                          CompactMove.DOUBLE_JUMP);
+        }
+        return end;
+    }
+    
+    /**
+     * Adds a pawn move, or one move per promotion piece if it ends on the last row
+     */
+    private int addPawnMove(int[] moves, int end, int from, int to, int piece, int captured, int side){
+        if (to > FenUtility.BOARD_FIRST_ROW_END && to < FenUtility.BOARD_LAST_ROW_START) {
+            moves[end++] = CompactMove.of(from, to, piece, captured, CompactMove.NO_PIECE, 0);
+            return end;
+        }
+        for (int type : PROMOTION_TYPES) {
+            moves[end++] = CompactMove.of(from, to, piece, captured, side * 6 + type, 0);
+        }
+        return end;
+    }
+    
+    /**
+     * Adds castling moves for the king on the given square. The king and rook must
+     * not have moved, the squares between them must be empty, and the king may not
+     * be in check or pass through check. Whether it ends up in check is left to
+     * the legality check every king move gets.
+     */
+    private int addCastlingMoves(int[] moves, int end, int from, int side){
+        int flags = state >>> HAS_MOVED_SHIFT;
+        int kingFlag = side == WHITE ? 1 << 1 : 1 << 4;
+        if ((flags & kingFlag) != 0) {
+            return end;
+        }
+        boolean inCheck = false;
+        boolean checkedForCheck = false;
+        int rook = side * 6 + ROOK;
+        //left first, the same as Board
+        for (int direction = -1; direction <= 1; direction += 2) {
+            int rookSquare = direction < 0 ? from - 4 : from + 3;
+            int rookFlag = direction < 0 ? kingFlag >> 1 : kingFlag << 1;
+            if (rookSquare < 0 || rookSquare > 63 || (flags & rookFlag) != 0 || squares[rookSquare] != rook) {
+                continue;
+            }
+            boolean clear = true;
+            for (int square = from + direction; square != rookSquare; square += direction) {
+                clear &= squares[square] == EMPTY;
+            }
+            if (!clear) {
+                continue;
+            }
+            if (!checkedForCheck) {
+                inCheck = isSquareAttacked(from, side ^ 1);
+                checkedForCheck = true;
+            }
+            if (inCheck) {
+                return end;
+            }
+            if (!isSquareAttacked(from + direction, side ^ 1)) {
+                moves[end++] = CompactMove.of(from, from + 2 * direction, squares[from], CompactMove.NO_PIECE,
+                                              CompactMove.NO_PIECE, CompactMove.CASTLE);
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Returns the piece on the given square, or CompactMove.NO_PIECE if it is empty
+     */
+    private int capturedOn(int square){
+        int piece = squares[square];
+        return piece == EMPTY ? CompactMove.NO_PIECE : piece;
+    }
+    
+    /**
+     * Returns the side in the middle of promoting a pawn, WHITE or BLACK, or EMPTY
+     */
+    private int promotingSide(){
+        if ((pieces[6 + PAWN] & FIRST_ROW) != 0) {
+            return BLACK;
+        } else if ((pieces[PAWN] & LAST_ROW) != 0) {
+            return WHITE;
+        }
+        return EMPTY;
+    }
+    
+    /**
+     * Turns the target squares from every square into bitboards
+     */
+    private static long[] attacks(int[][] targets){
+        long[] attacks = new long[64];
+        for (int square = 0; square < 64; square++) {
+            for (int target : targets[square]) {
+                attacks[square] |= 1L << target;
+            }
+        }
+        return attacks;
+    }
+    
+    /**
+     * Builds the target squares from every square for the given (y, x) steps
+     */
+    private static int[][] targets(int[][] steps){
+        int[][] targets = new int[64][];
+        for (int square = 0; square < 64; square++) {
+            int[] found = new int[steps.length];
+            int count = 0;
+            for (int[] step : steps) {
+                int y = square / 8 + step[0];
+                int x = square % 8 + step[1];
+                if (y >= 0 && y < 8 && x >= 0 && x < 8) {
+                    found[count++] = y * 8 + x;
+                }
+            }
+            targets[square] = Arrays.copyOf(found, count);
+        }
+        return targets;
+    }
+}
@@ -1,12 +1,25 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 public class Board {
+    public static final boolean USE_BITBOARDS = true; //which backend fromFen creates
+    
+    //has moved flag for the rook that starts on each square, -1 where no rook starts
+    static final int[] ROOK_HAS_MOVED_INDEXES = new int[64];
+    static {
+        Arrays.fill(ROOK_HAS_MOVED_INDEXES, -1);
+        ROOK_HAS_MOVED_INDEXES[0] = FenUtility.WHITE_LEFT_ROOK_HAS_MOVED;
+        ROOK_HAS_MOVED_INDEXES[7] = FenUtility.WHITE_RIGHT_ROOK_HAS_MOVED;
+        ROOK_HAS_MOVED_INDEXES[56] = FenUtility.BLACK_LEFT_ROOK_HAS_MOVED;
+        ROOK_HAS_MOVED_INDEXES[63] = FenUtility.BLACK_RIGHT_ROOK_HAS_MOVED;
+    }
+    private static final String PROMOTION_PIECES = "rbhq"; //in the order addPawnPromotionMoves adds them
+    
     String fen; // the fen for this board
-    String oldFen; // the immediately previous fen
-    String oldOldFen; // fen before that one
+    ArrayList<String> history = new ArrayList<String>(); // fen before each made move, most recent last
     
     /**
      * Creates a new Board using the given fen
@@ -16,14 +29,76 @@ public class Board {
         this.fen = startFen;
     }
     
+    /**
+     * For subclasses that keep the board state somewhere other than the fen String
+     */
+    protected Board(){
+    }
+    
+    /**
+     * Creates a new Board for the given fen using the backend selected by USE_BITBOARDS
+     * @param startFen The fen to start from
+     * @return the Board
+     */
+    public static Board fromFen(String startFen){
+        if (USE_BITBOARDS) {
+            return new BitBoard(startFen);
+        }
+        return new Board(startFen);
+    }
+    
+    /**
+     * Returns the fen describing the current state of this board
+     * @return the fen
+     */
+    public String getFen(){
+        return fen;
+    }
+    
+    /**
+     * Returns the character at the given index of this board's fen. All
+     * reads of the board state go through here so that other backends
+     * only need to override this.
+     * @param index The index in the fen
+     * @return the character at that index
+     * @pre -1 < index < 74
+     */
+    public char fenChar(int index){
+        return fen.charAt(index);
+    }
+    
+    /**
+     * Returns the Zobrist key of the current position (see Zobrist)
+     * @return the key
+     */
+    public long zobristKey(){
+        return Zobrist.hash(this);
+    }
+    
+    /**
+     * Returns the pawn key of the current position (see Zobrist.pawnHash)
+     * @return the key
+     */
+    public long pawnKey(){
+        return Zobrist.pawnHash(this);
+    }
+    
+    /**
+     * Returns the material and piece-square score of the board (see PieceSquareTables).
+     * This version computes it from scratch; BitBoard keeps it up to date as moves are made.
+     * @return The score. High number = good for white. negative number = good for black
+     */
+    public int pieceSquareScore(){
+        return PieceSquareTables.score(this);
+    }
+    
     /**
      * Creates and returns a deep copy of this board
      * @return the copied Board
      */
     public Board copyBoard(){
         Board copy = new Board(fen);
-        copy.oldFen = this.oldFen;
-        copy.oldOldFen = this.oldOldFen;
+        copy.history.addAll(history);
         return copy;
     }
     
@@ -53,9 +128,9 @@ public class Board {
      * @pre -1 < fenIndex < 64
      */
     public String owner(int fenIndex){
-        if (fen.charAt(fenIndex) == '-'){
+        if (fenChar(fenIndex) == '-'){
             return "empty";
-        } else if (Character.toUpperCase(fen.charAt(fenIndex)) == fen.charAt(fenIndex)){
+        } else if (Character.toUpperCase(fenChar(fenIndex)) == fenChar(fenIndex)){
             return "black";
         } else {
             return "white";
@@ -71,33 +146,297 @@ public class Board {
         return owner(fenIndex(pos));
     }
     
+    /**
+     * Returns a bitboard (bit i = fenIndex i) of every occupied square
+     * @return the bitboard
+     */
+    public long occupied(){
+        long occupied = 0L;
+        for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++){
+            if (fenChar(i) != '-'){
+                occupied |= 1L << i;
+            }
+        }
+        return occupied;
+    }
+    
+    /**
+     * Returns a bitboard (bit i = fenIndex i) of the squares the given player's pieces are on
+     * @param player "white" or "black"
+     * @return the bitboard
+     */
+    public long occupiedBy(String player){
+        long occupied = 0L;
+        for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++){
+            if (owner(i).equals(player)){
+                occupied |= 1L << i;
+            }
+        }
+        return occupied;
+    }
+    
+    /**
+     * Makes a move on the board. Every made move can be taken back with
+     * unmakeMove, no matter how many moves have been made since.
+     * @param m The move to be made
+     */
+    public void makeMove(Move m){
+        history.add(fen);
+        fen = m.applyToFen(fen);
+    }
+    
+    /**
+     * Takes back the most recently made move that hasn't been unmade yet
+     * @pre at least one move has been made
+     */
+    public void unmakeMove(){
+        fen = history.remove(history.size() - 1);
+    }
+    
+    /**
+     * Passes the turn without moving anything, for null-move pruning. Taken
+     * back with unmakeMove like any other move. A pawn that just jumped can
+     * no longer be taken en passant afterwards.
+     */
+    public void makeNullMove(){
+        char[] chars = fen.toCharArray();
+        chars[FenUtility.TURN] = turn().equals("white") ? 'b' : 'w';
+        chars[FenUtility.DOUBLE_JUMPER_Y] = '0';
+        chars[FenUtility.DOUBLE_JUMPER_X] = '0';
+        history.add(fen);
+        fen = new String(chars);
+    }
+    
+    /**
+     * Returns true if the player has nothing left but their king and pawns.
+     * Those are the positions where passing would often be the best move
+     * (zugzwang), so the search mustn't assume it never is.
+     * @param player "white" or "black"
+     * @return true if the player has no pieces besides the king and pawns
+     */
+    public boolean onlyPawnsLeft(String player){
+        for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++) {
+            char c = fen.charAt(i);
+            if (c != '-' && "pkPK".indexOf(c) < 0 && owner(i).equals(player)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns how many made moves can currently be unmade
+     * @return the number of moves
+     */
+    public int movesMade(){
+        return history.size();
+    }
+    
     /**
      * Applies a move to the board
      * @param m The move to be applied
      */
     public void applyMove(Move m){
-        //String workingFen = fen;
-        //apply updates
-        /*
-        for (BoardUpdate b : m.changes){
-            String preceding = workingFen.substring(0, b.fenIndex);
-            String following = workingFen.substring(b.fenIndex + 1, 74);
-            workingFen = preceding + b.newValue + following;
-        }
-        */
-        oldOldFen = oldFen;
-        oldFen = fen;
-        //fen = workingFen;
-        
-        fen = m.applyToFen(fen);
+        makeMove(m);
     }
     
     /**
      * Undoes the last move applied to the board
      */
     public void undoMove(){
-        fen = oldFen;
-        oldFen = oldOldFen;
+        unmakeMove();
+    }
+    
+    /**
+     * Makes a move given as a CompactMove. Taken back with unmakeMove like any other move.
+     * This version converts it to a Move; subclasses can make it directly.
+     * @param move The move to be made
+     */
+    public void makeMove(int move){
+        makeMove(toMove(move));
+    }
+    
+    /**
+     * Puts every legal move on the board into the given buffer as CompactMoves.
+     * A pawn moving to the last row becomes one move per promotion piece. This
+     * version converts the generateMoves list; subclasses can generate them directly.
+     * @param moves The buffer. Needs room for CompactMove.MAX_MOVES moves from start
+     * @param start Where in the buffer to put the first move
+     * @return the index after the last move
+     */
+    public int generateMoves(int[] moves, int start){
+        int end = start;
+        for (Move m : generateMoves()) {
+            int move = compactMove(m);
+            int to = CompactMove.to(move);
+            if (Character.toLowerCase(fenChar(CompactMove.from(move))) == 'p' && !m.isPawnPromotion
+                    && (to <= FenUtility.BOARD_FIRST_ROW_END || to >= FenUtility.BOARD_LAST_ROW_START)) {
+                for (int i = 0; i < PROMOTION_PIECES.length(); i++) {
+                    char c = PROMOTION_PIECES.charAt(i);
+                    int promotion = BitBoard.pieceIndex(turn().equals("white") ? c : Character.toUpperCase(c));
+                    moves[end++] = CompactMove.of(CompactMove.from(move), to, CompactMove.piece(move),
+                                                  CompactMove.captured(move), promotion, 0);
+                }
+            } else {
+                moves[end++] = move;
+            }
+        }
+        return end;
+    }
+    
+    /**
+     * Puts every legal capture and promotion into the given buffer as CompactMoves,
+     * in the same order generateMoves would. This version filters generateMoves;
+     * subclasses can generate them directly.
+     * @param moves The buffer. Needs room for CompactMove.MAX_MOVES moves from start
+     * @param start Where in the buffer to put the first move
+     * @return the index after the last move
+     */
+    public int generateCaptures(int[] moves, int start){
+        return filterMoves(moves, start, true);
+    }
+    
+    /**
+     * Puts every legal move that is neither a capture nor a promotion into the
+     * given buffer as CompactMoves, in the same order generateMoves would. This
+     * version filters generateMoves; subclasses can generate them directly.
+     * @param moves The buffer. Needs room for CompactMove.MAX_MOVES moves from start
+     * @param start Where in the buffer to put the first move
+     * @return the index after the last move
+     */
+    public int generateQuiets(int[] moves, int start){
+        return filterMoves(moves, start, false);
+    }
+    
+    /**
+     * Generates every legal move and keeps the captures and promotions, or the rest
+     */
+    private int filterMoves(int[] moves, int start, boolean captures){
+        int end = generateMoves(moves, start);
+        int kept = start;
+        for (int i = start; i < end; i++) {
+            if ((CompactMove.isCapture(moves[i]) || CompactMove.isPromotion(moves[i])) == captures) {
+                moves[kept++] = moves[i];
+            }
+        }
+        return kept;
+    }
+    
+    /**
+     * Finds the legal move with the given code, for checking that a move from
+     * somewhere else (like the transposition table) can be played here. This
+     * version searches generateMoves; subclasses can do it more cheaply.
+     * @param code The move's code (see CompactMove.code)
+     * @return the move, or CompactMove.NONE if no legal move has that code
+     */
+    public int findMove(int code){
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int end = generateMoves(moves, 0);
+        for (int i = 0; i < end; i++) {
+            if (CompactMove.code(moves[i]) == code) {
+                return moves[i];
+            }
+        }
+        return CompactMove.NONE;
+    }
+    
+    /**
+     * Finds the legal move that leads to the board with the given key, for
+     * working out the moves of a game kept as a fen per move
+     * @param key The Zobrist key of the board after the move
+     * @return the move, or CompactMove.NONE if no legal move leads there
+     */
+    public int moveTo(long key){
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int end = generateMoves(moves, 0);
+        for (int i = 0; i < end; i++) {
+            makeMove(moves[i]);
+            boolean found = zobristKey() == key;
+            unmakeMove();
+            if (found) {
+                return moves[i];
+            }
+        }
+        return CompactMove.NONE;
+    }
+    
+    /**
+     * Returns the CompactMove for a Move generated on this board. A pawn moving to
+     * the last row without being promoted yet comes back without a promotion piece.
+     * @param m The move
+     * @return the CompactMove
+     */
+    public int compactMove(Move m){
+        if (m.isPawnPromotion) {
+            int square = m.getChanges().get(0).fenIndex;
+            return CompactMove.of(square, square, BitBoard.pieceIndex(fenChar(square)), CompactMove.NO_PIECE,
+                                  BitBoard.pieceIndex(m.getPromotionPiece()), CompactMove.PROMOTE_IN_PLACE);
+        }
+        int from = m.getStartIndex();
+        int to = m.getEndIndex();
+        char piece = fenChar(from);
+        char lower = Character.toLowerCase(piece);
+        int captured = fenChar(to) == '-' ? CompactMove.NO_PIECE : BitBoard.pieceIndex(fenChar(to));
+        int promotion = m.getPieceMoving() == piece ? CompactMove.NO_PIECE : BitBoard.pieceIndex(m.getPieceMoving());
+        int flags = 0;
+        if (lower == 'p' && Math.abs(to - from) == 16) {
+            flags = CompactMove.DOUBLE_JUMP;
+        } else if (lower == 'p' && (to - from) % 8 != 0 && captured == CompactMove.NO_PIECE) {
+            flags = CompactMove.EN_PASSANT;
+            captured = BitBoard.pieceIndex(fenChar((from & ~7) | (to & 7)));
+        } else if (lower == 'k' && Math.abs(to - from) == 2) {
+            flags = CompactMove.CASTLE;
+        }
+        return CompactMove.of(from, to, BitBoard.pieceIndex(piece), captured, promotion, flags);
+    }
+    
+    /**
+     * Returns the Move that makes the given CompactMove on this board. A promotion
+     * that isn't PROMOTE_IN_PLACE becomes a single Move that both moves and
+     * promotes the pawn, so Game, which promotes in two steps, has to split it up.
+     * @param move The move
+     * @return the Move
+     */
+    public Move toMove(int move){
+        int from = CompactMove.from(move);
+        int to = CompactMove.to(move);
+        if (CompactMove.hasFlag(move, CompactMove.PROMOTE_IN_PLACE)) {
+            Move m = new Move(true);
+            m.addChange(from, BitBoard.PIECES.charAt(CompactMove.promotion(move)));
+            m.addChange(turnChange());
+            noDoubleJumpers(m);
+            return m;
+        }
+        Move m = new Move();
+        m.addChange(from, '-');
+        if (CompactMove.isPromotion(move)) {
+            m.addChange(to, BitBoard.PIECES.charAt(CompactMove.promotion(move)));
+        } else {
+            m.addChange(to, fenChar(from));
+        }
+        if (CompactMove.hasFlag(move, CompactMove.EN_PASSANT)) {
+            m.addChange(CompactMove.enPassantSquare(move), '-');
+        }
+        if (CompactMove.hasFlag(move, CompactMove.CASTLE)) {
+            int rookFrom = to > from ? from + 3 : from - 4;
+            int rookTo = to > from ? from + 1 : from - 1;
+            m.addChange(rookFrom, '-');
+            m.addChange(rookTo, fenChar(rookFrom));
+            m.addChange(ROOK_HAS_MOVED_INDEXES[rookFrom], 't');
+        }
+        m.addChange(turnChange());
+        if (CompactMove.hasFlag(move, CompactMove.DOUBLE_JUMP)) {
+            m.addChange(FenUtility.DOUBLE_JUMPER_Y, (char) ('1' + to / 8));
+            m.addChange(FenUtility.DOUBLE_JUMPER_X, (char) ('1' + to % 8));
+        } else {
+            noDoubleJumpers(m);
+        }
+        if (Character.toLowerCase(fenChar(from)) == 'k') {
+            m.addChange(turn().equals("white") ? FenUtility.WHITE_KING_HAS_MOVED : FenUtility.BLACK_KING_HAS_MOVED, 't');
+        }
+        addRookHasMovedIfApplicable(m, from);
+        addRookCapturedIfApplicable(m, to);
+        return m;
     }
     
     /**
@@ -129,7 +468,7 @@ public class Board {
         }
         for (int i = 0; i < 64; i++){
             if (owner(i).equals(turn())){
-                char c = Character.toLowerCase(fen.charAt(i));
+                char c = Character.toLowerCase(fenChar(i));
                 if (c == 'h'){
                     addHorseMoves(moves, i);
                 } else if (c == 'p'){
@@ -155,12 +494,12 @@ public class Board {
      */
     public String promotingPawn() {
         for (int i = 0; i < 8; i++) {
-            if (fen.charAt(i) == 'P') {
+            if (fenChar(i) == 'P') {
                 return "black";
             }
         }
         for (int i = 56; i < 64; i++) {
-            if (fen.charAt(i) == 'p') {
+            if (fenChar(i) == 'p') {
                 return "white";
             }
         }
@@ -187,41 +526,83 @@ public class Board {
      * @return true if in check (or checkmate)
      */
     public boolean playerInCheck(String player) {
-        String trueTurn = turn();
-        char king;
-        Move switchTurn = new Move();
-        if ("white".equals(player)){
-            switchTurn.addChange(FenUtility.TURN, 'b');
-            king = 'k';
-        } else {
-            switchTurn.addChange(FenUtility.TURN, 'w');
-            king = 'K';
+        char king = "white".equals(player) ? 'k' : 'K';
+        String opponent = "white".equals(player) ? "black" : "white";
+        //a player in the middle of promoting a pawn can only promote, which doesn't attack anything
+        if (opponent.equals(promotingPawn())) {
+            return false;
         }
-        forceFenUpdate(switchTurn);
-        int kingIndex = -1; //initialized so compiler will shut up
         for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++){
-            if (fen.charAt(i) == king){
-                kingIndex = i;
-                break;
+            if (fenChar(i) == king){
+                return isSquareAttacked(i, opponent);
             }
         }
-        Move switchTurnBack = new Move();
-        switchTurnBack.addChange(FenUtility.TURN, trueTurn.charAt(0));
-        List<Move> movesList = generateMovesCore(true);
-        //pawn promotions don't attack the king
-        if (movesList.size() > 0 && movesList.get(0).isPawnPromotion) {
-            return false;
+        return false;
+    }
+    
+    /**
+     * Returns true if any of the given player's pieces attacks the given square.
+     * Works outwards from the square, looking for the piece that would attack
+     * it from each direction, instead of generating the player's moves.
+     * @param fenIndex The square
+     * @param player "white" or "black"
+     * @return true if the square is attacked
+     */
+    public boolean isSquareAttacked(int fenIndex, String player){
+        boolean white = "white".equals(player);
+        long occupied = occupied();
+        long straight = MagicBitboards.rookAttacks(fenIndex, occupied);
+        while (straight != 0){
+            int i = Long.numberOfTrailingZeros(straight);
+            straight &= straight - 1;
+            if (isPiece(i, 'r', white) || isPiece(i, 'q', white)){
+                return true;
+            }
+        }
+        long diagonal = MagicBitboards.bishopAttacks(fenIndex, occupied);
+        while (diagonal != 0){
+            int i = Long.numberOfTrailingZeros(diagonal);
+            diagonal &= diagonal - 1;
+            if (isPiece(i, 'b', white) || isPiece(i, 'q', white)){
+                return true;
+            }
         }
-        for (Move m : movesList) {
-            if (m.getEndIndex() == kingIndex){
-                forceFenUpdate(switchTurnBack);
+        Position pos = position(fenIndex);
+        int[][] horseSteps = {{2, 1}, {-2, 1}, {-2, -1}, {2, -1}, {1, 2}, {-1, 2}, {1, -2}, {-1, -2}};
+        for (int[] step : horseSteps){
+            if (inBounds(pos.y + step[0], pos.x + step[1]) &&
+                isPiece(fenIndex + step[0] * 8 + step[1], 'h', white)){
+                return true;
+            }
+        }
+        for (int dy = -1; dy <= 1; dy++){
+            for (int dx = -1; dx <= 1; dx++){
+                if ((dy != 0 || dx != 0) && inBounds(pos.y + dy, pos.x + dx) &&
+                    isPiece(fenIndex + dy * 8 + dx, 'k', white)){
+                    return true;
+                }
+            }
+        }
+        //pawns attack forwards, so look backwards for them
+        int pawnDy = white ? -1 : 1;
+        for (int dx = -1; dx <= 1; dx += 2){
+            if (inBounds(pos.y + pawnDy, pos.x + dx) && isPiece(fenIndex + pawnDy * 8 + dx, 'p', white)){
                 return true;
             }
         }
-        forceFenUpdate(switchTurnBack);
         return false;
     }
     
+    /**
+     * Returns true if the given piece of the given player is on the given square
+     * @param fenIndex The square
+     * @param piece The lowercase piece char
+     * @param white true for white's piece, false for black's
+     */
+    private boolean isPiece(int fenIndex, char piece, boolean white){
+        return fenChar(fenIndex) == (white ? piece : Character.toUpperCase(piece));
+    }
+    
     /**
      * Returns true if every move the current player can make would result
      * in their being in check.
@@ -243,6 +624,22 @@ public class Board {
         return true;
     }
     
+    /**
+     * Returns true if the pawn that just jumped two squares can be taken en
+     * passant by a pawn beside it (which may still be pinned)
+     * @return true if there is a pawn to take it
+     */
+    public boolean canTakeEnPassant(){
+        int y = fenChar(FenUtility.DOUBLE_JUMPER_Y) - '0';
+        int x = fenChar(FenUtility.DOUBLE_JUMPER_X) - '0';
+        if (y == 0) {
+            return false;
+        }
+        int jumper = (y - 1) * 8 + x - 1;
+        char pawn = turn().equals("white") ? 'p' : 'P';
+        return (x > 1 && fenChar(jumper - 1) == pawn) || (x < 8 && fenChar(jumper + 1) == pawn);
+    }
+    
     /**
      * Returns true if the current player is checkmated
      * @return true if the current player is checkmated
@@ -274,7 +671,7 @@ public class Board {
         int bow = 0; // black on white
         int bob = 0; // black on black
         for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++){
-            char c = fen.charAt(i);
+            char c = fenChar(i);
             if (c == 'p' || c == 'P' || c == 'r' || c == 'R' || c == 'Q' || c == 'q'){
                 return false;
             } else if (c == 'h' || c == 'H'){
@@ -350,13 +747,13 @@ public class Board {
             rightRookHasMoved = FenUtility.BLACK_RIGHT_ROOK_HAS_MOVED;
         }
         //castling left
-        if (fen.charAt(kingHasMoved) == 'f' && fen.charAt(leftRookHasMoved) == 'f'){
+        if (fenChar(kingHasMoved) == 'f' && fenChar(leftRookHasMoved) == 'f'){
             Position leftRookPos = new Position(pos.y, pos.x - 4);
             Position spaceBetween1 = new Position(pos.y, pos.x - 3);
             Position spaceBetween2 = new Position(pos.y, pos.x - 2);
             Position spaceBetween3 = new Position(pos.y, pos.x - 1);
-            if (owner(leftRookPos).equals(turn()) && fen.charAt(fenIndex(spaceBetween1)) == '-' &&
-                fen.charAt(fenIndex(spaceBetween2)) == '-' && fen.charAt(fenIndex(spaceBetween3)) == '-' &&
+            if (isOwnRook(fenIndex(leftRookPos)) && fenChar(fenIndex(spaceBetween1)) == '-' &&
+                fenChar(fenIndex(spaceBetween2)) == '-' && fenChar(fenIndex(spaceBetween3)) == '-' &&
                 ((ignoreCheckChecks) || !playerInCheck(turn()))){
                 boolean inCheck;
                 if (ignoreCheckChecks) {
@@ -373,7 +770,7 @@ public class Board {
                 if (!inCheck){ //finally adding the move
                     Move m = createStandardMove(i, position(i - 2));
                     m.addChange(fenIndex(leftRookPos), '-');
-                    m.addChange(fenIndex(new Position(pos.y, pos.x - 1)), fen.charAt(fenIndex(leftRookPos)));
+                    m.addChange(fenIndex(new Position(pos.y, pos.x - 1)), fenChar(fenIndex(leftRookPos)));
                     m.addChange(kingHasMoved, 't');
                     m.addChange(leftRookHasMoved, 't');
                     moves.add(m);
@@ -381,12 +778,12 @@ public class Board {
             }
         }
         //castling right
-        if (fen.charAt(kingHasMoved) == 'f' && fen.charAt(rightRookHasMoved) == 'f'){
+        if (fenChar(kingHasMoved) == 'f' && fenChar(rightRookHasMoved) == 'f'){
             Position rightRookPos = new Position(pos.y, pos.x + 3);
             Position spaceBetween1 = new Position(pos.y, pos.x + 2);
             Position spaceBetween2 = new Position(pos.y, pos.x + 1);
-            if (owner(rightRookPos).equals(turn()) && fen.charAt(fenIndex(spaceBetween1)) == '-' &&
-                fen.charAt(fenIndex(spaceBetween2)) == '-' && (ignoreCheckChecks || !playerInCheck(turn()))){
+            if (isOwnRook(fenIndex(rightRookPos)) && fenChar(fenIndex(spaceBetween1)) == '-' &&
+                fenChar(fenIndex(spaceBetween2)) == '-' && (ignoreCheckChecks || !playerInCheck(turn()))){
                 boolean inCheck;
                 if (ignoreCheckChecks) {
                     inCheck = false;
@@ -402,7 +799,7 @@ public class Board {
                 if (!inCheck){ //finally adding the move
                     Move m = createStandardMove(i, position(i + 2));
                     m.addChange(fenIndex(rightRookPos), '-');
-                    m.addChange(fenIndex(new Position(pos.y, pos.x + 1)), fen.charAt(fenIndex(rightRookPos)));
+                    m.addChange(fenIndex(new Position(pos.y, pos.x + 1)), fenChar(fenIndex(rightRookPos)));
                     m.addChange(kingHasMoved, 't');
                     m.addChange(rightRookHasMoved, 't');
                     moves.add(m);
@@ -411,6 +808,15 @@ public class Board {
         }
     }
     
+    /**
+     * Returns true if the piece at the given index is a rook belonging to the
+     * player whose turn it is
+     * @param fenIndex The fenIndex to check
+     */
+    private boolean isOwnRook(int fenIndex){
+        return Character.toLowerCase(fenChar(fenIndex)) == 'r' && owner(fenIndex).equals(turn());
+    }
+    
     /**
      * Adds bishop moves to the moves list given the fenIndex
      * of the bishop(or queen) and the moves list
@@ -418,51 +824,11 @@ public class Board {
      * @param i The fenIndex of the bishop(or queen) being moved
      */
     public void addBishopMoves(ArrayList<Move> moves, int i){
-        Position pos = position(i);
-        String enemy = turn().equals("white")? "black" : "white";
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y + j, pos.x + j);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                moves.add(createStandardMove(i, dest));
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
-        }
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y - j, pos.x - j);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                moves.add(createStandardMove(i, dest));
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
-        }
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y + j, pos.x - j);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                moves.add(createStandardMove(i, dest));
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
-        }
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y - j, pos.x + j);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                moves.add(createStandardMove(i, dest));
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
+        long targets = MagicBitboards.bishopAttacks(i, occupied()) & ~occupiedBy(turn());
+        while (targets != 0){
+            int dest = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            moves.add(createStandardMove(i, dest));
         }
     }
     
@@ -472,7 +838,7 @@ public class Board {
      * @param i The fenIndex of the piece being moved
      */
     public void addRookHasMovedIfApplicable(Move m, int i){
-        if (Character.toLowerCase(fen.charAt(i)) == 'r'){
+        if (Character.toLowerCase(fenChar(i)) == 'r'){
             if (turn().equals("white")){
                 if (i == 0){
                     m.addChange(FenUtility.WHITE_LEFT_ROOK_HAS_MOVED, 't');
@@ -496,59 +862,13 @@ public class Board {
      * @param i The fenIndex of the rook(or queen) being moved
      */
     public void addRookMoves(ArrayList<Move> moves, int i){
-        Position pos = position(i);
-        String enemy = turn().equals("white")? "black" : "white";
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y + j, pos.x);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                Move m = createStandardMove(i, dest);
-                addRookHasMovedIfApplicable(m, i);
-                moves.add(m);
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
-        }
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y - j, pos.x);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                Move m = createStandardMove(i, dest);
-                addRookHasMovedIfApplicable(m, i);
-                moves.add(m);
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
-        }
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y, pos.x + j);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                Move m = createStandardMove(i, dest);
-                addRookHasMovedIfApplicable(m, i);
-                moves.add(m);
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
-        }
-        for (int j = 1; j < 8; j++){
-            Position dest = new Position(pos.y, pos.x - j);
-            if (inBounds(dest) && !owner(fenIndex(dest)).equals(turn())){
-                Move m = createStandardMove(i, dest);
-                addRookHasMovedIfApplicable(m, i);
-                moves.add(m);
-                if (owner(fenIndex(dest)).equals(enemy)){
-                    break;
-                }
-            } else {
-                break;
-            }
+        long targets = MagicBitboards.rookAttacks(i, occupied()) & ~occupiedBy(turn());
+        while (targets != 0){
+            int dest = Long.numberOfTrailingZeros(targets);
+            targets &= targets - 1;
+            Move m = createStandardMove(i, dest);
+            addRookHasMovedIfApplicable(m, i);
+            moves.add(m);
         }
     }
     
@@ -566,7 +886,7 @@ public class Board {
 
         Position pos = position(i);
         Position inFront = new Position(pos.y + switcher, pos.x);
-        if (inBounds(inFront) && fen.charAt(fenIndex(inFront)) == '-'){
+        if (inBounds(inFront) && fenChar(fenIndex(inFront)) == '-'){
             if (inFront.y == 1 || inFront.y == 8) {
                 moves.add(createMoveNoTurnChange(i, inFront)); //will pawn promote so don't switch turn
             } else {
@@ -575,7 +895,6 @@ public class Board {
         }
         Position frontLeft = new Position(pos.y + switcher, pos.x - 1);
         if (inBounds(frontLeft) && owner(fenIndex(frontLeft)).equals(enemy)){
-            moves.add(createStandardMove(i, frontLeft));
             if (frontLeft.y == 1 || frontLeft.y == 8) {
                 moves.add(createMoveNoTurnChange(i, frontLeft));
             } else {
@@ -584,7 +903,6 @@ public class Board {
         }
         Position frontRight = new Position(pos.y + switcher, pos.x + 1);
         if (inBounds(frontRight) && owner(fenIndex(frontRight)).equals(enemy)){
-            moves.add(createStandardMove(i, frontRight));
             if (frontRight.y == 1 || frontRight.y == 8) {
                 moves.add(createMoveNoTurnChange(i, frontRight));
             } else {
@@ -593,24 +911,26 @@ public class Board {
         }
         //where this piece would double jump to
         Position doubleJump = new Position(pos.y + (2 * switcher), pos.x);
-        if (inBounds(doubleJump) && fen.charAt(fenIndex(doubleJump)) == '-' && pos.y == pawnLine){
+        if (inBounds(doubleJump) && fenChar(fenIndex(doubleJump)) == '-' && pos.y == pawnLine
+                && fenChar(fenIndex(inFront)) == '-'){
             Move m = new Move();
             m.addChange(i, '-');
-            m.addChange(fenIndex(doubleJump), fen.charAt(i));
+            m.addChange(fenIndex(doubleJump), fenChar(i));
             m.addChange(turnChange());
             m.addChange(FenUtility.DOUBLE_JUMPER_Y, (char) (doubleJump.y + 48)); //Add 48 to get a proper char cast
             m.addChange(FenUtility.DOUBLE_JUMPER_X, (char) (doubleJump.x + 48)); //ie to get '1' from 1 (because ascii)
             moves.add(m);
         }
         //where the piece last turn double jumped to (or (0, 0) if there was no double jump last turn)
-        doubleJump = new Position(Character.getNumericValue(fen.charAt(FenUtility.DOUBLE_JUMPER_Y)),
-                                  Character.getNumericValue(fen.charAt(FenUtility.DOUBLE_JUMPER_X)));
+        doubleJump = new Position(Character.getNumericValue(fenChar(FenUtility.DOUBLE_JUMPER_Y)),
+                                  Character.getNumericValue(fenChar(FenUtility.DOUBLE_JUMPER_X)));
         //en passant
         if (doubleJump.y == pos.y && Math.abs(pos.x - doubleJump.x) == 1 && 
-                                owner(fenIndex(doubleJump)).equals(enemy)){
+                                owner(fenIndex(doubleJump)).equals(enemy) &&
+                                fenChar(fenIndex(doubleJump) + 8 * switcher) == '-'){
             Move m = new Move();
             m.addChange(i, '-');
-            m.addChange(fenIndex(new Position(doubleJump.y + switcher, doubleJump.x)), fen.charAt(i));
+            m.addChange(fenIndex(new Position(doubleJump.y + switcher, doubleJump.x)), fenChar(i));
             m.addChange(fenIndex(doubleJump), '-');
             m.addChange(turnChange());
             noDoubleJumpers(m); //because THIS move is not a double jump
@@ -630,7 +950,7 @@ public class Board {
         //scan bottom or top row to find pawn
         if (turn().equals("black")) {
             for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_FIRST_ROW_END; i++){
-                if (fen.charAt(i) == 'P') {
+                if (fenChar(i) == 'P') {
                     pawnIndex = i;
                     break;
                 }
@@ -644,7 +964,7 @@ public class Board {
             }
         } else {
             for (int i = FenUtility.BOARD_LAST_ROW_START; i <= FenUtility.BOARD_END; i++){
-                if (fen.charAt(i) == 'p') {
+                if (fenChar(i) == 'p') {
                     pawnIndex = i;
                     break;
                 }
@@ -669,7 +989,17 @@ public class Board {
      * @return Move m The move
      */
     public Move createStandardMove(int i, Position endPos){
-        Move m = createMoveNoTurnChange(i, endPos);
+        return createStandardMove(i, fenIndex(endPos));
+    }
+    
+    /**
+     * Same as method above but takes the fenIndex of the end destination
+     * @param i The fenIndex of the piece being moved
+     * @param endIndex The fenIndex of the end destination of the move
+     * @return Move m The move
+     */
+    public Move createStandardMove(int i, int endIndex){
+        Move m = createMoveNoTurnChange(i, endIndex);
         m.addChange(turnChange());
         return m;
     }
@@ -684,13 +1014,38 @@ public class Board {
      * @return Move m The move
      */
     public Move createMoveNoTurnChange(int i, Position endPos){
+        return createMoveNoTurnChange(i, fenIndex(endPos));
+    }
+    
+    /**
+     * Same as method above but takes the fenIndex of the end destination
+     * @param i The fenIndex of the piece being moved
+     * @param endIndex The fenIndex of the end destination of the move
+     * @return Move m The move
+     */
+    public Move createMoveNoTurnChange(int i, int endIndex){
         Move m = new Move();
         m.addChange(i, '-');
-        m.addChange(fenIndex(endPos), fen.charAt(i));
+        m.addChange(endIndex, fenChar(i));
         noDoubleJumpers(m);
+        addRookCapturedIfApplicable(m, endIndex);
         return m;
     }
     
+    /**
+     * Adds a has moved change to a move that captures a rook on its starting
+     * square, so that side can no longer castle with a piece that later moves there
+     * @param m The move
+     * @param endIndex The fenIndex the move ends on
+     */
+    public void addRookCapturedIfApplicable(Move m, int endIndex){
+        int hasMovedIndex = ROOK_HAS_MOVED_INDEXES[endIndex];
+        if (hasMovedIndex != -1 && Character.toLowerCase(fenChar(endIndex)) == 'r'
+                && !owner(endIndex).equals(turn())){
+            m.addChange(hasMovedIndex, 't');
+        }
+    }
+    
     /**
      * Adds horse moves to the moves list given that list and
      * the fenIndex of the horse.
@@ -788,7 +1143,7 @@ public class Board {
      * @return "white or "black"
      */
     public String turn() {
-        if (fen.charAt(FenUtility.TURN) == 'w') {
+        if (fenChar(FenUtility.TURN) == 'w') {
             return "white";
         } else {
             return "black";
@@ -0,0 +1,26 @@
+
+/**
+ * Scores boards for MiniMax. Cheaper evaluators let the search go deeper in
+ * the same time, richer ones make each score worth more.
+ */
+public interface BoardEvaluator {
+    
+    BoardEvaluator BASIC = BasicBoardEvaluator::evaluate; //material plus a bonus for advancing
+    BoardEvaluator PIECE_SQUARE = PieceSquareEvaluator::evaluate; //material and placement, O(1) on a BitBoard
+    
+    /**
+     * Evaluates the given board
+     * @param board The board to evaluate
+     * @return The score. High number = good for white. negative number = good for black
+     */
+    int evaluate(Board board);
+    
+    /**
+     * Returns an evaluator another search thread can use at the same time as
+     * this one. Evaluators without state can return themselves.
+     * @return the evaluator
+     */
+    default BoardEvaluator forThread() {
+        return this;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Moves packed into a single int, so move lists can be preallocated int
+ * arrays instead of lists of Move objects. Squares are fen indexes and
+ * pieces are piece indexes (see BitBoard.PIECES).
+ * <p>
+ * Unlike a Move, a promotion is one move: the pawn moves and becomes the new
+ * piece in one go, and the turn passes. The only exception is a board loaded
+ * with a pawn already waiting on the last row (the state a Game is in while
+ * the player picks a piece). Its moves are PROMOTE_IN_PLACE moves, with the
+ * same from and to square.
+ * <pre>
+ * bits  0-5   from square
+ * bits  6-11  to square
+ * bits 12-15  promotion piece, or NO_PIECE
+ * bits 16-19  moving piece
+ * bits 20-23  captured piece, or NO_PIECE
+ * bits 24-27  flags
+ * </pre>
+ * The low 16 bits (code) are enough to tell apart every move in a position.
+ */
+public class CompactMove {
+    
+    public static final int NONE = 0; //never a real move
+    public static final int NO_PIECE = 0xF;
+    public static final int MAX_MOVES = 256; //more than any position has, so a move buffer never overflows
+    
+    //flags
+    public static final int DOUBLE_JUMP = 1 << 24;
+    public static final int EN_PASSANT = 1 << 25;
+    public static final int CASTLE = 1 << 26;
+    public static final int PROMOTE_IN_PLACE = 1 << 27;
+    
+    private static final int TO_SHIFT = 6;
+    private static final int PROMOTION_SHIFT = 12;
+    private static final int PIECE_SHIFT = 16;
+    private static final int CAPTURED_SHIFT = 20;
+    private static final int SQUARE_MASK = 0x3F;
+    private static final int PIECE_MASK = 0xF;
+    private static final int CODE_MASK = 0xFFFF;
+    
+    /**
+     * Packs a move
+     * @param from The fen index the piece moves from
+     * @param to The fen index the piece moves to
+     * @param piece The moving piece
+     * @param captured The captured piece, or NO_PIECE
+     * @param promotion The piece a pawn promotes to, or NO_PIECE
+     * @param flags Any of DOUBLE_JUMP, EN_PASSANT, CASTLE and PROMOTE_IN_PLACE, or 0
+     * @return the packed move
+     */
+    public static int of(int from, int to, int piece, int captured, int promotion, int flags) {
+        return from | (to << TO_SHIFT) | (promotion << PROMOTION_SHIFT)
+            | (piece << PIECE_SHIFT) | (captured << CAPTURED_SHIFT) | flags;
+    }
+    
+    public static int from(int move) {
+        return move & SQUARE_MASK;
+    }
+    
+    public static int to(int move) {
+        return (move >>> TO_SHIFT) & SQUARE_MASK;
+    }
+    
+    public static int promotion(int move) {
+        return (move >>> PROMOTION_SHIFT) & PIECE_MASK;
+    }
+    
+    public static int piece(int move) {
+        return (move >>> PIECE_SHIFT) & PIECE_MASK;
+    }
+    
+    public static int captured(int move) {
+        return (move >>> CAPTURED_SHIFT) & PIECE_MASK;
+    }
+    
+    public static boolean isCapture(int move) {
+        return captured(move) != NO_PIECE;
+    }
+    
+    public static boolean isPromotion(int move) {
+        return promotion(move) != NO_PIECE;
+    }
+    
+    public static boolean hasFlag(int move, int flag) {
+        return (move & flag) != 0;
+    }
+    
+    /**
+     * Returns the 16 bit code of a move (from, to and promotion), which is
+     * all a transposition table needs to find the move again
+     * @param move The move
+     * @return the code
+     */
+    public static int code(int move) {
+        return move & CODE_MASK;
+    }
+    
+    /**
+     * Returns the square the pawn taken by an en passant move was on: the
+     * row the capturing pawn starts on, the column it ends on
+     * @param move The en passant move
+     * @return the fen index
+     */
+    public static int enPassantSquare(int move) {
+        return (from(move) & ~7) | (to(move) & 7);
+    }
+    
+    /**
+     * Returns a move in coordinate notation, e.g. "e2e4" or "e7e8q"
+     * @param move The move
+     * @return the notation
+     */
+    public static String toString(int move) {
+        String s = squareName(from(move)) + squareName(to(move));
+        if (isPromotion(move)) {
+            s += Character.toLowerCase(BitBoard.PIECES.charAt(promotion(move)));
+        }
+        return s;
+    }
+    
+    /**
+     * Returns the name of a square, e.g. "a1" for fen index 0
+     * @param fenIndex The fen index
+     * @return the name
+     */
+    public static String squareName(int fenIndex) {
+        return "" + (char) ('a' + fenIndex % 8) + (char) ('1' + fenIndex / 8);
+    }
+}
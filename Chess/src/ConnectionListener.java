@@ -6,6 +6,7 @@ import java.io.PrintWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Class to listen for a new connection from the network.
@@ -16,7 +17,7 @@ public class ConnectionListener implements Runnable {
     private int port;
     private String team;
     private Thread t;
-    private ArrayList<String> fens;
+    private List<String> fens;
     private ServerSocket serverSocket;
     private boolean connectionEstablished;
     
@@ -42,7 +43,7 @@ public class ConnectionListener implements Runnable {
      * @param team The team this player will be
      * @param fens The list of fens so far in the game
      */
-    public ConnectionListener(Display disp, int port, String team, ArrayList<String> fens){
+    public ConnectionListener(Display disp, int port, String team, List<String> fens){
         this(disp, port, team);
         this.fens = fens;
     }
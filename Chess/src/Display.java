@@ -135,9 +135,13 @@ public class Display implements ActionListener {
     }
     
     /**
-     * Sets up the board display
+     * Sets up the board display for a new game or replay. An AI still
+     * pondering the old game stops.
      */
     public void setUpGameBoardDisplay(){
+        if (currentGame instanceof AIOpponentGame){
+            ((AIOpponentGame) currentGame).stopPondering();
+        }
         //get rid of the old stuffHolder if we had one
         if (stuffHolder != null){
             frame.remove(stuffHolder);
@@ -731,7 +735,7 @@ public class Display implements ActionListener {
      * Updates the graphics of the board to reflect changes
      */
     public void printBoard(){
-        String uneditedFen = mode == GAMEMODE? currentGame.currentBoard.fen : currentReplay.currentFen;
+        String uneditedFen = mode == GAMEMODE? currentGame.currentBoard.getFen() : currentReplay.currentFen;
         //remove pieces already being displayed
         if (stuffHolder.boardPieces.size() != 0){
             for (int i = 0; i < stuffHolder.boardPieces.size(); i++){
@@ -1,6 +1,6 @@
 
 /**
- * Stores fen index info
+ * Stores fen index info, and converts fens to and from standard FEN
  */
 public class FenUtility {
     
@@ -9,6 +9,7 @@ public class FenUtility {
     public static final int BOARD_LAST_ROW_START = 56; //inclusive
     public static final int BOARD_END = 63; //inclusive
     
+    public static final int STATUS = 64; //' ' while in progress, else 'w', 'b' or 'd' for the result
     public static final int TURN = 65;
     public static final int WHITE_LEFT_ROOK_HAS_MOVED = 66;
     public static final int WHITE_KING_HAS_MOVED = 67;
@@ -18,4 +19,119 @@ public class FenUtility {
     public static final int BLACK_RIGHT_ROOK_HAS_MOVED = 71;
     public static final int DOUBLE_JUMPER_Y = 72;
     public static final int DOUBLE_JUMPER_X = 73;
+    
+    private static final String STANDARD_PIECES = "PRNBQKprnbqk"; //the same order as BitBoard.PIECES
+    
+    /**
+     * Converts a standard (Forsyth-Edwards) FEN into this game's fen. The move
+     * counters are dropped, since this game doesn't keep them
+     * @param standardFen The FEN, e.g. "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"
+     * @return the fen, as in Game.startFen
+     * @throws IllegalArgumentException if the FEN is malformed
+     */
+    public static String fromStandardFen(String standardFen) {
+        String[] fields = standardFen.trim().split("\\s+");
+        if (fields.length < 2) {
+            throw new IllegalArgumentException("FEN needs at least the board and the side to move: " + standardFen);
+        }
+        char[] fen = new char[DOUBLE_JUMPER_X + 1];
+        String[] ranks = fields[0].split("/");
+        if (ranks.length != 8) {
+            throw new IllegalArgumentException("FEN board needs 8 ranks: " + standardFen);
+        }
+        for (int rank = 0; rank < 8; rank++) {
+            int file = 0;
+            for (char c : ranks[7 - rank].toCharArray()) {
+                if (c >= '1' && c <= '8' && file + c - '0' <= 8) {
+                    for (int i = 0; i < c - '0'; i++) {
+                        fen[rank * 8 + file++] = '-';
+                    }
+                } else if (STANDARD_PIECES.indexOf(c) >= 0 && file < 8) {
+                    fen[rank * 8 + file++] = BitBoard.PIECES.charAt(STANDARD_PIECES.indexOf(c));
+                } else {
+                    throw new IllegalArgumentException("bad FEN rank " + ranks[7 - rank] + ": " + standardFen);
+                }
+            }
+            if (file != 8) {
+                throw new IllegalArgumentException("FEN rank " + ranks[7 - rank] + " isn't 8 squares: " + standardFen);
+            }
+        }
+        if (!fields[1].equals("w") && !fields[1].equals("b")) {
+            throw new IllegalArgumentException("FEN side to move must be w or b: " + standardFen);
+        }
+        fen[STATUS] = ' ';
+        fen[TURN] = fields[1].charAt(0);
+        String castling = fields.length > 2 ? fields[2] : "-";
+        //a piece that can't castle any more is marked as moved
+        fen[WHITE_LEFT_ROOK_HAS_MOVED] = castling.contains("Q") ? 'f' : 't';
+        fen[WHITE_KING_HAS_MOVED] = castling.contains("K") || castling.contains("Q") ? 'f' : 't';
+        fen[WHITE_RIGHT_ROOK_HAS_MOVED] = castling.contains("K") ? 'f' : 't';
+        fen[BLACK_LEFT_ROOK_HAS_MOVED] = castling.contains("q") ? 'f' : 't';
+        fen[BLACK_KING_HAS_MOVED] = castling.contains("k") || castling.contains("q") ? 'f' : 't';
+        fen[BLACK_RIGHT_ROOK_HAS_MOVED] = castling.contains("k") ? 'f' : 't';
+        fen[DOUBLE_JUMPER_Y] = '0';
+        fen[DOUBLE_JUMPER_X] = '0';
+        String enPassant = fields.length > 3 ? fields[3] : "-";
+        if (!enPassant.equals("-")) {
+            if (!enPassant.matches("[a-h][36]")) {
+                throw new IllegalArgumentException("bad FEN en passant square " + enPassant + ": " + standardFen);
+            }
+            //the pawn that jumped is one square past the one it jumped over
+            fen[DOUBLE_JUMPER_Y] = enPassant.charAt(1) == '3' ? '4' : '5';
+            fen[DOUBLE_JUMPER_X] = (char) ('1' + enPassant.charAt(0) - 'a');
+        }
+        return new String(fen);
+    }
+    
+    /**
+     * Converts this game's fen into a standard (Forsyth-Edwards) FEN. Castling
+     * rights are only written for a king and rook still on their first squares,
+     * and the move counters are always 0 and 1
+     * @param fen The fen, as in Game.startFen
+     * @return the FEN
+     */
+    public static String toStandardFen(String fen) {
+        StringBuilder standard = new StringBuilder();
+        for (int rank = 7; rank >= 0; rank--) {
+            int empty = 0;
+            for (int file = 0; file < 8; file++) {
+                char c = fen.charAt(rank * 8 + file);
+                if (c == '-') {
+                    empty++;
+                } else {
+                    if (empty > 0) {
+                        standard.append(empty);
+                        empty = 0;
+                    }
+                    standard.append(STANDARD_PIECES.charAt(BitBoard.PIECES.indexOf(c)));
+                }
+            }
+            if (empty > 0) {
+                standard.append(empty);
+            }
+            if (rank > 0) {
+                standard.append('/');
+            }
+        }
+        standard.append(' ').append(fen.charAt(TURN)).append(' ');
+        String castling = "";
+        if (fen.charAt(WHITE_KING_HAS_MOVED) == 'f' && fen.charAt(4) == 'k') {
+            castling += fen.charAt(WHITE_RIGHT_ROOK_HAS_MOVED) == 'f' && fen.charAt(7) == 'r' ? "K" : "";
+            castling += fen.charAt(WHITE_LEFT_ROOK_HAS_MOVED) == 'f' && fen.charAt(0) == 'r' ? "Q" : "";
+        }
+        if (fen.charAt(BLACK_KING_HAS_MOVED) == 'f' && fen.charAt(60) == 'K') {
+            castling += fen.charAt(BLACK_RIGHT_ROOK_HAS_MOVED) == 'f' && fen.charAt(63) == 'R' ? "k" : "";
+            castling += fen.charAt(BLACK_LEFT_ROOK_HAS_MOVED) == 'f' && fen.charAt(56) == 'R' ? "q" : "";
+        }
+        standard.append(castling.isEmpty() ? "-" : castling).append(' ');
+        if (fen.charAt(DOUBLE_JUMPER_Y) == '0') {
+            standard.append('-');
+        } else {
+            //the square the pawn jumped over
+            standard.append((char) ('a' + fen.charAt(DOUBLE_JUMPER_X) - '1'))
+                    .append(fen.charAt(DOUBLE_JUMPER_Y) == '4' ? '3' : '6');
+        }
+        return standard.append(" 0 1").toString();
+    }
 }
+
@@ -1,16 +1,23 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Scanner;
 
 public class Game {
     
     public boolean inProgress = true;
     public boolean isDraw = false;
-    public ArrayList<String> fens;
+    public List<String> fens; //a GameRecord, unless the game was loaded from fens no moves lead between
     public static final String startFen = "rhbqkbhrpppppppp--------------------------------PPPPPPPPRHBQKBHR wffffff00";
     Board currentBoard;
     
@@ -18,9 +25,8 @@ public class Game {
      * Constructs a new game using the default fen
      */
     public Game(){
-        currentBoard = new Board(startFen);
-        fens = new ArrayList<String>();
-        fens.add(startFen);
+        currentBoard = Board.fromFen(startFen);
+        fens = new GameRecord(startFen);
         inProgress = true;
     }
     
@@ -29,9 +35,13 @@ public class Game {
      * @param fens A history of the game, with the most recent
      *             game state fen at the end of the list
      */
-    public Game(ArrayList<String> fens){
-        currentBoard = new Board(fens.get(fens.size() - 1));
-        this.fens = fens;
+    public Game(List<String> fens){
+        currentBoard = Board.fromFen(fens.get(fens.size() - 1));
+        try {
+            this.fens = GameRecord.of(fens);
+        } catch (IllegalArgumentException e) {
+            this.fens = new ArrayList<String>(fens); //not a game played move by move, so kept as it is
+        }
         inProgress = !currentBoard.checkMate() && !currentBoard.staleMate();
     }
     
@@ -69,7 +79,7 @@ public class Game {
                     currentBoard.forceFenUpdate(winnerUpdate);
                     System.out.println("It's a draw!");
                 }
-                fens.add(currentBoard.fen); 
+                fens.add(currentBoard.getFen()); 
                 return true;
             }
         }
@@ -98,41 +108,79 @@ public class Game {
                 //currentBoard.forceFenUpdate(move);
                 //currentBoard.promotingPawn = false;
                 currentBoard.applyMove(move);
-                fens.add(currentBoard.fen);
+                fens.add(currentBoard.getFen());
                 return;
             }
         }
     }
     
+    /**
+     * Saves the game: as PGN if the file's name ends in .pgn, as this game's
+     * fens one per line if it ends in .txt, else as a GameRecord
+     * @param dest The file
+     */
     public void saveGame(File dest){
-        PrintStream output;
         try {
-            output = new PrintStream(new FileOutputStream(dest));
-            for (int i = 0; i < fens.size(); i++){
-                output.println(fens.get(i));
+            String name = dest.getName().toLowerCase();
+            if (isPgn(dest)) {
+                try (PgnWriter output = new PgnWriter(new BufferedWriter(new FileWriter(dest)))) {
+                    output.write(PgnGame.fromFens(fens));
+                }
+            } else if (name.endsWith(".txt") || !(fens instanceof GameRecord)) {
+                try (PrintStream output = new PrintStream(new FileOutputStream(dest))) {
+                    for (int i = 0; i < fens.size(); i++){
+                        output.println(fens.get(i));
+                    }
+                }
+            } else {
+                ((GameRecord) fens).save(dest);
             }
             System.out.println("save complete!");
-        } catch (FileNotFoundException e) {
-            // TODO Auto-generated catch block
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
     
-    public static ArrayList<String> getFenListFromFile(File f){
+    /**
+     * Reads a saved game: a GameRecord, PGN (a name ending in .pgn, or a file
+     * starting with a tag), of which the first game is read, or a file of fens,
+     * one per line
+     * @param f The file
+     * @return the game's fens, the start first
+     */
+    public static List<String> getFenListFromFile(File f){
         ArrayList<String> fens = new ArrayList<String>();
-        try {
-            Scanner scanny = new Scanner(f);
-            while (scanny.hasNextLine()){
-                fens.add(scanny.nextLine());
+        try (BufferedInputStream input = new BufferedInputStream(new FileInputStream(f))) {
+            input.mark(4);
+            boolean record = new DataInputStream(input).readInt() == GameRecord.MAGIC;
+            input.reset();
+            if (record) {
+                return GameRecord.read(new DataInputStream(input));
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+            reader.mark(1);
+            if (isPgn(f) || reader.read() == '[') {
+                reader.reset();
+                PgnGame game = new PgnReader(reader).next();
+                return game == null ? fens : game.fens();
             }
-            scanny.close();
-        } catch (FileNotFoundException e) {
-            // TODO Auto-generated catch block
+            reader.reset();
+            String line;
+            while ((line = reader.readLine()) != null){
+                fens.add(line);
+            }
+        } catch (EOFException e) {
+            return fens; //too short to hold even one fen
+        } catch (IOException e) {
             e.printStackTrace();
         }
         return fens;
     }
     
+    private static boolean isPgn(File f) {
+        return f.getName().toLowerCase().endsWith(".pgn");
+    }
+    
     /**
      * 
      * @return whether or not this is a network game.
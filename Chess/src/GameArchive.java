@@ -0,0 +1,586 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A store of many games that finds, in a few page reads, every game that
+ * reached a position and what was played from it. It is a folder of:
+ * <pre>
+ *   games.dat        MAGIC, then the games one after another as GameRecords without checkpoints
+ *   games.idx        where each game starts in games.dat, a long per game
+ *   positions-n.idx  INDEX_MAGIC, how many games are indexed up to this run, how
+ *                    many entries it has (a long), then the entries sorted by key:
+ *                    long Zobrist key, int game, int ply
+ * </pre>
+ * all big-endian. Games are only ever appended, and their positions go into
+ * memory until RUN_ENTRIES of them are written out by flush as one more
+ * sorted positions file (a run); compact merges the runs into one. The files
+ * are memory mapped and searched in place, with a binary search per run. A
+ * game never crosses a CHUNK_SIZE boundary of games.dat, so each one is in a
+ * single mapping. Games written but not yet indexed when the archive was last
+ * closed (by a crash, say) are indexed again when it is opened.
+ * <p>
+ * Usage: java GameArchive &lt;folder&gt; [standard FEN]
+ * <p>
+ * Prints the moves played from the position (the usual start if no FEN is
+ * given) with how they scored, and a few of the games. GameArchiveBuilder
+ * fills an archive.
+ */
+public class GameArchive implements Closeable {
+    
+    public static final int MAGIC = 0x43415243; //"CARC"
+    public static final int INDEX_MAGIC = 0x43504F53; //"CPOS"
+    public static final String GAMES_FILE = "games.dat";
+    public static final String OFFSETS_FILE = "games.idx";
+    public static final String RUN_PREFIX = "positions-";
+    public static final String RUN_SUFFIX = ".idx";
+    public static final int INDEX_HEADER_SIZE = 16;
+    public static final int ENTRY_SIZE = 16;
+    public static final long CHUNK_SIZE = 1L << 30; //bytes per mapping
+    public static final int RUN_ENTRIES = 1 << 22; //positions kept in memory before they are written (64 MB)
+    private static final long CHUNK_ENTRIES = CHUNK_SIZE / ENTRY_SIZE;
+    
+    /**
+     * A position in one game
+     */
+    public static class Occurrence {
+        public final int game;
+        public final int ply; //moves played before it
+        
+        Occurrence(int game, int ply) {
+            this.game = game;
+            this.ply = ply;
+        }
+    }
+    
+    /**
+     * How often a move was played from a position, and how those games ended
+     */
+    public static class MoveStatistics {
+        public final int move; //a CompactMove for the position asked about
+        public int games;
+        public int whiteWins;
+        public int draws;
+        public int blackWins; //games without a result count in games only
+        
+        MoveStatistics(int move) {
+            this.move = move;
+        }
+    }
+    
+    /**
+     * One sorted positions file
+     */
+    private static class Run {
+        final File file;
+        final int games; //games indexed, this run and the ones before it together
+        final long size; //entries
+        final MappedByteBuffer[] chunks;
+        
+        Run(File file) throws IOException {
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < INDEX_HEADER_SIZE || header.getInt() != INDEX_MAGIC) {
+                    throw new IOException(file + " isn't a positions file");
+                }
+                games = header.getInt();
+                size = header.getLong();
+                if (channel.size() != INDEX_HEADER_SIZE + size * ENTRY_SIZE) {
+                    throw new IOException(file + " is the wrong size");
+                }
+                //the mappings stay valid after the channel is closed
+                chunks = new MappedByteBuffer[(int) ((size + CHUNK_ENTRIES - 1) / CHUNK_ENTRIES)];
+                for (int k = 0; k < chunks.length; k++) {
+                    long first = k * CHUNK_ENTRIES;
+                    chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, INDEX_HEADER_SIZE + first * ENTRY_SIZE,
+                                            Math.min(CHUNK_ENTRIES, size - first) * ENTRY_SIZE);
+                }
+            }
+        }
+        
+        long key(long i) {
+            return chunks[(int) (i / CHUNK_ENTRIES)].getLong((int) (i % CHUNK_ENTRIES) * ENTRY_SIZE);
+        }
+        
+        long value(long i) {
+            return chunks[(int) (i / CHUNK_ENTRIES)].getLong((int) (i % CHUNK_ENTRIES) * ENTRY_SIZE + 8);
+        }
+        
+        /**
+         * Returns the first entry with the key, or where it would be
+         */
+        long find(long key) {
+            long low = 0;
+            long high = size;
+            while (low < high) {
+                long middle = (low + high) >>> 1;
+                if (key(middle) < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+    
+    private final File folder;
+    private final FileChannel games;
+    private final FileChannel offsetsFile;
+    private long[] offsets = new long[1024]; //[game] where it starts in games.dat
+    private int count; //games
+    private long end; //where the next game goes in games.dat
+    private MappedByteBuffer[] gameChunks = new MappedByteBuffer[1];
+    private final List<Run> runs = new ArrayList<Run>();
+    private int indexed; //games whose positions are in runs
+    private long[] pendingKeys = new long[1024]; //positions not written to a run yet
+    private long[] pendingValues = new long[1024]; //game << 32 | ply
+    private int pending = 0;
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: GameArchive <folder> [standard FEN]");
+            System.exit(2);
+        }
+        StringBuilder standardFen = new StringBuilder();
+        for (int i = 1; i < args.length; i++) {
+            standardFen.append(args[i]).append(' ');
+        }
+        Board board = Board.fromFen(args.length > 1 ? FenUtility.fromStandardFen(standardFen.toString()) : Game.startFen);
+        try (GameArchive archive = new GameArchive(new File(args[0]))) {
+            board.generateMoves(new int[CompactMove.MAX_MOVES], 0); //sets up the magic bitboards, so they aren't timed
+            long start = System.nanoTime();
+            List<MoveStatistics> moves = archive.moveStatistics(board);
+            List<Occurrence> found = archive.find(board.zobristKey(), 10);
+            long micros = (System.nanoTime() - start) / 1000;
+            System.out.println(archive.size() + " games, looked up in " + micros + " us");
+            for (MoveStatistics move : moves) {
+                System.out.printf("%-8s %8d games  white %5.1f%%  draw %5.1f%%  black %5.1f%%%n",
+                                  San.toSan(board, move.move), move.games, 100.0 * move.whiteWins / move.games,
+                                  100.0 * move.draws / move.games, 100.0 * move.blackWins / move.games);
+            }
+            for (Occurrence occurrence : found) {
+                System.out.println("game " + occurrence.game + ", after " + occurrence.ply + " plies");
+            }
+        }
+    }
+    
+    /**
+     * Opens an archive, creating it if the folder doesn't have one
+     * @param folder The folder
+     * @throws IOException if the files can't be read or made, or aren't an archive's
+     */
+    public GameArchive(File folder) throws IOException {
+        this.folder = folder;
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("can't make " + folder);
+        }
+        games = new RandomAccessFile(new File(folder, GAMES_FILE), "rw").getChannel();
+        offsetsFile = new RandomAccessFile(new File(folder, OFFSETS_FILE), "rw").getChannel();
+        if (games.size() == 0) {
+            ByteBuffer magic = ByteBuffer.allocate(4).putInt(MAGIC);
+            magic.flip();
+            games.write(magic, 0);
+        }
+        ByteBuffer magic = ByteBuffer.allocate(4);
+        games.read(magic, 0);
+        magic.flip();
+        if (magic.getInt() != MAGIC) {
+            throw new IOException(folder + " isn't a game archive");
+        }
+        //a game is only there once its offset is, so anything after the last game is dropped
+        count = (int) (offsetsFile.size() / 8);
+        offsets = new long[Math.max(count, 1024)];
+        ByteBuffer read = ByteBuffer.allocate(count * 8);
+        offsetsFile.read(read, 0);
+        read.flip();
+        read.asLongBuffer().get(offsets, 0, count);
+        offsetsFile.truncate(count * 8L);
+        end = 4;
+        if (count > 0) {
+            ByteBuffer plies = ByteBuffer.allocate(4);
+            games.read(plies, offsets[count - 1] + GameRecord.PLIES_OFFSET);
+            plies.flip();
+            end = offsets[count - 1] + GameRecord.HEADER_SIZE + 2L * plies.getInt();
+        }
+        games.truncate(end);
+        File[] files = folder.listFiles();
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.getName().startsWith(RUN_PREFIX) && file.getName().endsWith(RUN_SUFFIX)) {
+                Run run = new Run(file);
+                runs.add(run);
+                indexed = Math.max(indexed, run.games);
+            }
+        }
+        for (int game = indexed; game < count; game++) {
+            index(game, game(game));
+        }
+        flush();
+    }
+    
+    /**
+     * Returns the number of games
+     */
+    public synchronized int size() {
+        return count;
+    }
+    
+    /**
+     * Reads a game
+     * @param game Its number, from 0 in the order they were added
+     * @return the game
+     * @throws IOException if it can't be read
+     */
+    public synchronized GameRecord game(int game) throws IOException {
+        if (game < 0 || game >= count) {
+            throw new IndexOutOfBoundsException("game " + game + " of " + count);
+        }
+        ByteBuffer buffer = gameBuffer(offsets[game]);
+        int at = (int) (offsets[game] % CHUNK_SIZE);
+        byte[] bytes = new byte[GameRecord.HEADER_SIZE + 2 * buffer.getInt(at + GameRecord.PLIES_OFFSET)];
+        ByteBuffer record = buffer.duplicate();
+        record.position(at);
+        record.get(bytes);
+        return GameRecord.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+    }
+    
+    /**
+     * Adds a game read from PGN
+     * @param game The game
+     * @return its number in the archive
+     * @throws IOException if it can't be written
+     */
+    public synchronized int add(PgnGame game) throws IOException {
+        GameRecord record = new GameRecord(game.startFen());
+        long[] keys = new long[game.length() + 1];
+        Board board = Board.fromFen(game.startFen());
+        for (int i = 0; i < game.length(); i++) {
+            keys[i] = board.zobristKey();
+            board.makeMove(game.move(i));
+            record.addMove(game.move(i));
+        }
+        keys[game.length()] = board.zobristKey();
+        String result = game.result();
+        record.setStatus(result.equals("1-0") ? 'w' : result.equals("0-1") ? 'b' : result.equals("1/2-1/2") ? 'd' : ' ');
+        int number = append(record);
+        for (int ply = 0; ply < keys.length; ply++) {
+            addPosition(keys[ply], number, ply);
+        }
+        if (pending >= RUN_ENTRIES) {
+            flush();
+        }
+        return number;
+    }
+    
+    /**
+     * Adds a game
+     * @param record The game
+     * @return its number in the archive
+     * @throws IOException if it can't be written
+     */
+    public synchronized int add(GameRecord record) throws IOException {
+        int number = append(record);
+        index(number, record);
+        if (pending >= RUN_ENTRIES) {
+            flush();
+        }
+        return number;
+    }
+    
+    /**
+     * Finds the games that reached a position
+     * @param key The position's key, Board.zobristKey()
+     * @param limit How many to find at most
+     * @return every time a game was in the position (more than once in a game that repeated it),
+     *         in the order the games were added
+     */
+    public synchronized List<Occurrence> find(long key, int limit) {
+        List<Occurrence> found = new ArrayList<Occurrence>();
+        for (Run run : runs) {
+            for (long i = run.find(key); i < run.size && run.key(i) == key && found.size() < limit; i++) {
+                long value = run.value(i);
+                found.add(new Occurrence((int) (value >>> 32), (int) value));
+            }
+        }
+        for (int i = 0; i < pending && found.size() < limit; i++) {
+            if (pendingKeys[i] == key) {
+                found.add(new Occurrence((int) (pendingValues[i] >>> 32), (int) pendingValues[i]));
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Counts the moves played from a position and how their games ended. The
+     * moves and results are read straight from games.dat, without playing the games
+     * @param board The position
+     * @return the moves, the most played first
+     */
+    public synchronized List<MoveStatistics> moveStatistics(Board board) {
+        Map<Integer, MoveStatistics> byCode = new HashMap<Integer, MoveStatistics>();
+        for (Occurrence occurrence : find(board.zobristKey(), Integer.MAX_VALUE)) {
+            long offset = offsets[occurrence.game];
+            ByteBuffer buffer = gameBuffer(offset);
+            int at = (int) (offset % CHUNK_SIZE);
+            if (occurrence.ply >= buffer.getInt(at + GameRecord.PLIES_OFFSET)) {
+                continue; //the game ended there
+            }
+            int code = buffer.getChar(at + GameRecord.HEADER_SIZE + 2 * occurrence.ply);
+            MoveStatistics move = byCode.get(code);
+            if (move == null) {
+                int found = board.findMove(code);
+                if (found == CompactMove.NONE) {
+                    continue; //another position with the same key
+                }
+                move = new MoveStatistics(found);
+                byCode.put(code, move);
+            }
+            move.games++;
+            char status = (char) buffer.get(at + GameRecord.STATUS_OFFSET);
+            if (status == 'w') {
+                move.whiteWins++;
+            } else if (status == 'b') {
+                move.blackWins++;
+            } else if (status == 'd') {
+                move.draws++;
+            }
+        }
+        List<MoveStatistics> moves = new ArrayList<MoveStatistics>(byCode.values());
+        Collections.sort(moves, (a, b) -> b.games - a.games);
+        return moves;
+    }
+    
+    /**
+     * Writes the positions kept in memory as one more run. Called between
+     * games, so a run always has every position of the games it covers
+     * @throws IOException if it can't be written
+     */
+    public synchronized void flush() throws IOException {
+        if (pending == 0) {
+            return;
+        }
+        sort(pendingKeys, pendingValues, 0, pending - 1);
+        File temporary = new File(folder, RUN_PREFIX + "new.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(count);
+            out.writeLong(pending);
+            for (int i = 0; i < pending; i++) {
+                out.writeLong(pendingKeys[i]);
+                out.writeLong(pendingValues[i]);
+            }
+        }
+        addRun(temporary);
+        pending = 0;
+    }
+    
+    /**
+     * Merges every run into one, so a lookup is a single binary search
+     * @throws IOException if it can't be written
+     */
+    public synchronized void compact() throws IOException {
+        flush();
+        if (runs.size() < 2) {
+            return;
+        }
+        long size = 0;
+        for (Run run : runs) {
+            size += run.size;
+        }
+        File temporary = new File(folder, RUN_PREFIX + "new.tmp");
+        long[] next = new long[runs.size()]; //[run] its next entry
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 1 << 16))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(indexed);
+            out.writeLong(size);
+            for (long written = 0; written < size; written++) {
+                //runs are few, so the smallest head is found by looking at each
+                int smallest = -1;
+                for (int r = 0; r < runs.size(); r++) {
+                    if (next[r] < runs.get(r).size && (smallest < 0 || compare(runs.get(r), next[r], runs.get(smallest), next[smallest]) < 0)) {
+                        smallest = r;
+                    }
+                }
+                Run run = runs.get(smallest);
+                out.writeLong(run.key(next[smallest]));
+                out.writeLong(run.value(next[smallest]));
+                next[smallest]++;
+            }
+        }
+        List<Run> merged = new ArrayList<Run>(runs);
+        addRun(temporary); //numbered after the runs it replaces
+        runs.removeAll(merged);
+        for (Run run : merged) {
+            if (!run.file.delete()) {
+                throw new IOException("can't delete " + run.file);
+            }
+        }
+    }
+    
+    /**
+     * Writes what is in memory, and closes the files
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        games.close();
+        offsetsFile.close();
+    }
+    
+    /**
+     * Writes a game to games.dat and its offset to games.idx
+     * @return the game's number
+     */
+    private int append(GameRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(GameRecord.HEADER_SIZE + 2 * record.plies());
+        record.write(new DataOutputStream(bytes), false);
+        if (end / CHUNK_SIZE != (end + bytes.size() - 1) / CHUNK_SIZE) {
+            end = (end / CHUNK_SIZE + 1) * CHUNK_SIZE; //would cross into the next mapping, so start there
+        }
+        games.write(ByteBuffer.wrap(bytes.toByteArray()), end);
+        ByteBuffer offset = ByteBuffer.allocate(8).putLong(end);
+        offset.flip();
+        offsetsFile.write(offset, count * 8L);
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        offsets[count] = end;
+        end += bytes.size();
+        return count++;
+    }
+    
+    /**
+     * Adds the positions of a game to the ones kept in memory
+     */
+    private void index(int number, GameRecord record) {
+        Board board = Board.fromFen(record.get(0));
+        for (int ply = 0; ply < record.plies(); ply++) {
+            addPosition(board.zobristKey(), number, ply);
+            board.makeMove(board.findMove(record.code(ply)));
+        }
+        addPosition(board.zobristKey(), number, record.plies());
+    }
+    
+    private void addPosition(long key, int game, int ply) {
+        if (pending == pendingKeys.length) {
+            pendingKeys = Arrays.copyOf(pendingKeys, pending * 2);
+            pendingValues = Arrays.copyOf(pendingValues, pending * 2);
+        }
+        pendingKeys[pending] = key;
+        pendingValues[pending++] = (long) game << 32 | ply;
+    }
+    
+    /**
+     * Renames a new run after the last one and maps it
+     */
+    private void addRun(File temporary) throws IOException {
+        int number = 0;
+        for (Run run : runs) {
+            String name = run.file.getName();
+            number = Math.max(number, Integer.parseInt(name.substring(RUN_PREFIX.length(), name.length() - RUN_SUFFIX.length())));
+        }
+        File file = new File(folder, String.format("%s%06d%s", RUN_PREFIX, number + 1, RUN_SUFFIX));
+        if (!temporary.renameTo(file)) {
+            throw new IOException("can't rename " + temporary + " to " + file);
+        }
+        Run run = new Run(file);
+        runs.add(run);
+        indexed = Math.max(indexed, run.games);
+    }
+    
+    /**
+     * Returns the mapping of games.dat a game starts in, mapping it again if it has grown
+     */
+    private ByteBuffer gameBuffer(long offset) {
+        int k = (int) (offset / CHUNK_SIZE);
+        if (k >= gameChunks.length) {
+            gameChunks = Arrays.copyOf(gameChunks, k + 1);
+        }
+        long mapped = k * CHUNK_SIZE + (gameChunks[k] == null ? 0 : gameChunks[k].capacity());
+        if (mapped < Math.min(end, (k + 1) * CHUNK_SIZE)) {
+            try {
+                gameChunks[k] = games.map(FileChannel.MapMode.READ_ONLY, k * CHUNK_SIZE,
+                                          Math.min(CHUNK_SIZE, end - k * CHUNK_SIZE));
+            } catch (IOException e) {
+                throw new IllegalStateException("can't map " + GAMES_FILE, e);
+            }
+        }
+        return gameChunks[k];
+    }
+    
+    private static int compare(Run a, long i, Run b, long j) {
+        int keys = Long.compare(a.key(i), b.key(j));
+        return keys != 0 ? keys : Long.compare(a.value(i), b.value(j));
+    }
+    
+    /**
+     * Sorts entries by key, then by value, moving the values with their keys
+     */
+    private static void sort(long[] keys, long[] values, int low, int high) {
+        while (high - low > 16) {
+            int middle = (low + high) >>> 1;
+            long pivotKey = keys[middle];
+            long pivotValue = values[middle];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivotKey || (keys[i] == pivotKey && values[i] < pivotValue)) {
+                    i++;
+                }
+                while (keys[j] > pivotKey || (keys[j] == pivotKey && values[j] > pivotValue)) {
+                    j--;
+                }
+                if (i <= j) {
+                    long key = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = key;
+                    long value = values[i];
+                    values[i] = values[j];
+                    values[j] = value;
+                    i++;
+                    j--;
+                }
+            }
+            //the smaller side by recursion, the larger by looping, so the stack stays shallow
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+        for (int i = low + 1; i <= high; i++) {
+            long key = keys[i];
+            long value = values[i];
+            int j = i - 1;
+            while (j >= low && (keys[j] > key || (keys[j] == key && values[j] > value))) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+}
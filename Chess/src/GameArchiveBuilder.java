@@ -0,0 +1,83 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fills a GameArchive from PGN files of any size (read a game at a time) and
+ * saved games (the files Game.saveGame writes), then merges its positions
+ * into one sorted run so lookups are a single binary search.
+ * <p>
+ * Usage: java GameArchiveBuilder &lt;archive folder&gt; &lt;pgn, game file or folder&gt;...
+ * <p>
+ * Games are added to what the archive already has. A folder stands for
+ * every file in it; files ending in .pgn are read as PGN.
+ */
+public class GameArchiveBuilder {
+    
+    public static final int PROGRESS_GAMES = 100000; //how often to say how far it's got
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: GameArchiveBuilder <archive folder> <pgn, game file or folder>...");
+            System.exit(2);
+        }
+        List<File> files = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            File[] contents = file.listFiles();
+            if (contents != null) {
+                Arrays.sort(contents);
+                files.addAll(Arrays.asList(contents));
+            } else {
+                files.add(file);
+            }
+        }
+        long start = System.currentTimeMillis();
+        try (GameArchive archive = new GameArchive(new File(args[0]))) {
+            int before = archive.size();
+            build(archive, files);
+            archive.compact();
+            System.out.println((archive.size() - before) + " games added, " + archive.size() + " in the archive, in "
+                               + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+    
+    /**
+     * Adds games to an archive
+     * @param archive The archive
+     * @param files PGN files (names ending in .pgn) and saved games
+     * @throws IOException if a file can't be read or the archive written
+     */
+    public static void build(GameArchive archive, List<File> files) throws IOException {
+        for (File file : files) {
+            if (file.getName().toLowerCase().endsWith(".pgn")) {
+                try (PgnReader reader = new PgnReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                    PgnGame game;
+                    while ((game = reader.next()) != null) {
+                        progress(archive.add(game));
+                    }
+                    if (reader.errors() > 0) {
+                        System.err.println(file + ": skipped " + reader.errors() + " games, the last " + reader.lastError());
+                    }
+                }
+            } else {
+                try {
+                    progress(archive.add(GameRecord.of(Game.getFenListFromFile(file))));
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    System.err.println(file + ": not a game, skipped (" + e.getMessage() + ")");
+                }
+            }
+        }
+    }
+    
+    private static void progress(int game) {
+        if ((game + 1) % PROGRESS_GAMES == 0) {
+            System.err.println((game + 1) + " games");
+        }
+    }
+}
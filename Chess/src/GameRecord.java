@@ -0,0 +1,328 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A game kept compactly: the board it started from and the 16 bit code (see
+ * CompactMove.code) of every move, instead of a fen per move. It is still the
+ * list of fens Game keeps, the start first and one more per move, but each fen
+ * is worked out when it's asked for by playing the moves from the nearest
+ * checkpoint, a fen kept every CHECKPOINT_INTERVAL plies. Going through the
+ * fens in order, either way, costs one move each.
+ * <p>
+ * Saved, a record is MAGIC, the start fen, the status of the last fen (see
+ * FenUtility.STATUS), the number of moves, the checkpoint interval (0 for
+ * none), the move codes and the checkpoint fens: under 3 bytes a move rather
+ * than the 75 of a fen per line. A record read back with checkpoints goes
+ * straight to any ply without playing the moves before its checkpoint.
+ */
+public class GameRecord extends AbstractList<String> implements RandomAccess {
+    
+    public static final int MAGIC = 0x43475231; //"CGR1"
+    public static final int CHECKPOINT_INTERVAL = 128;
+    static final int FEN_LENGTH = FenUtility.DOUBLE_JUMPER_X + 1;
+    static final int STATUS_OFFSET = 4 + FEN_LENGTH; //where write puts things, for reading a record in place
+    static final int PLIES_OFFSET = STATUS_OFFSET + 1;
+    static final int HEADER_SIZE = PLIES_OFFSET + 8; //the codes start here
+    
+    private final int interval;
+    private char[] codes = new char[64];
+    private int plies = 0;
+    private char status; //of the last fen
+    private String[] checkpoints = new String[4]; //[k] fen after k * interval plies, [0] the start
+    private Board cursor; //the board after cursorPly plies, played from the checkpoint at cursorBase
+    private int cursorPly;
+    private int cursorBase;
+    
+    /**
+     * Creates a record of a game with no moves yet
+     * @param startFen The board it starts from, as in Game.startFen
+     */
+    public GameRecord(String startFen) {
+        this(startFen, CHECKPOINT_INTERVAL);
+    }
+    
+    private GameRecord(String startFen, int interval) {
+        this.interval = interval;
+        status = startFen.charAt(FenUtility.STATUS);
+        checkpoints[0] = withStatus(startFen, ' ');
+    }
+    
+    /**
+     * Returns a list of fens as a record
+     * @param fens The fens, the start first and one more per move
+     * @return the list itself if it is a record already, else a new one
+     * @throws IllegalArgumentException if one fen doesn't follow from the one before by a legal move
+     */
+    public static GameRecord of(List<String> fens) {
+        if (fens instanceof GameRecord) {
+            return (GameRecord) fens;
+        }
+        GameRecord record = new GameRecord(fens.get(0));
+        for (int i = 1; i < fens.size(); i++) {
+            record.add(fens.get(i));
+        }
+        return record;
+    }
+    
+    /**
+     * Reads a record saved by save
+     * @param file The file
+     * @return the record
+     * @throws IOException if the file can't be read or isn't a record
+     */
+    public static GameRecord load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return read(in);
+        }
+    }
+    
+    /**
+     * Reads a record written by write
+     * @param in Where it is
+     * @return the record
+     * @throws IOException if it can't be read or isn't a record
+     */
+    public static GameRecord read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a game record");
+        }
+        String startFen = readFen(in);
+        char status = (char) in.readUnsignedByte();
+        int plies = in.readInt();
+        int fileInterval = in.readInt();
+        if (plies < 0 || fileInterval < 0) {
+            throw new IOException("corrupt game record");
+        }
+        GameRecord record = new GameRecord(startFen, fileInterval > 0 ? fileInterval : CHECKPOINT_INTERVAL);
+        record.codes = new char[Math.max(plies, 1)];
+        for (int i = 0; i < plies; i++) {
+            record.codes[i] = in.readChar();
+        }
+        record.plies = plies;
+        if (fileInterval > 0) {
+            record.checkpoints = Arrays.copyOf(record.checkpoints, plies / fileInterval + 1);
+            for (int k = 1; k <= plies / fileInterval; k++) {
+                record.checkpoints[k] = readFen(in);
+            }
+        } else {
+            //no checkpoints saved, so make them by playing the game through
+            Board board = Board.fromFen(startFen);
+            for (int i = 0; i < plies; i++) {
+                int move = board.findMove(record.codes[i]);
+                if (move == CompactMove.NONE) {
+                    throw new IOException("move " + (i + 1) + " isn't legal");
+                }
+                board.makeMove(move);
+                if ((i + 1) % record.interval == 0) {
+                    record.addCheckpoint((i + 1) / record.interval, board.getFen());
+                }
+            }
+        }
+        record.status = status;
+        return record;
+    }
+    
+    /**
+     * Saves the record, with its checkpoints
+     * @param file The file
+     * @throws IOException if it can't be written
+     */
+    public void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            write(out, true);
+        }
+    }
+    
+    /**
+     * Writes the record
+     * @param out Where it goes
+     * @param withCheckpoints Whether to write the checkpoints, for going straight to a ply once
+     *                        read back, or only the moves, for the smallest record
+     * @throws IOException if it can't be written
+     */
+    public void write(DataOutput out, boolean withCheckpoints) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeBytes(checkpoints[0]);
+        out.writeByte(status);
+        out.writeInt(plies);
+        out.writeInt(withCheckpoints ? interval : 0);
+        for (int i = 0; i < plies; i++) {
+            out.writeChar(codes[i]);
+        }
+        if (withCheckpoints) {
+            for (int k = 1; k <= plies / interval; k++) {
+                out.writeBytes(checkpoints[k]);
+            }
+        }
+    }
+    
+    /**
+     * Returns the fen after some moves
+     * @param ply How many moves, 0 for the start
+     * @return the fen, with the game's result in the last one
+     * @throws IllegalStateException if a move code read from a file isn't a legal move
+     */
+    @Override
+    public String get(int ply) {
+        if (ply < 0 || ply > plies) {
+            throw new IndexOutOfBoundsException("ply " + ply + " of " + plies);
+        }
+        position(ply);
+        return withStatus(cursor.getFen(), ply == plies ? status : ' ');
+    }
+    
+    /**
+     * Returns the number of fens, one more than the number of moves
+     */
+    @Override
+    public int size() {
+        return plies + 1;
+    }
+    
+    /**
+     * Adds the fen after the next move, working out which move that was.
+     * A fen of the same board as the last one only updates the status
+     * @param fen The fen
+     * @return true
+     * @throws IllegalArgumentException if no legal move leads to it
+     */
+    @Override
+    public boolean add(String fen) {
+        position(plies);
+        long key = Board.fromFen(fen).zobristKey();
+        if (key != cursor.zobristKey()) {
+            int found = cursor.moveTo(key);
+            if (found == CompactMove.NONE) {
+                throw new IllegalArgumentException("no move leads to " + fen + " after " + plies + " plies");
+            }
+            addMove(found);
+        }
+        status = fen.charAt(FenUtility.STATUS);
+        return true;
+    }
+    
+    /**
+     * Adds the next move
+     * @param move A legal move on the board after the last one
+     */
+    public void addMove(int move) {
+        position(plies);
+        if (plies == codes.length) {
+            codes = Arrays.copyOf(codes, plies * 2);
+        }
+        codes[plies++] = (char) CompactMove.code(move);
+        cursor.makeMove(move);
+        cursorPly++;
+        if (plies % interval == 0) {
+            addCheckpoint(plies / interval, cursor.getFen());
+        }
+        status = ' ';
+        modCount++;
+    }
+    
+    /**
+     * Sets the status of the last fen, the game's result
+     * @param status ' ' while in progress, else 'w', 'b' or 'd', see FenUtility.STATUS
+     */
+    public void setStatus(char status) {
+        this.status = status;
+        modCount++;
+    }
+    
+    /**
+     * Returns the status of the last fen
+     */
+    public char status() {
+        return status;
+    }
+    
+    /**
+     * Returns the number of moves
+     */
+    public int plies() {
+        return plies;
+    }
+    
+    /**
+     * Returns a move's code
+     * @param ply Which move, 0 for the first
+     * @return the code, see CompactMove.code
+     */
+    public int code(int ply) {
+        return codes[ply];
+    }
+    
+    /**
+     * Returns a move
+     * @param ply Which move, 0 for the first
+     * @return the move, as a CompactMove for the board in get(ply)
+     */
+    public int move(int ply) {
+        if (ply < 0 || ply >= plies) {
+            throw new IndexOutOfBoundsException("move " + ply + " of " + plies);
+        }
+        position(ply);
+        return cursor.findMove(codes[ply]);
+    }
+    
+    /**
+     * Moves the cursor to a ply: back by unmaking moves, forward by making
+     * them, or from the nearest checkpoint if that is closer
+     */
+    private void position(int ply) {
+        if (cursor != null && ply >= cursorBase && ply <= cursorPly) {
+            while (cursorPly > ply) {
+                cursor.unmakeMove();
+                cursorPly--;
+            }
+            return;
+        }
+        int base = ply / interval * interval;
+        if (cursor == null || ply < cursorPly || base > cursorPly) {
+            cursor = Board.fromFen(checkpoints[base / interval]);
+            cursorBase = base;
+            cursorPly = base;
+        }
+        while (cursorPly < ply) {
+            int move = cursor.findMove(codes[cursorPly]);
+            if (move == CompactMove.NONE) {
+                throw new IllegalStateException("move " + (cursorPly + 1) + " isn't legal");
+            }
+            cursor.makeMove(move);
+            cursorPly++;
+        }
+    }
+    
+    private void addCheckpoint(int k, String fen) {
+        if (k == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, k * 2);
+        }
+        checkpoints[k] = withStatus(fen, ' ');
+    }
+    
+    private static String readFen(DataInput in) throws IOException {
+        byte[] fen = new byte[FEN_LENGTH];
+        in.readFully(fen);
+        return new String(fen, StandardCharsets.ISO_8859_1);
+    }
+    
+    private static String withStatus(String fen, char status) {
+        if (fen.charAt(FenUtility.STATUS) == status) {
+            return fen;
+        }
+        return fen.substring(0, FenUtility.STATUS) + status + fen.substring(FenUtility.STATUS + 1);
+    }
+}
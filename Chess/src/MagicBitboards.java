@@ -0,0 +1,164 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Precomputed sliding piece attack tables. For each square the blockers
+ * that matter to a rook or bishop are masked out of the occupancy, multiplied
+ * by a magic number and shifted down to an index into that square's table,
+ * so a slider's attacks cost one table lookup. Everything is built once
+ * when the class is loaded. Squares are fen indexes (bit 0 = a1).
+ */
+public class MagicBitboards {
+    
+    private static final long SEED = 728L; //fixed so the tables are the same every run
+    
+    private static final int[][] ROOK_DIRECTIONS = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+    private static final int[][] BISHOP_DIRECTIONS = {{1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
+    
+    private static final long[] rookMasks = new long[64];
+    private static final long[] rookMagics = new long[64];
+    private static final int[] rookShifts = new int[64];
+    private static final long[][] rookTable = new long[64][];
+    
+    private static final long[] bishopMasks = new long[64];
+    private static final long[] bishopMagics = new long[64];
+    private static final int[] bishopShifts = new int[64];
+    private static final long[][] bishopTable = new long[64][];
+    
+    static {
+        Random random = new Random(SEED);
+        for (int square = 0; square < 64; square++) {
+            rookMasks[square] = relevantBlockers(square, ROOK_DIRECTIONS);
+            rookShifts[square] = 64 - Long.bitCount(rookMasks[square]);
+            rookTable[square] = new long[1 << Long.bitCount(rookMasks[square])];
+            rookMagics[square] = findMagic(square, rookMasks[square], rookShifts[square],
+                                           rookTable[square], ROOK_DIRECTIONS, random);
+            
+            bishopMasks[square] = relevantBlockers(square, BISHOP_DIRECTIONS);
+            bishopShifts[square] = 64 - Long.bitCount(bishopMasks[square]);
+            bishopTable[square] = new long[1 << Long.bitCount(bishopMasks[square])];
+            bishopMagics[square] = findMagic(square, bishopMasks[square], bishopShifts[square],
+                                             bishopTable[square], BISHOP_DIRECTIONS, random);
+        }
+    }
+    
+    /**
+     * Returns the squares a rook on the given square attacks
+     * @param square The fen index of the rook
+     * @param occupied Bitboard of every occupied square
+     * @return Bitboard of attacked squares, including the first blocker in each direction
+     */
+    public static long rookAttacks(int square, long occupied) {
+        int index = (int) (((occupied & rookMasks[square]) * rookMagics[square]) >>> rookShifts[square]);
+        return rookTable[square][index];
+    }
+    
+    /**
+     * Returns the squares a bishop on the given square attacks
+     * @param square The fen index of the bishop
+     * @param occupied Bitboard of every occupied square
+     * @return Bitboard of attacked squares, including the first blocker in each direction
+     */
+    public static long bishopAttacks(int square, long occupied) {
+        int index = (int) (((occupied & bishopMasks[square]) * bishopMagics[square]) >>> bishopShifts[square]);
+        return bishopTable[square][index];
+    }
+    
+    /**
+     * Returns the squares a queen on the given square attacks
+     * @param square The fen index of the queen
+     * @param occupied Bitboard of every occupied square
+     * @return Bitboard of attacked squares, including the first blocker in each direction
+     */
+    public static long queenAttacks(int square, long occupied) {
+        return rookAttacks(square, occupied) | bishopAttacks(square, occupied);
+    }
+    
+    /**
+     * Returns the squares whose occupancy can change a slider's attacks from
+     * the given square. The last square of each ray never matters, since the
+     * slider attacks it either way.
+     */
+    private static long relevantBlockers(int square, int[][] directions) {
+        long mask = 0L;
+        int y = square / 8;
+        int x = square % 8;
+        for (int[] d : directions) {
+            int ny = y + d[0];
+            int nx = x + d[1];
+            while (onBoard(ny + d[0], nx + d[1])) {
+                mask |= 1L << (ny * 8 + nx);
+                ny += d[0];
+                nx += d[1];
+            }
+        }
+        return mask;
+    }
+    
+    /**
+     * Walks each ray square by square. Only used to fill the tables.
+     */
+    private static long slowAttacks(int square, long occupied, int[][] directions) {
+        long attacks = 0L;
+        int y = square / 8;
+        int x = square % 8;
+        for (int[] d : directions) {
+            int ny = y + d[0];
+            int nx = x + d[1];
+            while (onBoard(ny, nx)) {
+                long bit = 1L << (ny * 8 + nx);
+                attacks |= bit;
+                if ((occupied & bit) != 0) {
+                    break;
+                }
+                ny += d[0];
+                nx += d[1];
+            }
+        }
+        return attacks;
+    }
+    
+    private static boolean onBoard(int y, int x) {
+        return y >= 0 && y < 8 && x >= 0 && x < 8;
+    }
+    
+    /**
+     * Tries random sparse numbers until one maps every blocker subset of the mask
+     * to a table slot without a harmful collision, then leaves the table filled in.
+     * @return the magic number for the square
+     */
+    private static long findMagic(int square, long mask, int shift, long[] table, int[][] directions,
+                                  Random random) {
+        int subsetCount = 1 << Long.bitCount(mask);
+        long[] subsets = new long[subsetCount];
+        long[] attacks = new long[subsetCount];
+        //enumerate every subset of the mask (Carry-Rippler)
+        long subset = 0L;
+        for (int i = 0; i < subsetCount; i++) {
+            subsets[i] = subset;
+            attacks[i] = slowAttacks(square, subset, directions);
+            subset = (subset - mask) & mask;
+        }
+        boolean[] used = new boolean[table.length];
+        while (true) {
+            long magic = random.nextLong() & random.nextLong() & random.nextLong();
+            if (Long.bitCount((mask * magic) & 0xFF00000000000000L) < 6) {
+                continue;
+            }
+            Arrays.fill(used, false);
+            boolean failed = false;
+            for (int i = 0; i < subsetCount && !failed; i++) {
+                int index = (int) ((subsets[i] * magic) >>> shift);
+                if (!used[index]) {
+                    used[index] = true;
+                    table[index] = attacks[i];
+                } else if (table[index] != attacks[i]) {
+                    failed = true;
+                }
+            }
+            if (!failed) {
+                return magic;
+            }
+        }
+    }
+}
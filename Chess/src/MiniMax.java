@@ -1,197 +1,597 @@
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 public class MiniMax {
     
     public static final int DEPTH = 4; //should always be greater than 0
-    public static final int SPLIT_DEPTH = 4; //the shallowest depth at which to split threads
+    public static final boolean ALPHA_BETA = true; //default search. false = plain minimax
+    public static final int INFINITY = 1000000; //less the plies from the root, the score for being checkmated, from the mover's side
+    public static final int MATE_BOUND = INFINITY - 1000; //scores further from 0 than this are mates
+    public static final int TABLE_SIZE_MB = 64; //default transposition table size
+    public static final int MAX_DEPTH = 64; //deepest iteration a time or node limited search goes to
+    public static final int THREADS = Runtime.getRuntime().availableProcessors(); //default search threads
+    public static final boolean QUIESCENCE = true; //default. false = evaluate the leaves as they are
+    public static final boolean NULL_MOVE_PRUNING = true; //defaults for the selective search, see SearchThread.alphaBeta
+    public static final boolean LATE_MOVE_REDUCTIONS = true;
+    public static final boolean FUTILITY_PRUNING = true;
+    public static final boolean ASPIRATION_WINDOWS = true; //default. false = every iteration searches the full window
     
-    MaxSizeHashMap<String, List<Move>> fenMoveCache;
-    int total = 0;
-    int hit = 0;
-    
-  //map from fen to pair of score and remaining depth that score was determined at
-    //Map<String, Pair<Integer, Integer>> boardMap;
+    TranspositionTable table;
+    BoardEvaluator evaluator; //used by the main search thread. helpers get their own from forThread
+    int total = 0; //transposition table probes
+    int hit = 0; //probes that found the position
+    long cutoffs = 0; //beta cutoffs in the last search, all threads together
+    long firstMoveCutoffs = 0; //the part of cutoffs caused by the first move tried
+    long nullMoveCutoffs = 0; //nodes cut off by null-move pruning in the last search
+    long reductions = 0; //moves searched shallower by late-move reductions
+    long futilityPrunes = 0; //moves skipped by futility pruning
+    int failHighs = 0; //root searches of the last search that failed high on their aspiration window
+    int failLows = 0; //root searches that failed low
+    long tablebaseHits = 0; //nodes the endgame tablebases answered in the last search
+    long nodes = 0; //positions visited by the last search, all threads together
+    long qnodes = 0; //the part of nodes visited by the quiescence search
+    int completedDepth = 0; //depth of the last finished iteration of the last search
+    int completedScore = 0; //score of the move the last search returned, from the side to move's point of view
+    private int depth;
+    private boolean useAlphaBeta = ALPHA_BETA;
+    private boolean useQuiescence = QUIESCENCE;
+    private boolean useNullMovePruning = NULL_MOVE_PRUNING;
+    private boolean useLateMoveReductions = LATE_MOVE_REDUCTIONS;
+    private boolean useFutilityPruning = FUTILITY_PRUNING;
+    private boolean useAspirationWindows = ASPIRATION_WINDOWS;
+    private long timeLimitMillis = 0; //0 = no limit
+    private long nodeLimit = 0; //0 = no limit
+    private long deadline;
+    private volatile boolean stopRequested = false;
+    private int threads = THREADS;
+    private Tablebase tablebase = Tablebase.defaultTablebase(); //null for none
+    private SearchListener listener; //null for none
+    private List<SearchThread> searchThreads = new ArrayList<SearchThread>(); //of the running search, main thread first
+    private String rootFen; //the board the running search started from
+    private long searchStart;
+    private boolean printStats = true;
+    private ExecutorService helperPool; //created the first time more than one thread searches
     
     public MiniMax() {
-        fenMoveCache = new MaxSizeHashMap<String, List<Move>>(5000);
+        this(DEPTH);
+    }
+    
+    /**
+     * Creates a MiniMax that searches to the given depth
+     * @param depth How many moves deep to search. Should always be greater than 0
+     */
+    public MiniMax(int depth) {
+        this(depth, TABLE_SIZE_MB, TranspositionTable.DEPTH_PREFERRED);
+    }
+    
+    /**
+     * Creates a MiniMax that scores boards with the given evaluator
+     * @param depth How many moves deep to search. Should always be greater than 0
+     * @param evaluator The evaluator
+     */
+    public MiniMax(int depth, BoardEvaluator evaluator) {
+        this(depth, TABLE_SIZE_MB, TranspositionTable.DEPTH_PREFERRED, evaluator);
+    }
+    
+    /**
+     * Creates a MiniMax with a transposition table of the given size
+     * @param depth How many moves deep to search. Should always be greater than 0
+     * @param tableSizeMb Size of the transposition table in megabytes
+     * @param replacementPolicy TranspositionTable.ALWAYS_REPLACE or TranspositionTable.DEPTH_PREFERRED
+     */
+    public MiniMax(int depth, int tableSizeMb, int replacementPolicy) {
+        this(depth, tableSizeMb, replacementPolicy, new PositionalBoardEvaluator());
+    }
+    
+    /**
+     * Creates a MiniMax with a transposition table of the given size and the given evaluator
+     * @param depth How many moves deep to search. Should always be greater than 0
+     * @param tableSizeMb Size of the transposition table in megabytes
+     * @param replacementPolicy TranspositionTable.ALWAYS_REPLACE or TranspositionTable.DEPTH_PREFERRED
+     * @param evaluator The evaluator
+     */
+    public MiniMax(int depth, int tableSizeMb, int replacementPolicy, BoardEvaluator evaluator) {
+        this(depth, new TranspositionTable(tableSizeMb, replacementPolicy), evaluator);
+    }
+    
+    /**
+     * Creates a MiniMax that uses the given transposition table, which may be
+     * another MiniMax's. Both can search at once, as the Lazy SMP threads do,
+     * and each finds what the other left in the table
+     * @param depth How many moves deep to search. Should always be greater than 0
+     * @param table The transposition table
+     * @param evaluator The evaluator. Not shared with another MiniMax that searches at the same time
+     */
+    public MiniMax(int depth, TranspositionTable table, BoardEvaluator evaluator) {
+        this.table = table;
+        this.depth = depth;
+        this.evaluator = evaluator;
+    }
+    
+    /**
+     * Returns the evaluator the search uses
+     * @return the evaluator
+     */
+    public BoardEvaluator evaluator() {
+        return evaluator;
+    }
+    
+    /**
+     * Switches between alpha-beta and plain minimax, which is kept for comparing
+     * their cost and for checking alpha-beta against. Both make a promotion in
+     * one ply, score checkmate by how many plies away it is and stalemate as 0,
+     * and take the tablebases' word for boards they have. So with quiescence
+     * search, the selective search (null moves, reductions, futility pruning)
+     * and aspiration windows turned off, they score the root the same at the
+     * same depth, and pick the same move unless two moves tie.
+     * @param useAlphaBeta true for alpha-beta, false for plain minimax
+     */
+    public void setAlphaBeta(boolean useAlphaBeta) {
+        this.useAlphaBeta = useAlphaBeta;
+    }
+    
+    /**
+     * Turns the alpha-beta search's quiescence search on or off. With it, the
+     * leaves aren't evaluated until the captures and promotions have played
+     * out, so the search doesn't stop in the middle of an exchange.
+     * @param useQuiescence true to search captures at the leaves
+     */
+    public void setQuiescence(boolean useQuiescence) {
+        this.useQuiescence = useQuiescence;
+    }
+    
+    /**
+     * Turns null-move pruning on or off: a node where passing the turn still
+     * scores at least beta in a shallower search is cut off
+     * @param useNullMovePruning true to prune
+     */
+    public void setNullMovePruning(boolean useNullMovePruning) {
+        this.useNullMovePruning = useNullMovePruning;
+    }
+    
+    /**
+     * Turns late-move reductions on or off: quiet moves the ordering puts late
+     * are searched shallower unless they turn out to be good
+     * @param useLateMoveReductions true to reduce
+     */
+    public void setLateMoveReductions(boolean useLateMoveReductions) {
+        this.useLateMoveReductions = useLateMoveReductions;
+    }
+    
+    /**
+     * Turns futility pruning on or off: near the leaves, quiet moves are
+     * skipped when the board is too far below alpha for them to matter
+     * @param useFutilityPruning true to prune
+     */
+    public void setFutilityPruning(boolean useFutilityPruning) {
+        this.useFutilityPruning = useFutilityPruning;
+    }
+    
+    /**
+     * Turns aspiration windows on or off: each iteration of the search only
+     * looks for scores near the last iteration's, and searches again with a
+     * wider window if the score falls outside
+     * @param useAspirationWindows true to use aspiration windows
+     */
+    public void setAspirationWindows(boolean useAspirationWindows) {
+        this.useAspirationWindows = useAspirationWindows;
+    }
+    
+    /**
+     * Sets how deep the search goes, or at most goes with a time or node limit
+     * @param depth How many moves deep to search. Should always be greater than 0
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+    
+    /**
+     * Sets who hears about every finished iteration of the alpha-beta search
+     * @param listener The listener, or null for none
+     */
+    public void setSearchListener(SearchListener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Sets the endgame tablebases the alpha-beta search uses. A board they
+     * have is answered straight from them at the root, and nodes they have
+     * inside the search aren't searched any further.
+     * @param tablebase The tablebases, or null for none. By default Tablebase.defaultTablebase()
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+    
+    /**
+     * Limits how long each alpha-beta search may think. The search deepens one
+     * move at a time and returns the best move of the last depth it finished,
+     * so it may stop before reaching the depth given to the constructor.
+     * @param timeLimitMillis Time budget per move in milliseconds, 0 for no limit
+     */
+    public void setTimeLimit(long timeLimitMillis) {
+        this.timeLimitMillis = timeLimitMillis;
+    }
+    
+    /**
+     * Limits how many positions each alpha-beta search may visit, the same way
+     * setTimeLimit limits its time. Only the main thread's nodes count.
+     * @param nodeLimit Node budget per move, 0 for no limit
+     */
+    public void setNodeLimit(long nodeLimit) {
+        this.nodeLimit = nodeLimit;
+    }
+    
+    /**
+     * Sets how many threads the alpha-beta search uses. Extra threads search
+     * the same position and share the transposition table (Lazy SMP).
+     * @param threads The number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        if (helperPool != null) {
+            helperPool.shutdown();
+            helperPool = null;
+        }
+    }
+    
+    /**
+     * Turns the line of stats (depth, time, nodes) printed after every search on or off
+     * @param printStats true to print them
+     */
+    public void setPrintStats(boolean printStats) {
+        this.printStats = printStats;
+    }
+    
+    /**
+     * Asks a running search to stop as soon as possible. It returns the
+     * best move from the last depth it finished. Safe to call from any thread.
+     */
+    public void stop() {
+        stopRequested = true;
     }
     
     /**
      * Entry point for running minimax
      * @param board Board to run on
-     * @return Best move for player whose turn it is
+     * @return Best move for player whose turn it is, or null if there are no moves. A
+     *         promotion is a single Move that both moves and promotes the pawn (see Board.toMove)
      */
     public Move doMiniMax(Board board) {
+      int m;
+      if (useAlphaBeta) {
+          m = search(board);
+      } else {
+          long timeInitial = System.currentTimeMillis();
+          //the whole search makes and unmakes moves on this one board
+          m = miniMaxRoot(Board.fromFen(board.getFen()));
+          long finishedTime = System.currentTimeMillis();
+          if (printStats) {
+              System.out.println("depth " + completedDepth + ", " + (finishedTime - timeInitial) + " ms, " + nodes + " nodes");
+          }
+      }
+      return m == CompactMove.NONE ? null : board.toMove(m);
+    }
+    
+    /**
+     * Runs the alpha-beta search, whatever setAlphaBeta says
+     * @param board Board to run on
+     * @return Best move for player whose turn it is, as a CompactMove
+     */
+    public int search(Board board) {
       long timeInitial = System.currentTimeMillis();
-      Move m = doMiniMax(board, DEPTH).first;
+      if (tablebase != null) {
+          int m = tablebase.bestMove(board);
+          if (m != CompactMove.NONE) {
+              if (printStats) {
+                  System.out.println("tablebase move, " + (System.currentTimeMillis() - timeInitial) + " ms");
+              }
+              completedScore = Tablebase.score(tablebase.probe(board));
+              if (listener != null) {
+                  listener.iterationFinished(0, completedScore, 0, System.currentTimeMillis() - timeInitial,
+                                             new int[] {m});
+              }
+              return m;
+          }
+      }
+      int m = alphaBeta(board, timeInitial);
       long finishedTime = System.currentTimeMillis();
-      System.out.println(finishedTime - timeInitial);
-      //System.out.println(hit * 1.0 / total);
+      if (printStats) {
+          System.out.println("depth " + completedDepth + ", " + (finishedTime - timeInitial) + " ms, " + nodes + " nodes ("
+                             + qnodes + " quiescence), " + String.format("%.1f", firstMoveCutoffRate() * 100)
+                             + "% of cutoffs on the first move, " + nullMoveCutoffs + " null move cutoffs, "
+                             + reductions + " reductions, " + futilityPrunes + " futility prunes, "
+                             + failHighs + " fail highs, " + failLows + " fail lows, "
+                             + tablebaseHits + " tablebase hits");
+      }
       return m;
     }
     
-
     /**
-     * Recursive minimax function
-     * @param board The board to evaluate
-     * @param remainingDepth How much deeper to evaluate
-     * @return a Pair of Move and score associated with that move
-     */   
-    private Pair<Move, Integer> doMiniMax(Board board, int remainingDepth){
-        if (remainingDepth == 0) {
-            //return score of board
-            return new Pair<Move, Integer>(null, BasicBoardEvaluator.evaluate(board.fen));
-        } else {
-            List<Move> moves = fenMoveCache.get(board.fen);
-            if (moves == null) {
-                moves = board.generateMoves();
-                fenMoveCache.put(board.fen, moves);
-            } else {
-                hit++;
-            }
-            total++;
-            BestMoveGetter bmg;
-            if (board.turn().equals("white")){
-                bmg = new WhiteBestMoveGetter();
-            } else {
-                bmg = new BlackBestMoveGetter();
-            }
-            if (false && remainingDepth >= SPLIT_DEPTH) {
-                List<Pair<Thread, MiniMaxRunnable>> threadList = new ArrayList<Pair<Thread, MiniMaxRunnable>>();
-                for (Move move : moves) {
-                    Board copiedBoard = board.copyBoard();
-                    copiedBoard.applyMove(move);
-                    MiniMaxRunnable mmr = new MiniMaxRunnable(copiedBoard, remainingDepth - 1);
-                    Thread t = new Thread(mmr);
-                    t.start();
-                    threadList.add(new Pair<Thread, MiniMaxRunnable>(t, mmr));  
-                }
-                for (int i = 0; i < threadList.size(); i++) {
-                    try {
-                        threadList.get(i).first.join();
-                    } catch (InterruptedException e) {e.printStackTrace();}
-                    bmg.updateIfBetter(moves.get(i), threadList.get(i).second.moveScorePair.second);
-                }
-            } else {
-                // go through each move. every time we find a better move, save it
-                for (Move move : moves) {
-                    Board copiedBoard = board.copyBoard();
-                    copiedBoard.applyMove(move);
-                    Pair<Move, Integer> result = doMiniMax(copiedBoard, remainingDepth - 1);
-                    bmg.updateIfBetter(move, result.second);
-                }
+     * Runs the alpha-beta search: the main SearchThread on this thread and
+     * the helpers on the pool, each with its own copy of the board. The helpers
+     * are stopped once the main thread is done.
+     * @param board Board to run on
+     * @param startTime When the search started, in System.currentTimeMillis() time
+     * @return the main thread's best move
+     */
+    private int alphaBeta(Board board, long startTime) {
+        table.newSearch();
+        stopRequested = false;
+        deadline = startTime + timeLimitMillis;
+        searchStart = startTime;
+        String fen = board.getFen();
+        rootFen = fen;
+        SearchThread main = new SearchThread(this, 0, Board.fromFen(fen));
+        List<SearchThread> helpers = new ArrayList<SearchThread>();
+        List<Future<Integer>> running = new ArrayList<Future<Integer>>();
+        if (threads > 1 && helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, r -> {
+                Thread t = new Thread(r, "search helper");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        for (int i = 1; i < threads; i++) {
+            helpers.add(new SearchThread(this, i, Board.fromFen(fen)));
+        }
+        List<SearchThread> all = new ArrayList<SearchThread>();
+        all.add(main);
+        all.addAll(helpers);
+        searchThreads = all;
+        for (SearchThread helper : helpers) {
+            running.add(helperPool.submit(helper));
+        }
+        int m = main.iterativeDeepening();
+        stopRequested = true;
+        for (Future<Integer> f : running) {
+            try {
+                f.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
             }
-            return bmg.getBestMoveScorePair();
         }
+        stopRequested = false;
+        nodes = main.nodes;
+        qnodes = main.qnodes;
+        total = main.total;
+        hit = main.hit;
+        cutoffs = main.cutoffs;
+        firstMoveCutoffs = main.firstMoveCutoffs;
+        nullMoveCutoffs = main.nullMoveCutoffs;
+        reductions = main.reductions;
+        futilityPrunes = main.futilityPrunes;
+        failHighs = main.failHighs;
+        failLows = main.failLows;
+        tablebaseHits = main.tablebaseHits;
+        for (SearchThread helper : helpers) {
+            nodes += helper.nodes;
+            qnodes += helper.qnodes;
+            cutoffs += helper.cutoffs;
+            firstMoveCutoffs += helper.firstMoveCutoffs;
+            nullMoveCutoffs += helper.nullMoveCutoffs;
+            reductions += helper.reductions;
+            futilityPrunes += helper.futilityPrunes;
+            failHighs += helper.failHighs;
+            failLows += helper.failLows;
+            tablebaseHits += helper.tablebaseHits;
+            total += helper.total;
+            hit += helper.hit;
+        }
+        completedDepth = main.completedDepth;
+        completedScore = main.completedScore;
+        return m;
     }
     
     /**
-     * Helper classes
+     * Called by the main search thread when it finishes an iteration, to tell the listener
+     * @param depth The iteration's depth
+     * @param score Its score
      */
-    
-    class MiniMaxRunnable implements Runnable {
-        public Pair<Move, Integer> moveScorePair;
-        public Board board;
-        public int depth;
-        
-        public MiniMaxRunnable(Board board, int depth) {
-            this.board = board;
-            this.depth = depth;
+    void iterationFinished(int depth, int score) {
+        if (listener == null) {
+            return;
         }
-        
-        @Override
-        public void run() {
-            moveScorePair = MiniMax.this.doMiniMax(board, depth);   
+        long allNodes = 0;
+        for (SearchThread thread : searchThreads) {
+            allNodes += thread.nodes; //the helpers' counts may be a little out of date
         }
+        listener.iterationFinished(depth, score, allNodes, System.currentTimeMillis() - searchStart,
+                                   principalVariation(Board.fromFen(rootFen), depth));
     }
     
     /**
-     * So I can return both a move and score
+     * Returns the line the transposition table expects from the board: its
+     * best move, the best reply to that, and so on, as far as the table has
+     * legal moves and without going round a repetition
+     * @param board The board. Moves are made on it and unmade again
+     * @param maxLength The most moves to return
+     * @return the moves
      */
-    class Pair<T1, T2> {
-        public T1 first;
-        public T2 second;
-        
-        public Pair(T1 first, T2 second){
-            this.first = first;
-            this.second = second;
+    public int[] principalVariation(Board board, int maxLength) {
+        int[] line = new int[maxLength];
+        long[] keys = new long[maxLength];
+        int length = 0;
+        while (length < maxLength) {
+            int move = tableMove(board);
+            if (move == CompactMove.NONE) {
+                break;
+            }
+            keys[length] = board.zobristKey();
+            board.makeMove(move);
+            line[length++] = move;
+            boolean repeated = false;
+            for (int i = 0; i < length; i++) {
+                repeated |= keys[i] == board.zobristKey();
+            }
+            if (repeated) {
+                break;
+            }
         }
+        for (int i = 0; i < length; i++) {
+            board.unmakeMove();
+        }
+        return Arrays.copyOf(line, length);
     }
     
     /**
-     * Interface for team specific BestMoveGetters
+     * Returns the best move the transposition table holds for the board, if it
+     * is legal there. After a search, for the board after the move it found,
+     * this is the reply it expects.
+     * @param board The board
+     * @return the move, or CompactMove.NONE if the table doesn't have one
      */
-    interface BestMoveGetter {
-        public void updateIfBetter(Move move, int score);
-        public Pair<Move, Integer> getBestMoveScorePair();
+    public int tableMove(Board board) {
+        long entry = table.probe(board.zobristKey());
+        return entry == TranspositionTable.NO_ENTRY ? CompactMove.NONE : board.findMove(TranspositionTable.move(entry));
     }
     
     /**
-     * White always wants max score, so start with lowest possible value
-     * and every time we see a better move, update 
+     * Returns the share of the last search's beta cutoffs that came from the first
+     * move tried at the node. The closer to 1, the better the move ordering
+     * @return the rate, 0 to 1
      */
-    class WhiteBestMoveGetter implements BestMoveGetter {
-        int maxScore = Integer.MIN_VALUE;
-        Move bestMove = null;
-        
-        @Override
-        public void updateIfBetter(Move move, int score) {
-            if (score > maxScore) {
-                maxScore = score;
-                bestMove = move;
+    public double firstMoveCutoffRate() {
+        return cutoffs == 0 ? 0 : firstMoveCutoffs * 1.0 / cutoffs;
+    }
+    
+    /**
+     * Returns the deepest iteration a search may start
+     * @return the depth
+     */
+    int maxDepth() {
+        return depth;
+    }
+    
+    /**
+     * Returns true if the leaves get a quiescence search
+     * @return true for quiescence search
+     */
+    boolean quiescence() {
+        return useQuiescence;
+    }
+    
+    boolean nullMovePruning() {
+        return useNullMovePruning;
+    }
+    
+    boolean lateMoveReductions() {
+        return useLateMoveReductions;
+    }
+    
+    boolean futilityPruning() {
+        return useFutilityPruning;
+    }
+    
+    boolean aspirationWindows() {
+        return useAspirationWindows;
+    }
+    
+    /**
+     * Returns the endgame tablebases the search probes
+     * @return the tablebases, or null for none
+     */
+    Tablebase tablebase() {
+        return tablebase;
+    }
+    
+    /**
+     * Returns true if the given search thread has to stop: stop() was called
+     * (or the main thread finished), or the time or node budget is used up
+     * @param thread The thread asking
+     */
+    boolean outOfBudget(SearchThread thread) {
+        return stopRequested
+            || (timeLimitMillis > 0 && System.currentTimeMillis() >= deadline)
+            || (nodeLimit > 0 && thread.nodes >= nodeLimit);
+    }
+    
+    /**
+     * Plain minimax at the root: every move is searched to the full depth and
+     * the first one with the best score is returned. Leaves the score in
+     * completedScore.
+     * @param board The board, which moves are made and unmade on
+     * @return the best move for the player whose turn it is, or CompactMove.NONE if there are none
+     */
+    private int miniMaxRoot(Board board) {
+        nodes = 1;
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int end = board.generateMoves(moves, 0);
+        int[][] buffers = new int[depth][CompactMove.MAX_MOVES];
+        int bestScore = -INFINITY - 1;
+        int bestMove = CompactMove.NONE;
+        for (int i = 0; i < end; i++) {
+            board.makeMove(moves[i]);
+            int score = -miniMax(board, depth - 1, 1, buffers);
+            board.unmakeMove();
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = moves[i];
             }
         }
-        
-        @Override
-        public Pair<Move, Integer> getBestMoveScorePair() {
-            return new Pair<Move, Integer>(bestMove, maxScore);
+        completedDepth = depth;
+        if (end == 0) {
+            bestScore = board.playerInCheck(board.turn()) ? -INFINITY : 0; //checkmated or stalemated already
         }
+        completedScore = bestScore;
+        return bestMove;
+    }
+    
+    /**
+     * Scores one move with plain minimax, as miniMaxRoot scores it. For
+     * checking another search's move against plain minimax
+     * @param board The board, which is left as it was
+     * @param move The move, legal on the board
+     * @return the move's score for the player who makes it
+     */
+    int miniMaxScore(Board board, int move) {
+        board.makeMove(move);
+        int score = -miniMax(board, depth - 1, 1, new int[depth][CompactMove.MAX_MOVES]);
+        board.unmakeMove();
+        return score;
     }
     
     /**
-     * Black always wants lowest score, so start with max possible value
-     * and every time we see a better move, update 
+     * Recursive plain minimax, written as negamax: scores are from the point of
+     * view of the player whose turn it is, and each player takes the move
+     * that is worst for the other. Scores boards the way the alpha-beta search
+     * (SearchThread.alphaBeta) does without quiescence search.
+     * @param board The board
+     * @param remainingDepth How much deeper to search
+     * @param ply How many moves deep the board is
+     * @param buffers Move buffers, one per ply
+     * @return the score of the board
      */
-    class BlackBestMoveGetter implements BestMoveGetter {
-        int minScore = Integer.MAX_VALUE;
-        Move bestMove = null;
-        
-        @Override
-        public void updateIfBetter(Move move, int score) {
-            if (score < minScore) {
-                minScore = score;
-                bestMove = move;
+    private int miniMax(Board board, int remainingDepth, int ply, int[][] buffers) {
+        nodes++;
+        if (tablebase != null) {
+            int value = tablebase.probe(board);
+            if (value != Tablebase.UNKNOWN) {
+                return Tablebase.score(value, ply);
             }
         }
-        
-        @Override
-        public Pair<Move, Integer> getBestMoveScorePair() {
-            return new Pair<Move, Integer>(bestMove, minScore);
+        if (remainingDepth == 0) {
+            int score = evaluator.evaluate(board);
+            return board.turn().equals("white") ? score : -score;
         }
-    }
-    
-    public class MaxSizeHashMap<K, V> extends LinkedHashMap<K, V> {
-        private final int maxSize;
-
-        public MaxSizeHashMap(int maxSize) {
-            this.maxSize = maxSize;
+        int[] moves = buffers[ply];
+        int end = board.generateMoves(moves, 0);
+        if (end == 0) {
+            //checkmate, scored by how soon, or stalemate
+            return board.playerInCheck(board.turn()) ? -(INFINITY - ply) : 0;
         }
-
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            return size() > maxSize;
+        int bestScore = -INFINITY - 1;
+        for (int i = 0; i < end; i++) {
+            board.makeMove(moves[i]);
+            bestScore = Math.max(-miniMax(board, remainingDepth - 1, ply + 1, buffers), bestScore);
+            board.unmakeMove();
         }
+        return bestScore;
     }
 }
-
-
-
-//long timeInitial = System.nanoTime();
-//Move m = doMiniMax(board, DEPTH).first;
-//long finishedTime = System.nanoTime();
-//System.out.println(finishedTime - timeInitial);
-//System.out.println(movesEvaluated);
\ No newline at end of file
@@ -1,5 +1,6 @@
 
 import java.util.ArrayList;
+import java.util.List;
 
 public class Move {
     
@@ -48,6 +49,14 @@ public class Move {
         return new String(charFen);
     }
     
+    /**
+     * Returns the changes/BoardUpdates making up this move, in the order they are applied
+     * @return the list of changes
+     */
+    public List<BoardUpdate> getChanges() {
+        return changes;
+    }
+
     /**
      * Returns the start index of this move for a non pawn promotion move
      * @return The start index of the piece of moving
@@ -0,0 +1,188 @@
+
+/**
+ * Hands out the moves of one search node one at a time, most promising first:
+ * the transposition table's move, then captures and promotions by MVV-LVA,
+ * then the killer moves, then the other quiet moves by history score. Each
+ * stage is only generated once the ones before it are used up, so a cutoff on
+ * an early move saves generating the rest.
+ * <p>
+ * SearchThread keeps one picker per ply and starts it again for every node.
+ */
+class MovePicker {
+    
+    static final int[] PIECE_VALUES = {100, 500, 320, 330, 900, 20000}; //by piece type, for ordering and delta pruning
+    
+    //stages, in order
+    private static final int HASH_MOVE = 0;
+    private static final int GENERATE_CAPTURES = 1;
+    private static final int CAPTURES = 2;
+    private static final int KILLERS = 3;
+    private static final int GENERATE_QUIETS = 4;
+    private static final int QUIETS = 5;
+    private static final int DONE = 6;
+    
+    private final Board board;
+    private final int[][] history; //[piece index][fen index], shared by the thread's pickers
+    private final int[] moves = new int[CompactMove.MAX_MOVES];
+    private final int[] scores = new int[CompactMove.MAX_MOVES];
+    private int stage;
+    private int index; //next move of the current stage
+    private int end; //index after the current stage's last move
+    private boolean capturesOnly;
+    private int hashMove; //codes (see CompactMove.code), or CompactMove.NONE
+    private int killer1;
+    private int killer2;
+    
+    /**
+     * Creates a picker
+     * @param board The board the search makes its moves on
+     * @param history The history scores of quiet moves, by piece and target square
+     */
+    MovePicker(Board board, int[][] history) {
+        this.board = board;
+        this.history = history;
+    }
+    
+    /**
+     * Starts picking every legal move of the board
+     * @param hashMove The code of the transposition table's best move, or CompactMove.NONE
+     * @param killer1 The code of a quiet move that caused a cutoff at this ply, or CompactMove.NONE
+     * @param killer2 Another one, or CompactMove.NONE
+     */
+    void start(int hashMove, int killer1, int killer2) {
+        this.hashMove = hashMove;
+        this.killer1 = killer1;
+        this.killer2 = killer2;
+        capturesOnly = false;
+        stage = HASH_MOVE;
+    }
+    
+    /**
+     * Starts picking only the captures and promotions of the board, for the quiescence search
+     */
+    void startCaptures() {
+        hashMove = killer1 = killer2 = CompactMove.NONE;
+        capturesOnly = true;
+        stage = GENERATE_CAPTURES;
+    }
+    
+    /**
+     * Returns the next move. The board must be the same as when the picker
+     * started (moves made on it since must be unmade)
+     * @return the move, or CompactMove.NONE once every move has been handed out
+     */
+    @SuppressWarnings("fallthrough") //each stage runs on into the next once it has nothing left
+    int next() {
+        switch (stage) {
+        case HASH_MOVE:
+            stage = GENERATE_CAPTURES;
+            if (hashMove != CompactMove.NONE) {
+                int move = board.findMove(hashMove);
+                if (move != CompactMove.NONE) {
+                    return move;
+                }
+            }
+            //fall through
+        case GENERATE_CAPTURES:
+            end = board.generateCaptures(moves, 0);
+            for (int i = 0; i < end; i++) {
+                scores[i] = captureOrder(moves[i]);
+            }
+            index = 0;
+            stage = CAPTURES;
+            //fall through
+        case CAPTURES:
+            while (index < end) {
+                int move = pickBest();
+                if (CompactMove.code(move) != hashMove) {
+                    return move;
+                }
+            }
+            if (capturesOnly) {
+                stage = DONE;
+                return CompactMove.NONE;
+            }
+            stage = KILLERS;
+            index = 0;
+            //fall through
+        case KILLERS:
+            while (index < 2) {
+                int killer = index++ == 0 ? killer1 : killer2;
+                if (killer != CompactMove.NONE && killer != hashMove) {
+                    //a killer is only a code, so it might not be legal here, or be a capture (already handed out)
+                    int move = board.findMove(killer);
+                    if (move != CompactMove.NONE && !CompactMove.isCapture(move) && !CompactMove.isPromotion(move)) {
+                        return move;
+                    }
+                }
+            }
+            stage = GENERATE_QUIETS;
+            //fall through
+        case GENERATE_QUIETS:
+            end = board.generateQuiets(moves, 0);
+            for (int i = 0; i < end; i++) {
+                scores[i] = history[CompactMove.piece(moves[i])][CompactMove.to(moves[i])];
+            }
+            index = 0;
+            stage = QUIETS;
+            //fall through
+        case QUIETS:
+            while (index < end) {
+                int move = pickBest();
+                int code = CompactMove.code(move);
+                if (code != hashMove && code != killer1 && code != killer2) {
+                    return move;
+                }
+            }
+            stage = DONE;
+            //fall through
+        default:
+            return CompactMove.NONE;
+        }
+    }
+    
+    /**
+     * Swaps the highest scoring move left in the stage to the front of what's
+     * left and hands it out. Selection rather than a full sort, since after a
+     * cutoff the rest are never looked at
+     * @return the move
+     */
+    private int pickBest() {
+        int best = index;
+        for (int i = index + 1; i < end; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        int move = moves[best];
+        moves[best] = moves[index];
+        scores[best] = scores[index];
+        index++;
+        return move;
+    }
+    
+    /**
+     * Returns what a capture or promotion gains in material, ignoring what the
+     * opponent might take back
+     * @param move The move
+     * @return the gain in centipawns
+     */
+    static int gain(int move) {
+        int gain = 0;
+        if (CompactMove.isCapture(move)) {
+            gain += PIECE_VALUES[CompactMove.captured(move) % 6];
+        }
+        if (CompactMove.isPromotion(move)) {
+            gain += PIECE_VALUES[CompactMove.promotion(move) % 6] - PIECE_VALUES[BitBoard.PAWN];
+        }
+        return gain;
+    }
+    
+    /**
+     * Returns the MVV-LVA score of a capture or promotion: most valuable victim
+     * first and, for the same victim, least valuable attacker first
+     */
+    private static int captureOrder(int move) {
+        return gain(move) * 8 - CompactMove.piece(move) % 6;
+    }
+}
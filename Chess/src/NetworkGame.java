@@ -1,7 +1,6 @@
 import java.io.BufferedReader;
 import java.io.PrintWriter;
 import java.net.ServerSocket;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -34,7 +33,7 @@ public class NetworkGame extends Game implements GameWithOpponent {
      * @param fens A history of the game, with the most recent
      *             game state fen at the end of the list
      */
-    public NetworkGame(String team, ArrayList<String> fens){
+    public NetworkGame(String team, List<String> fens){
         super(fens);
         this.team = team;
     }
@@ -46,7 +45,7 @@ public class NetworkGame extends Game implements GameWithOpponent {
      * @param sender PrintWriter to send data over network
      * @param receiver BufferedReader to read data from network
      */
-    public NetworkGame(String team, ArrayList<String> fens, PrintWriter sender, BufferedReader receiver){
+    public NetworkGame(String team, List<String> fens, PrintWriter sender, BufferedReader receiver){
         this(team, fens);
         this.sender = sender;
         this.receiver = receiver;
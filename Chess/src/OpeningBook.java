@@ -0,0 +1,146 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Moves played from known positions, read from a book file that
+ * OpeningBookBuilder makes. The file is an 8 byte header (MAGIC, then the
+ * number of entries) followed by fixed size entries sorted by Zobrist key:
+ * <pre>
+ *   long  Zobrist key of the position
+ *   short code of the move (see CompactMove.code)
+ *   short weight, how often the move was played (at most MAX_WEIGHT)
+ * </pre>
+ * all big-endian. The file is memory mapped and searched in place by binary
+ * search, so a lookup doesn't read anything but the few pages it touches.
+ */
+public class OpeningBook {
+    
+    public static final int MAGIC = 0x43424F4B; //"CBOK"
+    public static final int HEADER_SIZE = 8;
+    public static final int ENTRY_SIZE = 12;
+    public static final int MAX_WEIGHT = 0xFFFF;
+    public static final String FILE_PROPERTY = "chess.book";
+    public static final String DEFAULT_FILE = "book.bin";
+    
+    private static OpeningBook defaultBook; //loaded the first time it is asked for
+    private static boolean defaultBookLoaded = false;
+    
+    private final MappedByteBuffer entries;
+    private final int size; //number of entries
+    private final Random random;
+    
+    /**
+     * Opens a book file
+     * @param file The file
+     * @param random Picks between the moves of a position, weighted by how often each was played
+     * @throws IOException if the file can't be read or isn't a book
+     */
+    public OpeningBook(File file, Random random) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            //the mapping stays valid after the channel is closed
+            entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (entries.capacity() < HEADER_SIZE || entries.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not an opening book");
+        }
+        size = entries.getInt(4);
+        if ((long) HEADER_SIZE + (long) size * ENTRY_SIZE > entries.capacity()) {
+            throw new IOException(file + " is cut short");
+        }
+        this.random = random;
+    }
+    
+    /**
+     * Returns the book in the file named by the chess.book system property, or
+     * book.bin in the working directory, opened the first time it's asked for
+     * @return the book, or null if there is no book file
+     */
+    public static synchronized OpeningBook defaultBook() {
+        if (!defaultBookLoaded) {
+            defaultBookLoaded = true;
+            File file = new File(System.getProperty(FILE_PROPERTY, DEFAULT_FILE));
+            if (file.isFile()) {
+                try {
+                    defaultBook = new OpeningBook(file, new Random());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return defaultBook;
+    }
+    
+    /**
+     * Returns the number of entries in the book
+     * @return the number of (position, move) pairs
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Picks a book move for the board, at random weighted by how often each move
+     * was played. Moves that aren't legal on the board (from a key collision)
+     * are never picked.
+     * @param board The board
+     * @return the move, or CompactMove.NONE if the book doesn't know the position
+     */
+    public int move(Board board) {
+        long key = board.zobristKey();
+        int first = firstEntry(key);
+        int totalWeight = 0;
+        for (int i = first; i < size && key(i) == key; i++) {
+            if (board.findMove(code(i)) != CompactMove.NONE) {
+                totalWeight += weight(i);
+            }
+        }
+        if (totalWeight == 0) {
+            return CompactMove.NONE;
+        }
+        int pick = random.nextInt(totalWeight);
+        for (int i = first; ; i++) {
+            int move = board.findMove(code(i));
+            if (move != CompactMove.NONE) {
+                pick -= weight(i);
+                if (pick < 0) {
+                    return move;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Finds the first entry with the given key, or where it would be
+     * @param key The Zobrist key
+     * @return the entry index
+     */
+    private int firstEntry(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (key(middle) < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    private long key(int entry) {
+        return entries.getLong(HEADER_SIZE + entry * ENTRY_SIZE);
+    }
+    
+    private int code(int entry) {
+        return entries.getShort(HEADER_SIZE + entry * ENTRY_SIZE + 8) & 0xFFFF;
+    }
+    
+    private int weight(int entry) {
+        return entries.getShort(HEADER_SIZE + entry * ENTRY_SIZE + 10) & 0xFFFF;
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds an OpeningBook from saved games (the files Game.saveGame writes),
+ * PGN files of any number of games (names ending in .pgn) and GameArchives.
+ * Every move in the first plies of every game becomes an entry, weighted by
+ * how many games played it.
+ * <p>
+ * Usage: java OpeningBookBuilder &lt;book file&gt; [-plies n] [-min n] &lt;game file or folder&gt;...
+ * <p>
+ * -plies is how many moves from the start of each game go in (default 20),
+ * -min how many games must have played a move for it to go in (default 1).
+ * A folder stands for every file in it, unless it is a GameArchive.
+ */
+public class OpeningBookBuilder {
+    
+    public static final int DEFAULT_PLIES = 20;
+    public static final int DEFAULT_MIN_GAMES = 1;
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: OpeningBookBuilder <book file> [-plies n] [-min n] <game file or folder>...");
+            System.exit(2);
+        }
+        int plies = DEFAULT_PLIES;
+        int minGames = DEFAULT_MIN_GAMES;
+        List<File> games = new ArrayList<File>();
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-plies")) {
+                plies = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-min")) {
+                minGames = Integer.parseInt(args[++i]);
+            } else {
+                File file = new File(args[i]);
+                File[] contents = file.listFiles();
+                if (new File(file, GameArchive.GAMES_FILE).exists()) {
+                    games.add(file); //a GameArchive, read as a whole
+                } else if (contents != null) {
+                    Arrays.sort(contents);
+                    games.addAll(Arrays.asList(contents));
+                } else {
+                    games.add(file);
+                }
+            }
+        }
+        long start = System.currentTimeMillis();
+        int entries = build(games, new File(args[0]), plies, minGames);
+        System.out.println(entries + " entries from " + games.size() + " games in "
+                           + (System.currentTimeMillis() - start) + " ms");
+    }
+    
+    /**
+     * Builds a book
+     * @param games The saved games
+     * @param book The book file to write
+     * @param plies How many moves from the start of each game go in
+     * @param minGames How many games must have played a move for it to go in
+     * @return the number of entries written
+     * @throws IOException if the book can't be written
+     */
+    public static int build(List<File> games, File book, int plies, int minGames) throws IOException {
+        Map<Long, TreeMap<Integer, Integer>> counts = new HashMap<Long, TreeMap<Integer, Integer>>();
+        for (File game : games) {
+            if (game.isDirectory()) {
+                addArchiveGames(game, plies, counts);
+            } else if (game.getName().toLowerCase().endsWith(".pgn")) {
+                addPgnGames(game, plies, counts);
+            } else {
+                addGame(Game.getFenListFromFile(game), plies, counts, game);
+            }
+        }
+        long[] keys = new long[counts.size()];
+        int k = 0;
+        for (long key : counts.keySet()) {
+            keys[k++] = key;
+        }
+        Arrays.sort(keys); //signed order, the same as OpeningBook's binary search
+        int size = 0;
+        for (long key : keys) {
+            for (int count : counts.get(key).values()) {
+                if (count >= minGames) {
+                    size++;
+                }
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(book)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(size);
+            for (long key : keys) {
+                for (Map.Entry<Integer, Integer> move : counts.get(key).entrySet()) {
+                    if (move.getValue() >= minGames) {
+                        out.writeLong(key);
+                        out.writeShort(move.getKey());
+                        out.writeShort(Math.min(move.getValue(), OpeningBook.MAX_WEIGHT));
+                    }
+                }
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Counts the moves of one game
+     * @param fens The game's fens, one per move
+     * @param plies How many moves from the start go in
+     * @param counts Games per move code, by Zobrist key
+     * @param file The game's file, for the warning if a move can't be worked out
+     */
+    private static void addGame(List<String> fens, int plies, Map<Long, TreeMap<Integer, Integer>> counts, File file) {
+        for (int i = 0; i < plies && i + 1 < fens.size(); i++) {
+            Board board = Board.fromFen(fens.get(i));
+            int move = board.moveTo(Board.fromFen(fens.get(i + 1)).zobristKey());
+            if (move == CompactMove.NONE) {
+                System.err.println(file + ": no move leads from fen " + (i + 1) + " to fen " + (i + 2) + ", skipping the rest");
+                return;
+            }
+            count(counts, board.zobristKey(), CompactMove.code(move));
+        }
+    }
+    
+    /**
+     * Counts the moves of every game in a GameArchive
+     * @param folder The archive's folder
+     * @param plies How many moves from the start of each game go in
+     * @param counts Games per move code, by Zobrist key
+     * @throws IOException if the archive can't be read
+     */
+    private static void addArchiveGames(File folder, int plies, Map<Long, TreeMap<Integer, Integer>> counts) throws IOException {
+        try (GameArchive archive = new GameArchive(folder)) {
+            for (int game = 0; game < archive.size(); game++) {
+                GameRecord record = archive.game(game);
+                Board board = Board.fromFen(record.get(0));
+                for (int i = 0; i < plies && i < record.plies(); i++) {
+                    count(counts, board.zobristKey(), record.code(i));
+                    board.makeMove(board.findMove(record.code(i)));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Counts the moves of every game in a PGN file, reading one game at a time
+     * @param file The PGN file
+     * @param plies How many moves from the start of each game go in
+     * @param counts Games per move code, by Zobrist key
+     * @throws IOException if the file can't be read
+     */
+    private static void addPgnGames(File file, int plies, Map<Long, TreeMap<Integer, Integer>> counts) throws IOException {
+        try (PgnReader reader = new PgnReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                Board board = Board.fromFen(game.startFen());
+                for (int i = 0; i < plies && i < game.length(); i++) {
+                    int move = game.move(i);
+                    count(counts, board.zobristKey(), CompactMove.code(move));
+                    board.makeMove(move);
+                }
+            }
+            if (reader.errors() > 0) {
+                System.err.println(file + ": skipped " + reader.errors() + " games, the last " + reader.lastError());
+            }
+        }
+    }
+    
+    /**
+     * Counts one more game playing a move from a position
+     * @param counts Games per move code, by Zobrist key
+     * @param key The position's Zobrist key
+     * @param code The move's code
+     */
+    private static void count(Map<Long, TreeMap<Integer, Integer>> counts, long key, int code) {
+        TreeMap<Integer, Integer> positionCounts = counts.get(key);
+        if (positionCounts == null) {
+            positionCounts = new TreeMap<Integer, Integer>();
+            counts.put(key, positionCounts);
+        }
+        Integer count = positionCounts.get(code);
+        positionCounts.put(code, count == null ? 1 : count + 1);
+    }
+}
@@ -0,0 +1,99 @@
+
+/**
+ * Fixed size cache of pawn structure evaluations, keyed by pawn key (see
+ * Zobrist.pawnHash). Pawns move far less often than the rest of the board,
+ * so most positions a search evaluates share their pawns with one already
+ * evaluated. Like TranspositionTable, the entries live in parallel arrays and
+ * the slot for a key is its low bits; a new entry always replaces the old one.
+ * <p>
+ * Not thread safe: every search thread's evaluator has its own table.
+ */
+public class PawnHashTable {
+    
+    public static final int DEFAULT_SIZE_KB = 512;
+    
+    static final int BYTES_PER_ENTRY = 24;
+    
+    private final long[] keys;
+    private final int[] middlegame;
+    private final int[] endgame;
+    private final long[] passed;
+    private final int mask;
+    
+    long total = 0; //probes
+    long hit = 0; //probes that found the pawns
+    
+    /**
+     * Creates a table
+     * @param sizeKb The most memory the table may use, in kilobytes
+     */
+    public PawnHashTable(int sizeKb) {
+        long maxEntries = Math.max(1L, (long) sizeKb * 1024 / BYTES_PER_ENTRY);
+        int entries = (int) Math.min(Long.highestOneBit(maxEntries), 1 << 30);
+        keys = new long[entries];
+        middlegame = new int[entries];
+        endgame = new int[entries];
+        passed = new long[entries];
+        mask = entries - 1;
+    }
+    
+    /**
+     * Returns the number of entries the table holds
+     * @return the number of entries
+     */
+    public int capacity() {
+        return keys.length;
+    }
+    
+    /**
+     * Looks up a pawn structure. An empty slot has key 0, which is also the
+     * key of a board without pawns, so those always hit with a score of 0 and
+     * no passed pawns, which is right.
+     * @param pawnKey The pawn key
+     * @return the slot holding the entry, or -1 if it isn't stored
+     */
+    public int probe(long pawnKey) {
+        int slot = (int) pawnKey & mask;
+        total++;
+        if (keys[slot] != pawnKey) {
+            return -1;
+        }
+        hit++;
+        return slot;
+    }
+    
+    /**
+     * Stores a pawn structure's evaluation
+     * @param pawnKey The pawn key
+     * @param middlegameScore The middlegame score, from white's side
+     * @param endgameScore The endgame score, from white's side
+     * @param passedPawns Bitboard of every passed pawn, both sides
+     */
+    public void store(long pawnKey, int middlegameScore, int endgameScore, long passedPawns) {
+        int slot = (int) pawnKey & mask;
+        keys[slot] = pawnKey;
+        middlegame[slot] = middlegameScore;
+        endgame[slot] = endgameScore;
+        passed[slot] = passedPawns;
+    }
+    
+    public int middlegame(int slot) {
+        return middlegame[slot];
+    }
+    
+    public int endgame(int slot) {
+        return endgame[slot];
+    }
+    
+    public long passed(int slot) {
+        return passed[slot];
+    }
+    
+    /**
+     * Returns the share of probes that hit
+     * @return the hit rate, 0 to 1
+     */
+    public double hitRate() {
+        return total == 0 ? 0 : hit * 1.0 / total;
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.Arrays;
+
+/**
+ * Counts the positions reachable in exactly N moves (perft), to check move
+ * generation against known counts and to time it. A promotion counts as one
+ * move per promotion piece, the same as in the published counts.
+ * <p>
+ * Usage:
+ * <pre>
+ * java Perft [legacy] [maxDepth]                 checks every reference position
+ * java Perft [legacy] count &lt;depth&gt; [fen]        counts from fen (the start position by default)
+ * java Perft [legacy] divide &lt;depth&gt; [fen]       also prints the count after each first move
+ * </pre>
+ * legacy runs on the fen String Board instead of the BitBoard.
+ */
+public class Perft {
+    
+    //reference positions, with their counts for depth 1, 2, 3...
+    private static final String[] NAMES = {
+        "start",
+        "kiwipete",
+        "position 3",
+        "position 4",
+        "position 5",
+        "position 6",
+    };
+    private static final String[] FENS = {
+        Game.startFen,
+        "r---k--rpppbbppp--h--q-P-P--p------ph---BH--PHP-P-PPQPB-R---K--R wffffff00",
+        "------------p-p----------r---P-Kkp-----R---P------P------------- wtttttt00",
+        "r--q-rk-pP-p--ppQ----h--bbp-p---Hp-------B---HBhpPPP-PPPR---K--R wtttfff00",
+        "rhbqk--rppp-hHpp----------b---------------P-----PP-pBPPPRHBQ-K-R wfffttt00",
+        "r----rk--pp-qpppp-hp-h----b-p-B---B-P-b-P-HP-H---PP-QPPPR----RK- wtttttt00",
+    };
+    private static final long[][] COUNTS = {
+        {20, 400, 8902, 197281, 4865609},
+        {48, 2039, 97862, 4085603},
+        {14, 191, 2812, 43238, 674624},
+        {6, 264, 9467, 422333},
+        {44, 1486, 62379, 2103487},
+        {46, 2079, 89890, 3894594},
+    };
+    
+    public static void main(String[] args) {
+        boolean legacy = args.length > 0 && args[0].equals("legacy");
+        int a = legacy ? 1 : 0;
+        if (args.length > a && (args[a].equals("count") || args[a].equals("divide"))) {
+            int depth = Integer.parseInt(args[a + 1]);
+            String fen = Game.startFen;
+            if (args.length > a + 2) {
+                //a fen has a space in it, so it may come in as two arguments
+                fen = String.join(" ", Arrays.copyOfRange(args, a + 2, args.length));
+            }
+            Board board = legacy ? new Board(fen) : new BitBoard(fen);
+            long start = System.nanoTime();
+            long nodes = args[a].equals("divide") ? divide(board, depth) : perft(board, depth);
+            System.out.println(nodes + " nodes, " + report(nodes, System.nanoTime() - start));
+        } else {
+            int maxDepth = args.length > a ? Integer.parseInt(args[a]) : Integer.MAX_VALUE;
+            System.exit(check(legacy, maxDepth) ? 0 : 1);
+        }
+    }
+    
+    /**
+     * Runs every reference position to its deepest known count, or maxDepth
+     * @param legacy true to use the fen String Board, false for the BitBoard
+     * @param maxDepth The deepest count to check
+     * @return true if every count matched
+     */
+    public static boolean check(boolean legacy, int maxDepth) {
+        boolean passed = true;
+        long totalNodes = 0;
+        long totalTime = 0;
+        for (int i = 0; i < FENS.length; i++) {
+            for (int depth = 1; depth <= Math.min(maxDepth, COUNTS[i].length); depth++) {
+                Board board = legacy ? new Board(FENS[i]) : new BitBoard(FENS[i]);
+                long start = System.nanoTime();
+                long nodes = perft(board, depth);
+                long time = System.nanoTime() - start;
+                totalNodes += nodes;
+                totalTime += time;
+                long expected = COUNTS[i][depth - 1];
+                System.out.println(String.format("%-10s depth %d: %10d %s", NAMES[i], depth, nodes,
+                        nodes == expected ? "ok  " : "FAIL (expected " + expected + ")") + "  " + report(nodes, time));
+                if (nodes != expected || !board.getFen().equals(FENS[i])) {
+                    passed = false;
+                }
+            }
+        }
+        System.out.println((passed ? "passed" : "FAILED") + ", " + totalNodes + " nodes, " + report(totalNodes, totalTime));
+        return passed;
+    }
+    
+    /**
+     * Counts the positions reachable from the board in exactly depth moves.
+     * The board is left as it was.
+     * @param board The board to count from
+     * @param depth How many moves deep to count
+     * @return the number of positions
+     */
+    public static long perft(Board board, int depth) {
+        return perft(board, depth, new int[depth + 1][CompactMove.MAX_MOVES]);
+    }
+    
+    /**
+     * Counts like perft, and prints the count after each first move
+     * @param board The board to count from
+     * @param depth How many moves deep to count, at least 1
+     * @return the number of positions
+     */
+    public static long divide(Board board, int depth) {
+        int[][] buffers = new int[depth + 1][CompactMove.MAX_MOVES];
+        int[] moves = buffers[depth];
+        int end = board.generateMoves(moves, 0);
+        long nodes = 0;
+        for (int i = 0; i < end; i++) {
+            board.makeMove(moves[i]);
+            long n = depth == 1 ? 1 : perft(board, depth - 1, buffers);
+            board.unmakeMove();
+            System.out.println(CompactMove.toString(moves[i]) + ": " + n);
+            nodes += n;
+        }
+        System.out.println(end + " moves");
+        return nodes;
+    }
+    
+    /**
+     * Recursive perft. The last move of the line isn't made: the number of
+     * moves generated is the number of positions it leads to.
+     * @param buffers Move buffers, one per remaining depth
+     */
+    private static long perft(Board board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth];
+        int end = board.generateMoves(moves, 0);
+        if (depth == 1) {
+            return end;
+        }
+        long nodes = 0;
+        for (int i = 0; i < end; i++) {
+            board.makeMove(moves[i]);
+            nodes += perft(board, depth - 1, buffers);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+    
+    /**
+     * Formats a time and speed
+     * @param nodes Positions counted
+     * @param nanos Time taken in nanoseconds
+     * @return e.g. "120 ms, 1500000 nodes/s"
+     */
+    private static String report(long nodes, long nanos) {
+        return (nanos / 1000000) + " ms, " + (nanos == 0 ? 0 : nodes * 1000000000L / nanos) + " nodes/s";
+    }
+}
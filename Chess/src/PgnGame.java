@@ -0,0 +1,139 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One game read from or to be written to PGN: the tag pairs, the board it
+ * started from and its moves as CompactMoves. Comments and variations aren't
+ * kept.
+ */
+public class PgnGame {
+    
+    public static final String[] SEVEN_TAG_ROSTER = {"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+    public static final String UNFINISHED = "*";
+    
+    private final Map<String, String> tags = new LinkedHashMap<String, String>();
+    private final String startFen;
+    private int[] moves = new int[128];
+    private int length = 0;
+    
+    /**
+     * Creates a game from the usual start, with no moves yet
+     */
+    public PgnGame() {
+        this(Game.startFen);
+    }
+    
+    /**
+     * Creates a game with no moves yet
+     * @param startFen The board it starts from, as in Game.startFen
+     */
+    public PgnGame(String startFen) {
+        this.startFen = startFen;
+    }
+    
+    /**
+     * Works out the moves of a game kept as fens, such as Game.fens
+     * @param fens The boards, the one the game started from first and one more per move
+     * @return the game, without tags other than the result
+     * @throws IllegalArgumentException if one board doesn't follow from the one before by a legal move
+     */
+    public static PgnGame fromFens(List<String> fens) {
+        PgnGame game = new PgnGame(fens.get(0));
+        Board board = Board.fromFen(fens.get(0));
+        for (int i = 1; i < fens.size(); i++) {
+            int found = board.moveTo(Board.fromFen(fens.get(i)).zobristKey());
+            if (found == CompactMove.NONE) {
+                throw new IllegalArgumentException("no move leads from fen " + i + " to fen " + (i + 1));
+            }
+            board.makeMove(found);
+            game.addMove(found);
+        }
+        char status = fens.get(fens.size() - 1).charAt(FenUtility.STATUS);
+        game.setTag("Result", status == 'w' ? "1-0" : status == 'b' ? "0-1" : status == 'd' ? "1/2-1/2" : UNFINISHED);
+        return game;
+    }
+    
+    public String startFen() {
+        return startFen;
+    }
+    
+    /**
+     * Returns a tag's value
+     * @param name The tag's name, e.g. "White"
+     * @return the value, or null if the game doesn't have the tag
+     */
+    public String tag(String name) {
+        return tags.get(name);
+    }
+    
+    public void setTag(String name, String value) {
+        tags.put(name, value);
+    }
+    
+    /**
+     * Returns every tag, in the order they were set
+     */
+    public Map<String, String> tags() {
+        return tags;
+    }
+    
+    /**
+     * Returns the result, "1-0", "0-1", "1/2-1/2" or "*" if the game didn't finish
+     */
+    public String result() {
+        String result = tags.get("Result");
+        return result == null ? UNFINISHED : result;
+    }
+    
+    public void addMove(int move) {
+        if (length == moves.length) {
+            moves = Arrays.copyOf(moves, length * 2);
+        }
+        moves[length++] = move;
+    }
+    
+    /**
+     * Returns the number of moves (plies) in the game
+     */
+    public int length() {
+        return length;
+    }
+    
+    /**
+     * Returns a move
+     * @param ply Which move, 0 for the first
+     * @return the move
+     */
+    public int move(int ply) {
+        return moves[ply];
+    }
+    
+    /**
+     * Plays the game out into fens, the way Game keeps them: the start first,
+     * then one per move, the last with the result if the board ended the game
+     * @return the fens
+     */
+    public ArrayList<String> fens() {
+        ArrayList<String> fens = new ArrayList<String>(length + 1);
+        fens.add(startFen);
+        Board board = Board.fromFen(startFen);
+        for (int i = 0; i < length; i++) {
+            board.makeMove(moves[i]);
+            fens.add(board.getFen());
+        }
+        if (length > 0) {
+            char status = ' ';
+            if (board.checkMate()) {
+                status = board.turn().equals("white") ? 'b' : 'w';
+            } else if (board.draw()) {
+                status = 'd';
+            }
+            String last = fens.get(length);
+            fens.set(length, last.substring(0, FenUtility.STATUS) + status + last.substring(FenUtility.STATUS + 1));
+        }
+        return fens;
+    }
+}
@@ -0,0 +1,320 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads games out of PGN one at a time, so files of any size go through in
+ * the memory of one game. Moves are read as SAN against the board (see San),
+ * so every game that comes out is legal; a game with a move that isn't is
+ * skipped, counted in errors(), and reading goes on with the next one.
+ * Comments, variations, NAGs and % escape lines are skipped. A FEN tag sets
+ * the board the game starts from.
+ * <p>
+ * Usage: java PgnReader &lt;pgn file&gt; [-fens]
+ * <p>
+ * Reads every game and prints how many there were and how fast they read,
+ * or with -fens the standard FEN of every board of every game instead.
+ */
+public class PgnReader implements Closeable {
+    
+    public static final int BUFFER_SIZE = 1 << 16;
+    private static final int EOF = -1;
+    
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private int line = 1;
+    private boolean lineStart = true; //nothing but the current character has been read on its line
+    private final StringBuilder token = new StringBuilder();
+    private long games = 0;
+    private long errors = 0;
+    private String lastError;
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: PgnReader <pgn file> [-fens]");
+            System.exit(2);
+        }
+        boolean printFens = args.length > 1 && args[1].equals("-fens");
+        long start = System.currentTimeMillis();
+        long plies = 0;
+        PrintStream out = new PrintStream(new BufferedOutputStream(System.out), false);
+        try (PgnReader reader = new PgnReader(new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8))) {
+            PgnGame game;
+            while ((game = reader.next()) != null) {
+                plies += game.length();
+                if (printFens) {
+                    for (String fen : game.fens()) {
+                        out.println(FenUtility.toStandardFen(fen));
+                    }
+                }
+            }
+            out.flush();
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.err.println(reader.games() + " games, " + plies + " plies, " + reader.errors() + " skipped in "
+                               + millis + " ms (" + plies * 1000 / millis + " plies/s)");
+            if (reader.lastError() != null) {
+                System.err.println("last skipped: " + reader.lastError());
+            }
+        }
+    }
+    
+    /**
+     * Creates a reader. It reads in blocks of its own, so the Reader needn't be buffered
+     * @param in The PGN
+     */
+    public PgnReader(Reader in) {
+        this.in = in;
+    }
+    
+    /**
+     * Reads the next game
+     * @return the game, or null at the end of the PGN
+     * @throws IOException if the PGN can't be read
+     */
+    public PgnGame next() throws IOException {
+        while (true) {
+            skipSpace();
+            if (peek() == EOF) {
+                return null;
+            }
+            int gameLine = line;
+            try {
+                PgnGame game = readGame();
+                if (game != null) {
+                    games++;
+                    return game;
+                }
+            } catch (IllegalArgumentException e) {
+                errors++;
+                lastError = "game at line " + gameLine + ": " + e.getMessage();
+                skipGame();
+            }
+        }
+    }
+    
+    /**
+     * Returns how many games next has returned
+     */
+    public long games() {
+        return games;
+    }
+    
+    /**
+     * Returns how many games were skipped because they had an illegal move or bad tags
+     */
+    public long errors() {
+        return errors;
+    }
+    
+    /**
+     * Returns why the last skipped game was skipped, or null if none was
+     */
+    public String lastError() {
+        return lastError;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    /**
+     * Reads the tags and moves of one game, up to and including its result
+     * @return the game, or null if there were neither tags nor moves
+     * @throws IllegalArgumentException if the game has a move that isn't legal, or a bad FEN
+     */
+    private PgnGame readGame() throws IOException {
+        String fen = null;
+        //tags first: [Name "value"]
+        Map<String, String> tags = new LinkedHashMap<String, String>();
+        while (peek() == '[') {
+            read();
+            skipSpace();
+            token.setLength(0);
+            while (peek() != EOF && peek() != '"' && peek() != ']' && !Character.isWhitespace(peek())) {
+                token.append((char) read());
+            }
+            String name = token.toString();
+            skipSpace();
+            token.setLength(0);
+            if (peek() == '"') {
+                read();
+                int c;
+                while ((c = read()) != EOF && c != '"') {
+                    if (c == '\\' && (peek() == '"' || peek() == '\\')) {
+                        c = read();
+                    }
+                    token.append((char) c);
+                }
+            }
+            while (peek() != EOF && read() != ']') {
+                //anything after the value
+            }
+            if (name.equals("FEN")) {
+                fen = FenUtility.fromStandardFen(token.toString());
+            }
+            tags.put(name, token.toString());
+            skipSpace();
+        }
+        PgnGame game = new PgnGame(fen == null ? Game.startFen : fen);
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            game.setTag(tag.getKey(), tag.getValue());
+        }
+        Board board = Board.fromFen(game.startFen());
+        //then the moves, up to the result
+        while (true) {
+            skipSpace();
+            int c = peek();
+            if (c == EOF || (c == '[' && lineStart)) {
+                //no result, the next game's tags or the end of the file. Null if there was nothing but comments
+                return tags.isEmpty() && game.length() == 0 ? null : game;
+            } else if (c == '{') {
+                skipPast('}');
+            } else if (c == ';' || (c == '%' && lineStart)) {
+                skipPast('\n');
+            } else if (c == '(') {
+                skipVariation();
+            } else if (c == '$') {
+                read();
+                while (peek() >= '0' && peek() <= '9') {
+                    read();
+                }
+            } else if (c == ')' || c == '}' || c == '[' || c == ']') {
+                read(); //stray, nothing to do with the moves
+            } else {
+                String word = readWord();
+                if (word.equals("1-0") || word.equals("0-1") || word.equals("1/2-1/2") || word.equals("*")) {
+                    if (game.tag("Result") == null || game.result().equals(PgnGame.UNFINISHED)) {
+                        game.setTag("Result", word);
+                    }
+                    return game;
+                }
+                //move numbers (12. or 12...), which may run straight into the move (12.e4)
+                int i = 0;
+                if (!word.startsWith("0-0")) {
+                    while (i < word.length() && word.charAt(i) >= '0' && word.charAt(i) <= '9') {
+                        i++;
+                    }
+                    if (i < word.length() && word.charAt(i) != '.') {
+                        i = 0;
+                    }
+                    while (i < word.length() && word.charAt(i) == '.') {
+                        i++;
+                    }
+                }
+                if (i < word.length() && !word.equals("e.p.") && !isAnnotation(word)) {
+                    String san = word.substring(i);
+                    int move = San.parse(board, san);
+                    if (move == CompactMove.NONE) {
+                        throw new IllegalArgumentException("illegal move " + san + " after "
+                                                           + game.length() + " plies, line " + line);
+                    }
+                    board.makeMove(move);
+                    game.addMove(move);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns true if a word is only move annotations, such as "!?" written apart from its move
+     */
+    private static boolean isAnnotation(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            if ("!?".indexOf(word.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Reads up to the next whitespace or PGN punctuation
+     */
+    private String readWord() throws IOException {
+        token.setLength(0);
+        int c;
+        while ((c = peek()) != EOF && !Character.isWhitespace(c) && "{};()[]$".indexOf(c) < 0) {
+            token.append((char) read());
+        }
+        if (token.length() == 0) {
+            token.append((char) read());
+        }
+        return token.toString();
+    }
+    
+    /**
+     * Skips the rest of a game that couldn't be read: up to the next tag at the start of a line
+     */
+    private void skipGame() throws IOException {
+        int c;
+        while ((c = peek()) != EOF && !(c == '[' && lineStart)) {
+            read();
+        }
+    }
+    
+    /**
+     * Skips a variation, with the variations and comments inside it
+     */
+    private void skipVariation() throws IOException {
+        int depth = 0;
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return;
+            } else if (c == '{') {
+                skipPast('}');
+            } else if (c == ';') {
+                skipPast('\n');
+            }
+        }
+    }
+    
+    private void skipPast(char end) throws IOException {
+        int c;
+        while ((c = read()) != EOF && c != end) {
+            //skipped
+        }
+    }
+    
+    private void skipSpace() throws IOException {
+        while (peek() != EOF && Character.isWhitespace(peek())) {
+            read();
+        }
+    }
+    
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position];
+    }
+    
+    private int read() throws IOException {
+        int c = peek();
+        if (c != EOF) {
+            position++;
+            lineStart = c == '\n';
+            if (lineStart) {
+                line++;
+            }
+        }
+        return c;
+    }
+}
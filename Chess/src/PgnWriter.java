@@ -0,0 +1,108 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Writes games as PGN: the seven tag roster (with "?" for the ones a game
+ * doesn't have), SetUp and FEN when it doesn't start from the usual board,
+ * any other tags, then the moves in SAN, wrapped to fit LINE_LENGTH.
+ */
+public class PgnWriter implements Closeable, Flushable {
+    
+    public static final int LINE_LENGTH = 79;
+    
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder();
+    
+    /**
+     * Creates a writer. Games are written a line at a time, so the Writer should be buffered
+     * @param out Where the PGN goes
+     */
+    public PgnWriter(Writer out) {
+        this.out = out;
+    }
+    
+    /**
+     * Writes one game, followed by a blank line
+     * @param game The game
+     * @throws IOException if the PGN can't be written
+     */
+    public void write(PgnGame game) throws IOException {
+        for (String name : PgnGame.SEVEN_TAG_ROSTER) {
+            String value = name.equals("Result") ? game.result() : game.tag(name);
+            writeTag(name, value == null ? "?" : value);
+        }
+        boolean setUp = !game.startFen().equals(Game.startFen);
+        if (setUp) {
+            writeTag("SetUp", "1");
+            writeTag("FEN", FenUtility.toStandardFen(game.startFen()));
+        }
+        for (Map.Entry<String, String> tag : game.tags().entrySet()) {
+            String name = tag.getKey();
+            if (!isRosterTag(name) && !(setUp && (name.equals("SetUp") || name.equals("FEN")))) {
+                writeTag(name, tag.getValue());
+            }
+        }
+        out.write('\n');
+        Board board = Board.fromFen(game.startFen());
+        int moveNumber = 1;
+        for (int i = 0; i < game.length(); i++) {
+            int move = game.move(i);
+            boolean white = board.turn().equals("white");
+            if (white) {
+                word(moveNumber + ".");
+            } else if (i == 0) {
+                word(moveNumber + "...");
+            }
+            word(San.toSan(board, move));
+            board.makeMove(move);
+            if (!white) {
+                moveNumber++;
+            }
+        }
+        word(game.result());
+        out.write(line.toString());
+        out.write("\n\n");
+        line.setLength(0);
+    }
+    
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    private static boolean isRosterTag(String name) {
+        for (String roster : PgnGame.SEVEN_TAG_ROSTER) {
+            if (roster.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void writeTag(String name, String value) throws IOException {
+        out.write("[" + name + " \"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"]\n");
+    }
+    
+    /**
+     * Adds a word of movetext, starting a new line first if it wouldn't fit
+     */
+    private void word(String word) throws IOException {
+        if (line.length() > 0 && line.length() + 1 + word.length() > LINE_LENGTH) {
+            out.write(line.toString());
+            out.write('\n');
+            line.setLength(0);
+        }
+        if (line.length() > 0) {
+            line.append(' ');
+        }
+        line.append(word);
+    }
+}
@@ -0,0 +1,17 @@
+
+/**
+ * Evaluates a board by material and piece placement, with tapered middlegame
+ * and endgame values (see PieceSquareTables)
+ */
+public class PieceSquareEvaluator {
+    
+    /**
+     * Evaluates the given board. Constant time on a BitBoard, which keeps the
+     * score up to date as moves are made.
+     * @param board The board to evaluate
+     * @return The score. High number = good for white. negative number = good for black
+     */
+    public static int evaluate(Board board) {
+        return board.pieceSquareScore();
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.Scanner;
+
+/**
+ * Piece values and piece-square tables for PieceSquareEvaluator. There are two
+ * sets, one for the middlegame and one for the endgame, and a board's score
+ * slides from one to the other as pieces come off (see taper). Every value
+ * already includes the piece's material, and black's are negated, so a board's
+ * middlegame score is just the sum of its pieces' middlegame values. That lets
+ * BitBoard keep the sums up to date as pieces move, like its Zobrist key.
+ * <p>
+ * The values are read from pst.txt (next to the classes) when the class loads,
+ * so they can be tuned without recompiling. Run with -Dchess.pst=&lt;file&gt; to
+ * use a different file. The file explains its own format.
+ */
+public class PieceSquareTables {
+    
+    public static final String FILE_PROPERTY = "chess.pst";
+    public static final String DEFAULT_FILE = "pst.txt";
+    public static final int MAX_PHASE = 24; //phase of the starting position. more than this counts as this
+    
+    //file order of the pieces
+    private static final String[] PIECE_NAMES = {"pawn", "rook", "horse", "bishop", "queen", "king"};
+    
+    static final int[][] MIDDLEGAME = new int[12][64]; //[piece index][fen index], negative for black
+    static final int[][] ENDGAME = new int[12][64];
+    static final int[] PHASE = new int[12]; //[piece index], how much the piece counts towards MAX_PHASE
+    
+    static {
+        String file = System.getProperty(FILE_PROPERTY);
+        try {
+            InputStream in = file != null ? new FileInputStream(new File(file))
+                                          : PieceSquareTables.class.getResourceAsStream("/" + DEFAULT_FILE);
+            if (in == null) {
+                throw new FileNotFoundException(DEFAULT_FILE + " is not on the classpath");
+            }
+            Scanner scanny = new Scanner(in);
+            load(scanny);
+            scanny.close();
+        } catch (FileNotFoundException e) {
+            throw new IllegalStateException("can't load piece-square tables", e);
+        }
+    }
+    
+    /**
+     * Reads the tables. For each piece type, in PIECE_NAMES order: its name, middlegame
+     * value, endgame value and phase weight, then the middlegame table and the endgame
+     * table, each as 8 rows of 8 numbers from white's side (row 8 first, a file first).
+     * Everything from a # to the end of its line is a comment.
+     * @param scanny Scanner over the file
+     */
+    private static void load(Scanner scanny) {
+        StringBuilder text = new StringBuilder();
+        while (scanny.hasNextLine()) {
+            String line = scanny.nextLine();
+            int comment = line.indexOf('#');
+            text.append(comment < 0 ? line : line.substring(0, comment)).append('\n');
+        }
+        Scanner tokens = new Scanner(text.toString());
+        for (int type = 0; type < PIECE_NAMES.length; type++) {
+            String name = tokens.next();
+            if (!name.equals(PIECE_NAMES[type])) {
+                throw new IllegalStateException("expected " + PIECE_NAMES[type] + " in piece-square tables, found " + name);
+            }
+            int middlegameValue = tokens.nextInt();
+            int endgameValue = tokens.nextInt();
+            PHASE[type] = PHASE[type + 6] = tokens.nextInt();
+            readTable(tokens, type, middlegameValue, MIDDLEGAME);
+            readTable(tokens, type, endgameValue, ENDGAME);
+        }
+    }
+    
+    /**
+     * Reads one table, for both colours
+     * @param tokens The numbers
+     * @param type The piece type (white's piece index)
+     * @param value The piece's material value, added to every square
+     * @param tables MIDDLEGAME or ENDGAME
+     */
+    private static void readTable(Scanner tokens, int type, int value, int[][] tables) {
+        for (int row = 7; row >= 0; row--) {
+            for (int column = 0; column < 8; column++) {
+                int score = value + tokens.nextInt();
+                tables[type][row * 8 + column] = score;
+                tables[type + 6][(7 - row) * 8 + column] = -score; //black's row 1 is white's row 8
+            }
+        }
+    }
+    
+    /**
+     * Blends a middlegame and an endgame score
+     * @param middlegame The middlegame score
+     * @param endgame The endgame score
+     * @param phase The summed phase weights of the pieces on the board
+     * @return the score
+     */
+    public static int taper(int middlegame, int endgame, int phase) {
+        phase = Math.min(phase, MAX_PHASE);
+        return (middlegame * phase + endgame * (MAX_PHASE - phase)) / MAX_PHASE;
+    }
+    
+    /**
+     * Computes the score of a board from scratch
+     * @param board The board
+     * @return The score. High number = good for white. negative number = good for black
+     */
+    public static int score(Board board) {
+        int middlegame = 0;
+        int endgame = 0;
+        int phase = 0;
+        for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++) {
+            int piece = BitBoard.pieceIndex(board.fenChar(i));
+            if (piece != BitBoard.EMPTY) {
+                middlegame += MIDDLEGAME[piece][i];
+                endgame += ENDGAME[piece][i];
+                phase += PHASE[piece];
+            }
+        }
+        return taper(middlegame, endgame, phase);
+    }
+}
@@ -0,0 +1,350 @@
+import java.util.Arrays;
+
+/**
+ * Piece-square evaluation plus mobility, pawn structure (passed, doubled and
+ * isolated pawns) and king shelter, all worked out on bitboards. Like the
+ * piece-square tables, every extra term has a middlegame and an endgame
+ * weight, blended by the game phase.
+ * <p>
+ * Pawn structure is only worked out once per set of pawns and then found in
+ * a PawnHashTable, along with which pawns are passed.
+ * <p>
+ * Keeps state, so each search thread needs its own (see forThread). With
+ * setTimed(true) it also measures how long each term takes, see timingReport.
+ */
+public class PositionalBoardEvaluator implements BoardEvaluator {
+    
+    //terms, in timing report order
+    public static final int MATERIAL = 0; //material and piece-square tables
+    public static final int MOBILITY = 1;
+    public static final int PAWNS = 2;
+    public static final int KING_SHELTER = 3;
+    private static final String[] TERM_NAMES = {"material", "mobility", "pawns", "king shelter"};
+    
+    //weights in centipawns. mobility is per square a piece attacks that isn't
+    //its own piece or guarded by an enemy pawn, by piece type
+    private static final int[] MOBILITY_MIDDLEGAME = {0, 2, 4, 5, 1, 0};
+    private static final int[] MOBILITY_ENDGAME = {0, 4, 4, 5, 2, 0};
+    private static final int DOUBLED_MIDDLEGAME = -10; //for each pawn after the first on a column
+    private static final int DOUBLED_ENDGAME = -20;
+    private static final int ISOLATED_MIDDLEGAME = -10; //no friendly pawn on either side column
+    private static final int ISOLATED_ENDGAME = -15;
+    //passed pawns, by how many rows the pawn has advanced
+    private static final int[] PASSED_MIDDLEGAME = {0, 5, 10, 15, 25, 40, 60, 0};
+    private static final int[] PASSED_ENDGAME = {0, 10, 20, 35, 60, 90, 130, 0};
+    private static final int[] PASSED_FREE_ENDGAME = {0, 0, 5, 10, 20, 35, 60, 0}; //extra when nothing is in front
+    //pawns in front of a king on its first two rows: on the next row, and the one after
+    private static final int SHELTER_NEAR = 12;
+    private static final int SHELTER_FAR = 6;
+    
+    static final long[] COLUMNS = new long[8];
+    static final long[] SIDE_COLUMNS = new long[8]; //the columns either side of a column
+    static final long[][] PASSED_MASKS = new long[2][64]; //[side][square], where enemy pawns stop a pawn being passed
+    private static final long[][] SHELTER_NEAR_MASKS = new long[2][64];
+    private static final long[][] SHELTER_FAR_MASKS = new long[2][64];
+    private static final long NOT_COLUMN_A = ~0x0101010101010101L;
+    private static final long NOT_COLUMN_H = ~0x8080808080808080L;
+    static {
+        for (int x = 0; x < 8; x++) {
+            COLUMNS[x] = 0x0101010101010101L << x;
+        }
+        for (int x = 0; x < 8; x++) {
+            SIDE_COLUMNS[x] = (x > 0 ? COLUMNS[x - 1] : 0L) | (x < 7 ? COLUMNS[x + 1] : 0L);
+        }
+        for (int square = 0; square < 64; square++) {
+            int y = square / 8;
+            int x = square % 8;
+            long columns = COLUMNS[x] | SIDE_COLUMNS[x];
+            long above = y < 7 ? -1L << ((y + 1) * 8) : 0L;
+            long below = y > 0 ? -1L >>> ((8 - y) * 8) : 0L;
+            PASSED_MASKS[BitBoard.WHITE][square] = columns & above;
+            PASSED_MASKS[BitBoard.BLACK][square] = columns & below;
+            if (y < 6) {
+                SHELTER_NEAR_MASKS[BitBoard.WHITE][square] = columns & (0xFFL << ((y + 1) * 8));
+                SHELTER_FAR_MASKS[BitBoard.WHITE][square] = columns & (0xFFL << ((y + 2) * 8));
+            }
+            if (y > 1) {
+                SHELTER_NEAR_MASKS[BitBoard.BLACK][square] = columns & (0xFFL << ((y - 1) * 8));
+                SHELTER_FAR_MASKS[BitBoard.BLACK][square] = columns & (0xFFL << ((y - 2) * 8));
+            }
+        }
+    }
+    
+    //the current evaluation's extra terms, from white's side
+    private int middlegame;
+    private int endgame;
+    
+    private final PawnHashTable pawnTable;
+    private BitBoard converted; //the last board evaluated that isn't a BitBoard, as one. null until there is one
+    private long convertedKey; //that board's zobristKey
+    
+    private boolean timed = false;
+    private final long[] termNanos = new long[TERM_NAMES.length];
+    private long timedEvaluations = 0;
+    
+    public PositionalBoardEvaluator() {
+        this(PawnHashTable.DEFAULT_SIZE_KB);
+    }
+    
+    /**
+     * Creates an evaluator with a pawn hash table of the given size
+     * @param pawnTableSizeKb Size of the pawn hash table in kilobytes
+     */
+    public PositionalBoardEvaluator(int pawnTableSizeKb) {
+        pawnTable = new PawnHashTable(pawnTableSizeKb);
+    }
+    
+    @Override
+    public int evaluate(Board board) {
+        BitBoard b = bitBoard(board);
+        middlegame = 0;
+        endgame = 0;
+        int score;
+        if (!timed) {
+            score = b.pieceSquareScore();
+            mobility(b);
+            pawns(b);
+            kingShelter(b);
+        } else {
+            long time = System.nanoTime();
+            score = b.pieceSquareScore();
+            time = lap(MATERIAL, time);
+            mobility(b);
+            time = lap(MOBILITY, time);
+            pawns(b);
+            time = lap(PAWNS, time);
+            kingShelter(b);
+            lap(KING_SHELTER, time);
+            timedEvaluations++;
+        }
+        return score + PieceSquareTables.taper(middlegame, endgame, b.phase);
+    }
+    
+    @Override
+    public BoardEvaluator forThread() {
+        return new PositionalBoardEvaluator(pawnTable.capacity() * PawnHashTable.BYTES_PER_ENTRY / 1024);
+    }
+    
+    /**
+     * Returns the board as a BitBoard. A board that isn't one is loaded into
+     * a BitBoard kept for the purpose, unless it is the same position as the
+     * last one loaded
+     * @param board The board
+     * @return the BitBoard
+     */
+    private BitBoard bitBoard(Board board) {
+        if (board instanceof BitBoard) {
+            return (BitBoard) board;
+        }
+        long key = board.zobristKey();
+        if (converted == null) {
+            converted = new BitBoard(board.getFen());
+        } else if (key != convertedKey) {
+            converted.loadFen(board.getFen());
+        }
+        convertedKey = key;
+        return converted;
+    }
+    
+    /**
+     * Returns the pawn hash table, e.g. for its hit counters
+     * @return the table
+     */
+    public PawnHashTable pawnTable() {
+        return pawnTable;
+    }
+    
+    /**
+     * Adds the time since the given time to a term's total
+     * @param term The term
+     * @param since System.nanoTime() when the term started
+     * @return System.nanoTime() now
+     */
+    private long lap(int term, long since) {
+        long now = System.nanoTime();
+        termNanos[term] += now - since;
+        return now;
+    }
+    
+    /**
+     * Scores how many squares each horse, bishop, rook and queen can safely move to
+     * @param b The board
+     */
+    private void mobility(BitBoard b) {
+        long all = b.occupied();
+        long whitePawns = b.pieces[BitBoard.PAWN];
+        long blackPawns = b.pieces[6 + BitBoard.PAWN];
+        long whitePawnAttacks = ((whitePawns & NOT_COLUMN_A) << 7) | ((whitePawns & NOT_COLUMN_H) << 9);
+        long blackPawnAttacks = ((blackPawns & NOT_COLUMN_A) >>> 9) | ((blackPawns & NOT_COLUMN_H) >>> 7);
+        mobility(b, BitBoard.WHITE, all, ~(b.occupancy[BitBoard.WHITE] | blackPawnAttacks), 1);
+        mobility(b, BitBoard.BLACK, all, ~(b.occupancy[BitBoard.BLACK] | whitePawnAttacks), -1);
+    }
+    
+    /**
+     * Scores one side's mobility
+     * @param side BitBoard.WHITE or BitBoard.BLACK
+     * @param all Every occupied square
+     * @param safe The squares that count
+     * @param sign 1 for white, -1 for black
+     */
+    private void mobility(BitBoard b, int side, long all, long safe, int sign) {
+        for (int type = BitBoard.ROOK; type <= BitBoard.QUEEN; type++) {
+            long remaining = b.pieces[side * 6 + type];
+            while (remaining != 0) {
+                int square = Long.numberOfTrailingZeros(remaining);
+                remaining &= remaining - 1;
+                long attacks;
+                if (type == BitBoard.HORSE) {
+                    attacks = BitBoard.HORSE_ATTACKS[square];
+                } else if (type == BitBoard.ROOK) {
+                    attacks = MagicBitboards.rookAttacks(square, all);
+                } else if (type == BitBoard.BISHOP) {
+                    attacks = MagicBitboards.bishopAttacks(square, all);
+                } else {
+                    attacks = MagicBitboards.queenAttacks(square, all);
+                }
+                int count = Long.bitCount(attacks & safe);
+                middlegame += sign * count * MOBILITY_MIDDLEGAME[type];
+                endgame += sign * count * MOBILITY_ENDGAME[type];
+            }
+        }
+    }
+    
+    /**
+     * Scores passed, doubled and isolated pawns, from the pawn hash table if it
+     * has seen these pawns before, then passed pawns with nothing in front of them
+     * @param b The board
+     */
+    private void pawns(BitBoard b) {
+        long passed;
+        int slot = pawnTable.probe(b.pawnKey);
+        if (slot >= 0) {
+            middlegame += pawnTable.middlegame(slot);
+            endgame += pawnTable.endgame(slot);
+            passed = pawnTable.passed(slot);
+        } else {
+            int middlegameBefore = middlegame;
+            int endgameBefore = endgame;
+            long whitePawns = b.pieces[BitBoard.PAWN];
+            long blackPawns = b.pieces[6 + BitBoard.PAWN];
+            passed = pawns(BitBoard.WHITE, whitePawns, blackPawns, 1)
+                   | pawns(BitBoard.BLACK, blackPawns, whitePawns, -1);
+            pawnTable.store(b.pawnKey, middlegame - middlegameBefore, endgame - endgameBefore, passed);
+        }
+        freePassedPawns(b, passed);
+    }
+    
+    /**
+     * Scores one side's pawns
+     * @param side BitBoard.WHITE or BitBoard.BLACK
+     * @param own The side's pawns
+     * @param enemy The other side's pawns
+     * @param sign 1 for white, -1 for black
+     * @return the side's passed pawns
+     */
+    private long pawns(int side, long own, long enemy, int sign) {
+        long passed = 0L;
+        for (int x = 0; x < 8; x++) {
+            int onColumn = Long.bitCount(own & COLUMNS[x]);
+            if (onColumn > 1) {
+                middlegame += sign * (onColumn - 1) * DOUBLED_MIDDLEGAME;
+                endgame += sign * (onColumn - 1) * DOUBLED_ENDGAME;
+            }
+            if (onColumn > 0 && (own & SIDE_COLUMNS[x]) == 0) {
+                middlegame += sign * onColumn * ISOLATED_MIDDLEGAME;
+                endgame += sign * onColumn * ISOLATED_ENDGAME;
+            }
+        }
+        long remaining = own;
+        while (remaining != 0) {
+            int square = Long.numberOfTrailingZeros(remaining);
+            remaining &= remaining - 1;
+            if ((enemy & PASSED_MASKS[side][square]) == 0) {
+                int advanced = side == BitBoard.WHITE ? square / 8 : 7 - square / 8;
+                middlegame += sign * PASSED_MIDDLEGAME[advanced];
+                endgame += sign * PASSED_ENDGAME[advanced];
+                passed |= 1L << square;
+            }
+        }
+        return passed;
+    }
+    
+    /**
+     * Scores the passed pawns whose next square is empty. Depends on more than
+     * the pawns, so it can't be kept in the pawn hash table
+     * @param b The board
+     * @param passed Every passed pawn
+     */
+    private void freePassedPawns(BitBoard b, long passed) {
+        long all = b.occupied();
+        while (passed != 0) {
+            int square = Long.numberOfTrailingZeros(passed);
+            passed &= passed - 1;
+            boolean white = (b.occupancy[BitBoard.WHITE] & (1L << square)) != 0;
+            int advanced = white ? square / 8 : 7 - square / 8;
+            if (advanced < 7 && (all & (1L << (white ? square + 8 : square - 8))) == 0) {
+                endgame += white ? PASSED_FREE_ENDGAME[advanced] : -PASSED_FREE_ENDGAME[advanced];
+            }
+        }
+    }
+    
+    /**
+     * Scores the pawns in front of each king, if it is still on its first two rows.
+     * Only counts in the middlegame
+     * @param b The board
+     */
+    private void kingShelter(BitBoard b) {
+        for (int side = BitBoard.WHITE; side <= BitBoard.BLACK; side++) {
+            long king = b.pieces[side * 6 + BitBoard.KING];
+            if (king == 0) {
+                continue;
+            }
+            int square = Long.numberOfTrailingZeros(king);
+            int row = side == BitBoard.WHITE ? square / 8 : 7 - square / 8;
+            if (row > 1) {
+                continue;
+            }
+            long pawns = b.pieces[side * 6 + BitBoard.PAWN];
+            int shelter = SHELTER_NEAR * Long.bitCount(pawns & SHELTER_NEAR_MASKS[side][square])
+                        + SHELTER_FAR * Long.bitCount(pawns & SHELTER_FAR_MASKS[side][square]);
+            middlegame += side == BitBoard.WHITE ? shelter : -shelter;
+        }
+    }
+    
+    /**
+     * Turns timing of each term on or off. Timing costs a few calls to
+     * System.nanoTime per evaluation, so leave it off outside of profiling.
+     * @param timed true to time the terms
+     */
+    public void setTimed(boolean timed) {
+        this.timed = timed;
+    }
+    
+    /**
+     * Forgets the times measured so far
+     */
+    public void resetTiming() {
+        Arrays.fill(termNanos, 0L);
+        timedEvaluations = 0;
+    }
+    
+    /**
+     * Returns how long each term has taken per evaluation since timing was turned
+     * on (or last reset), and its share of the total, then the pawn hash table's hit rate
+     * @return one line per term, and one for the table
+     */
+    public String timingReport() {
+        long total = 0;
+        for (long nanos : termNanos) {
+            total += nanos;
+        }
+        StringBuilder report = new StringBuilder(timedEvaluations + " evaluations\n");
+        for (int term = 0; term < TERM_NAMES.length; term++) {
+            report.append(String.format("%-13s %7.1f ns/eval %5.1f%%%n", TERM_NAMES[term],
+                    timedEvaluations == 0 ? 0.0 : termNanos[term] * 1.0 / timedEvaluations,
+                    total == 0 ? 0.0 : termNanos[term] * 100.0 / total));
+        }
+        report.append(String.format("pawn hash     %5.1f%% of %d probes hit%n", pawnTable.hitRate() * 100, pawnTable.total));
+        return report.toString();
+    }
+}
@@ -1,14 +1,19 @@
 import java.util.ArrayList;
+import java.util.List;
 
 
 public class Replay {
-    public ArrayList<String> fens;
+    public List<String> fens;
     String currentFen;
     int currentFenNumber;
     boolean inProgress;
     boolean isDraw = false;
     
-    public Replay(ArrayList<String> fens){
+    /**
+     * Creates a replay of a game
+     * @param fens The game's fens, such as a GameRecord, the start first
+     */
+    public Replay(List<String> fens){
         this.fens = fens;
         currentFenNumber = 0;
         updateToReflectFenNumber();
@@ -0,0 +1,152 @@
+
+/**
+ * Standard algebraic notation (SAN), the way moves are written in PGN:
+ * "e4", "Nf3", "exd5", "Rad1", "e8=Q+", "O-O". Moves are read by matching
+ * them against the board's legal moves, so a move that is written right but
+ * isn't legal, or could be more than one move, is refused.
+ */
+public class San {
+    
+    private static final String LETTERS = " RNBQK"; //by piece type, nothing for pawns
+    
+    /**
+     * Writes a move in SAN, with + or # if it checks or mates
+     * @param board The board before the move. Left as it was
+     * @param move A legal move on the board
+     * @return the move, e.g. "Nbd7", "exd6" or "a1=Q+"
+     */
+    public static String toSan(Board board, int move) {
+        int from = CompactMove.from(move);
+        int to = CompactMove.to(move);
+        int type = CompactMove.piece(move) % 6;
+        StringBuilder san = new StringBuilder();
+        if (CompactMove.hasFlag(move, CompactMove.CASTLE)) {
+            san.append(to > from ? "O-O" : "O-O-O");
+        } else {
+            if (type == BitBoard.PAWN) {
+                if (CompactMove.isCapture(move)) {
+                    san.append((char) ('a' + from % 8));
+                }
+            } else {
+                san.append(LETTERS.charAt(type));
+                //name the file, else the rank, else both, of the piece moving when another like it could go there too
+                int[] moves = new int[CompactMove.MAX_MOVES];
+                int end = board.generateMoves(moves, 0);
+                boolean other = false;
+                boolean sameFile = false;
+                boolean sameRank = false;
+                for (int i = 0; i < end; i++) {
+                    int otherFrom = CompactMove.from(moves[i]);
+                    if (otherFrom != from && CompactMove.to(moves[i]) == to
+                            && CompactMove.piece(moves[i]) == CompactMove.piece(move)) {
+                        other = true;
+                        sameFile |= otherFrom % 8 == from % 8;
+                        sameRank |= otherFrom / 8 == from / 8;
+                    }
+                }
+                if (other && (!sameFile || sameRank)) {
+                    san.append((char) ('a' + from % 8));
+                }
+                if (other && sameFile) {
+                    san.append((char) ('1' + from / 8));
+                }
+            }
+            if (CompactMove.isCapture(move)) {
+                san.append('x');
+            }
+            san.append(CompactMove.squareName(to));
+            if (CompactMove.isPromotion(move)) {
+                san.append('=').append(LETTERS.charAt(CompactMove.promotion(move) % 6));
+            }
+        }
+        board.makeMove(move);
+        if (board.playerInCheck(board.turn())) {
+            san.append(board.generateMoves(new int[CompactMove.MAX_MOVES], 0) == 0 ? '#' : '+');
+        }
+        board.unmakeMove();
+        return san.toString();
+    }
+    
+    /**
+     * Finds the legal move a SAN move stands for. Check marks and annotations
+     * (+, #, !, ?) are optional, as are x for captures, and 0-0 works for O-O.
+     * Long algebraic with a dash (Ng1-f3, e2-e4) is read too
+     * @param board The board
+     * @param text The move, e.g. "Nf3", "exd5" or "e8=Q"
+     * @return the move, or CompactMove.NONE if it isn't exactly one legal move
+     */
+    public static int parse(Board board, String text) {
+        int end = text.length();
+        while (end > 0 && "+#!?".indexOf(text.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        String san = text.substring(0, end);
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int count = board.generateMoves(moves, 0);
+        if (san.equals("O-O") || san.equals("0-0") || san.equals("O-O-O") || san.equals("0-0-0")) {
+            boolean kingSide = san.length() == 3;
+            for (int i = 0; i < count; i++) {
+                if (CompactMove.hasFlag(moves[i], CompactMove.CASTLE)
+                        && (CompactMove.to(moves[i]) > CompactMove.from(moves[i])) == kingSide) {
+                    return moves[i];
+                }
+            }
+            return CompactMove.NONE;
+        }
+        int promotion = -1; //piece type, -1 for none
+        if (end >= 3 && "QRBN".indexOf(san.charAt(end - 1)) >= 0) {
+            promotion = LETTERS.indexOf(san.charAt(end - 1));
+            end -= san.charAt(end - 2) == '=' ? 2 : 1;
+        }
+        int start = 0;
+        int type = BitBoard.PAWN;
+        if (end > 0 && "KQRBN".indexOf(san.charAt(0)) >= 0) {
+            type = LETTERS.indexOf(san.charAt(0));
+            start = 1;
+        }
+        if (end - start < 2) {
+            return CompactMove.NONE;
+        }
+        int to = square(san.charAt(end - 2), san.charAt(end - 1));
+        if (to < 0) {
+            return CompactMove.NONE;
+        }
+        int fromFile = -1;
+        int fromRank = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (c >= 'a' && c <= 'h') {
+                fromFile = c - 'a';
+            } else if (c >= '1' && c <= '8') {
+                fromRank = c - '1';
+            } else if (c != 'x' && c != '-' && c != ':') {
+                return CompactMove.NONE;
+            }
+        }
+        int found = CompactMove.NONE;
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int from = CompactMove.from(move);
+            if (CompactMove.to(move) == to && CompactMove.piece(move) % 6 == type
+                    && !CompactMove.hasFlag(move, CompactMove.CASTLE)
+                    && (fromFile < 0 || from % 8 == fromFile) && (fromRank < 0 || from / 8 == fromRank)
+                    && (CompactMove.isPromotion(move) ? CompactMove.promotion(move) % 6 == promotion : promotion < 0)) {
+                if (found != CompactMove.NONE) {
+                    return CompactMove.NONE; //ambiguous
+                }
+                found = move;
+            }
+        }
+        return found;
+    }
+    
+    /**
+     * Returns the fen index of a square, or -1 if the file or rank is off the board
+     */
+    private static int square(char file, char rank) {
+        if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+            return -1;
+        }
+        return (rank - '1') * 8 + file - 'a';
+    }
+}
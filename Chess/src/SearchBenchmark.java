@@ -0,0 +1,96 @@
+/**
+ * Measures how much faster the alpha-beta search reaches a fixed depth with
+ * more threads. Each thread count gets a fresh MiniMax (so an empty
+ * transposition table) and searches the same positions; the time is compared
+ * against the single threaded run. Then it shows where a single threaded
+ * search spends its evaluation time, term by term, and what each part of
+ * the selective search (null moves, reductions, futility pruning) saves by
+ * turning them off one at a time.
+ * <p>
+ * Usage: java SearchBenchmark [maxThreads] [depth]
+ */
+public class SearchBenchmark {
+    
+    //selective search settings compared: name, then null moves, reductions, futility pruning
+    private static final String[] SELECTIVE_NAMES = {"all", "no null move", "no reductions", "no futility", "none"};
+    private static final boolean[][] SELECTIVE_SETTINGS = {
+        {true, true, true},
+        {false, true, true},
+        {true, false, true},
+        {true, true, false},
+        {false, false, false},
+    };
+    
+    private static final String[] POSITIONS = {
+        Game.startFen,
+        //after 1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5
+        "rhbqk--rpppp-ppp-----h----b-p-----B-P-----H-----PPPP-PPPR-BQK-HR wffffff00",
+        //after 1. d4 d5 2. c4 e6 3. Nc3 Nf6
+        "r-bqkbhrpp--pppp--h-------pp-------P--------PH--PPP--PPPRHBQKB-R wffffff00",
+    };
+    
+    public static void main(String[] args) {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : MiniMax.DEPTH;
+        //one untimed run first, so the single threaded run isn't paying for the JIT warming up
+        search(1, depth);
+        long singleThreadTime = 0;
+        StringBuilder report = new StringBuilder();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long start = System.nanoTime();
+            long nodes = search(threads, depth);
+            long time = System.nanoTime() - start;
+            if (threads == 1) {
+                singleThreadTime = time;
+            }
+            report.append(String.format("%2d threads: %7d ms, %9d nodes, speedup %.2f%n",
+                    threads, time / 1000000, nodes, singleThreadTime * 1.0 / time));
+            if (threads < maxThreads && threads * 2 > maxThreads) {
+                threads = maxThreads / 2; //so the last run uses exactly maxThreads
+            }
+        }
+        System.out.print(report);
+        PositionalBoardEvaluator evaluator = new PositionalBoardEvaluator();
+        evaluator.setTimed(true);
+        MiniMax ai = new MiniMax(depth, evaluator);
+        ai.setThreads(1);
+        ai.setPrintStats(false);
+        for (String fen : POSITIONS) {
+            ai.doMiniMax(Board.fromFen(fen));
+        }
+        System.out.print(evaluator.timingReport());
+        for (int i = 0; i < SELECTIVE_NAMES.length; i++) {
+            ai = new MiniMax(depth);
+            ai.setThreads(1);
+            ai.setPrintStats(false);
+            ai.setNullMovePruning(SELECTIVE_SETTINGS[i][0]);
+            ai.setLateMoveReductions(SELECTIVE_SETTINGS[i][1]);
+            ai.setFutilityPruning(SELECTIVE_SETTINGS[i][2]);
+            long nodes = 0;
+            long start = System.nanoTime();
+            for (String fen : POSITIONS) {
+                ai.doMiniMax(Board.fromFen(fen));
+                nodes += ai.nodes;
+            }
+            System.out.println(String.format("%-14s %7d ms, %9d nodes", SELECTIVE_NAMES[i] + ":",
+                    (System.nanoTime() - start) / 1000000, nodes));
+        }
+    }
+    
+    /**
+     * Searches every position with a fresh MiniMax
+     * @param threads The number of search threads
+     * @param depth The depth to search to
+     * @return the total number of nodes searched
+     */
+    private static long search(int threads, int depth) {
+        MiniMax ai = new MiniMax(depth);
+        ai.setThreads(threads);
+        long nodes = 0;
+        for (String fen : POSITIONS) {
+            ai.doMiniMax(Board.fromFen(fen));
+            nodes += ai.nodes;
+        }
+        return nodes;
+    }
+}
@@ -0,0 +1,18 @@
+
+/**
+ * Hears about a MiniMax alpha-beta search while it runs, once per finished
+ * iteration. Called on the searching thread, so it should be quick.
+ */
+public interface SearchListener {
+    
+    /**
+     * Called when the search has finished an iteration
+     * @param depth The iteration's depth, 0 if the move came from the tablebases without a search
+     * @param score The score of the board, from the side to move's side (see MiniMax.INFINITY
+     *              and Tablebase.WIN_SCORE for mates)
+     * @param nodes Positions visited so far, all threads together
+     * @param millis Time since the search started
+     * @param principalVariation The moves the search expects, best move first
+     */
+    void iterationFinished(int depth, int score, long nodes, long millis, int[] principalVariation);
+}
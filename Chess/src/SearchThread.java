@@ -0,0 +1,535 @@
+import java.util.concurrent.Callable;
+
+/**
+ * One thread's share of a MiniMax alpha-beta search. Every SearchThread has
+ * its own board and counters, and they all share the MiniMax's transposition
+ * table. Helper threads run the same iterative deepening as the main thread
+ * (Lazy SMP); their only output is what they leave in the table, which the
+ * main thread then finds for free.
+ */
+class SearchThread implements Callable<Integer> {
+    
+    private static final int LIMIT_CHECK_INTERVAL = 1024; //nodes between time/stop checks. power of 2
+    private static final int QUIESCENCE_PLIES = 32; //most plies the quiescence search adds. a leaf is evaluated as is past it
+    private static final int DELTA_MARGIN = 200; //what a capture has to be able to win on top of its material to be tried
+    private static final int HISTORY_LIMIT = 1 << 20; //history scores are halved when one gets this big
+    private static final int ASPIRATION_WINDOW = 50; //half the root window around the last iteration's score
+    private static final int ASPIRATION_MIN_DEPTH = 4; //shallower iterations search the full window
+    private static final int NULL_MOVE_MIN_DEPTH = 3; //shallowest node that tries a null move
+    private static final int NULL_MOVE_DEEP = 7; //from this depth on the null move search is reduced by 3 instead of 2
+    private static final int LMR_MIN_DEPTH = 3; //shallowest node whose moves may be reduced
+    private static final int LMR_MIN_MOVES = 3; //moves tried in full before any are reduced
+    private static final int[] FUTILITY_MARGINS = {0, 200, 500}; //by remaining depth. deeper nodes aren't pruned
+    private static final int[][] REDUCTIONS = new int[MiniMax.MAX_DEPTH + 1][CompactMove.MAX_MOVES]; //[depth][moves tried]
+    
+    static {
+        //grows with the log of both, so late moves of deep nodes are cut the most
+        for (int depth = 1; depth < REDUCTIONS.length; depth++) {
+            for (int moves = 1; moves < REDUCTIONS[depth].length; moves++) {
+                REDUCTIONS[depth][moves] = (int) (0.75 + Math.log(depth) * Math.log(moves) / 2.25);
+            }
+        }
+    }
+    
+    private final MiniMax search;
+    private final int id; //0 for the main thread
+    private final Board board;
+    private final TranspositionTable table;
+    private final BoardEvaluator evaluator;
+    private final Tablebase.Prober tablebase; //null for none
+    private final int[] rootMoves = new int[CompactMove.MAX_MOVES];
+    private final MovePicker[] pickers; //one per ply, so generating moves never allocates
+    private final int[][] killers; //[ply][0 or 1], codes of quiet moves that caused a cutoff at that ply
+    private final int[][] history = new int[12][64]; //[piece index][fen index], how often a quiet move caused a cutoff
+    private final boolean[] nullMoveAt; //[ply], true while the move made at that ply is a null move
+    
+    long nodes = 0; //positions visited
+    long qnodes = 0; //the part of nodes visited by the quiescence search
+    int total = 0; //transposition table probes
+    int hit = 0; //probes that found the position
+    long cutoffs = 0; //beta cutoffs in the main search
+    long firstMoveCutoffs = 0; //the part of cutoffs caused by the first move tried
+    long nullMoveCutoffs = 0; //nodes cut off by null-move pruning
+    long reductions = 0; //moves searched shallower by late-move reductions
+    long futilityPrunes = 0; //moves skipped by futility pruning
+    int failHighs = 0; //root searches that scored at or above the aspiration window
+    int failLows = 0; //root searches that scored at or below it
+    long tablebaseHits = 0; //nodes answered by the endgame tablebases
+    int completedDepth = 0; //depth of the last finished iteration
+    int completedScore = 0; //score of the last finished iteration, from the side to move's point of view
+    private boolean aborted = false; //true once the running iteration has to be thrown away
+    private int rootScore; //score of the last root search, only a bound if it failed high or low
+    
+    /**
+     * Creates a search thread
+     * @param search The MiniMax whose limits and table this thread uses
+     * @param id 0 for the main thread, 1 and up for helpers
+     * @param board The board to search. The thread makes and unmakes moves on it,
+     *              so it must not be shared
+     */
+    SearchThread(MiniMax search, int id, Board board) {
+        this.search = search;
+        this.id = id;
+        this.board = board;
+        this.table = search.table;
+        this.evaluator = id == 0 ? search.evaluator : search.evaluator.forThread();
+        this.tablebase = search.tablebase() == null ? null : search.tablebase().prober();
+        pickers = new MovePicker[search.maxDepth() + 1 + QUIESCENCE_PLIES];
+        for (int i = 0; i < pickers.length; i++) {
+            pickers[i] = new MovePicker(board, history);
+        }
+        killers = new int[pickers.length][2];
+        nullMoveAt = new boolean[pickers.length];
+    }
+    
+    @Override
+    public Integer call() {
+        return iterativeDeepening();
+    }
+    
+    /**
+     * Searches depth 1, 2, 3... up to the maximum depth, until the search is out
+     * of budget. Each iteration's best move is tried first by the next one
+     * (through the transposition table), so the shallow iterations make the
+     * deeper ones cheaper. Odd numbered helpers start one deeper than the main
+     * thread so the threads aren't all searching the same tree at once.
+     * <p>
+     * From ASPIRATION_MIN_DEPTH on, each iteration expects a score close to the
+     * last one and searches only a window around it, which cuts off far more.
+     * After a mate score (or tablebase win) the next iteration searches the full window, since
+     * finding a quicker mate moves the score by more than a window.
+     * If the score falls outside the window the search is repeated with the
+     * window widened on that side, four times as far each time. A move that
+     * failed high is better than anything else searched at that depth, so if
+     * time runs out while re-searching it, it is played.
+     * @return the best move from the last iteration that finished, or
+     *         CompactMove.NONE if none finished
+     */
+    int iterativeDeepening() {
+        int bestMove = CompactMove.NONE;
+        int score = 0;
+        for (int d = 1 + (id % 2); d <= search.maxDepth(); d++) {
+            int window = ASPIRATION_WINDOW;
+            int alpha = -MiniMax.INFINITY - 1;
+            int beta = MiniMax.INFINITY + 1;
+            if (d >= ASPIRATION_MIN_DEPTH && search.aspirationWindows() && Math.abs(score) <= Tablebase.WIN_BOUND) {
+                alpha = Math.max(score - window, alpha);
+                beta = Math.min(score + window, beta);
+            }
+            int m;
+            while (true) {
+                m = alphaBetaRoot(d, alpha, beta);
+                if (aborted) {
+                    break;
+                }
+                if (rootScore <= alpha && alpha > -MiniMax.INFINITY - 1) {
+                    failLows++;
+                    window *= 4;
+                    alpha = Math.max(rootScore - window, -MiniMax.INFINITY - 1);
+                } else if (rootScore >= beta && beta < MiniMax.INFINITY + 1) {
+                    failHighs++;
+                    bestMove = m;
+                    window *= 4;
+                    beta = Math.min(rootScore + window, MiniMax.INFINITY + 1);
+                } else {
+                    break;
+                }
+            }
+            if (aborted) {
+                break;
+            }
+            bestMove = m;
+            score = rootScore;
+            completedDepth = d;
+            completedScore = score;
+            if (id == 0) {
+                search.iterationFinished(d, score);
+            }
+            if (search.outOfBudget(this)) {
+                break;
+            }
+        }
+        return bestMove;
+    }
+    
+    /**
+     * Called at every node. Every LIMIT_CHECK_INTERVAL nodes checks the budget
+     * and, if it is used up, aborts the current iteration. The main thread
+     * always finishes its first iteration, so there is always a move to return.
+     * @return true if the current iteration is being aborted
+     */
+    private boolean checkAbort() {
+        if (!aborted && (id > 0 || completedDepth > 0)
+                && (nodes & (LIMIT_CHECK_INTERVAL - 1)) == 0 && search.outOfBudget(this)) {
+            aborted = true;
+        }
+        return aborted;
+    }
+    
+    /**
+     * Looks up the board in the transposition table
+     * @return the packed entry, or TranspositionTable.NO_ENTRY
+     */
+    private long probe() {
+        long entry = table.probe(board.zobristKey());
+        total++;
+        if (entry != TranspositionTable.NO_ENTRY) {
+            hit++;
+        }
+        return entry;
+    }
+    
+    /**
+     * Moves the best move stored for this position to the front of the
+     * moves, keeping the rest in generated order
+     * @param moves The buffer holding the moves
+     * @param end The index after the last move. The moves start at 0
+     * @param entry The transposition table entry for the position
+     */
+    private void orderMoves(int[] moves, int end, long entry) {
+        if (entry == TranspositionTable.NO_ENTRY) {
+            return;
+        }
+        int hashMove = TranspositionTable.move(entry);
+        for (int i = 1; i < end; i++) {
+            if (CompactMove.code(moves[i]) == hashMove) {
+                int move = moves[i];
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Remembers a quiet move that caused a beta cutoff: as a killer for its
+     * ply, and in the history table, by more the deeper the search below it
+     * @param move The move
+     * @param remainingDepth The depth left at the node it was made from
+     * @param ply The ply of the node
+     */
+    private void recordCutoff(int move, int remainingDepth, int ply) {
+        int code = CompactMove.code(move);
+        if (killers[ply][0] != code) {
+            killers[ply][1] = killers[ply][0];
+            killers[ply][0] = code;
+        }
+        int[] scores = history[CompactMove.piece(move)];
+        scores[CompactMove.to(move)] += remainingDepth * remainingDepth;
+        if (scores[CompactMove.to(move)] >= HISTORY_LIMIT) {
+            for (int[] pieceScores : history) {
+                for (int i = 0; i < pieceScores.length; i++) {
+                    pieceScores[i] /= 2;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Alpha-beta search of the root position. Moves are tried in generated order,
+     * after the best move the transposition table knows for the position, and
+     * only a strictly better score replaces the best move. Leaves the score in rootScore.
+     * @param remainingDepth How much deeper to search
+     * @param alpha The bottom of the aspiration window
+     * @param beta The top of the aspiration window
+     * @return the best move for the player whose turn it is, the move that scored
+     *         beta or more if the search failed high, or CompactMove.NONE if the
+     *         search was aborted, failed low or there are no moves
+     */
+    private int alphaBetaRoot(int remainingDepth, int alpha, int beta) {
+        nodes++;
+        int[] moves = rootMoves;
+        int end = board.generateMoves(moves, 0);
+        orderMoves(moves, end, probe());
+        int bestScore = -MiniMax.INFINITY - 1;
+        int bestMove = CompactMove.NONE;
+        for (int i = 0; i < end; i++) {
+            board.makeMove(moves[i]);
+            int score = principalVariationSearch(i == 0, remainingDepth - 1, 0, 1, alpha, beta);
+            board.unmakeMove();
+            if (aborted) {
+                return CompactMove.NONE;
+            }
+            bestScore = Math.max(score, bestScore);
+            if (score > alpha) {
+                alpha = score;
+                bestMove = moves[i];
+                if (alpha >= beta) {
+                    break;
+                }
+            }
+        }
+        if (end == 0) {
+            bestScore = board.playerInCheck(board.turn()) ? -MiniMax.INFINITY : 0; //checkmated or stalemated already
+        }
+        rootScore = bestMove == CompactMove.NONE ? bestScore : alpha;
+        if (bestMove != CompactMove.NONE) {
+            int bound = alpha >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            table.store(board.zobristKey(), remainingDepth, bound, alpha, CompactMove.code(bestMove));
+        }
+        return bestMove;
+    }
+    
+    /**
+     * Negamax alpha-beta with principal variation search. Scores are from the
+     * point of view of the player whose turn it is. Results are stored in the
+     * transposition table, and stored results that are deep enough are reused.
+     * Boards the endgame tablebases have are scored from them instead of searched.
+     * <p>
+     * Outside the principal variation, and when not in check, three kinds of
+     * pruning (each of which MiniMax can turn off) skip work that is unlikely
+     * to change the result:
+     * <ul>
+     * <li>null-move pruning: if passing still scores at least beta with a
+     *     shallower search, the node is cut off. Not with only pawns left,
+     *     where passing could really be best, and never twice in a row</li>
+     * <li>late-move reductions: quiet moves tried late, which the ordering
+     *     thinks are bad, are searched shallower first, and only searched to
+     *     full depth if they turn out better than alpha</li>
+     * <li>futility pruning: one or two moves from the leaves, quiet moves are
+     *     skipped if the board's score is so far below alpha that a quiet move
+     *     couldn't make up the difference</li>
+     * </ul>
+     * @param remainingDepth How much deeper to search
+     * @param ply How many moves deep the board is, which picks the move buffer
+     * @param alpha The score the mover is already guaranteed
+     * @param beta The score the opponent is already guaranteed, from the mover's side
+     * @return the score of the board. If it is outside (alpha, beta) it is only a bound
+     */
+    private int alphaBeta(int remainingDepth, int ply, int alpha, int beta) {
+        if (remainingDepth == 0 && search.quiescence()) {
+            return quiescence(ply, alpha, beta);
+        }
+        nodes++;
+        if (checkAbort()) {
+            return 0;
+        }
+        if (tablebase != null) {
+            int value = tablebase.probe(board);
+            if (value != Tablebase.UNKNOWN) {
+                tablebaseHits++;
+                return Tablebase.score(value, ply);
+            }
+        }
+        if (remainingDepth == 0) {
+            return evaluate();
+        }
+        long entry = probe();
+        if (entry != TranspositionTable.NO_ENTRY && TranspositionTable.depth(entry) >= remainingDepth) {
+            int score = fromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if (bound == TranspositionTable.EXACT
+                    || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                    || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                return score;
+            }
+        }
+        boolean principalVariation = beta - alpha > 1;
+        boolean inCheck = board.playerInCheck(board.turn());
+        boolean futile = false;
+        if (!principalVariation && !inCheck && (search.nullMovePruning() || search.futilityPruning())) {
+            int staticScore = evaluate();
+            if (search.nullMovePruning() && remainingDepth >= NULL_MOVE_MIN_DEPTH && !nullMoveAt[ply - 1]
+                    && staticScore >= beta && !board.onlyPawnsLeft(board.turn())) {
+                int reduction = remainingDepth >= NULL_MOVE_DEEP ? 3 : 2;
+                board.makeNullMove();
+                nullMoveAt[ply] = true;
+                int score = -alphaBeta(remainingDepth - 1 - reduction, ply + 1, -beta, -beta + 1);
+                nullMoveAt[ply] = false;
+                board.unmakeMove();
+                if (aborted) {
+                    return 0;
+                }
+                if (score >= beta) {
+                    nullMoveCutoffs++;
+                    return beta; //not score, which could claim a mate that passing can't prove
+                }
+            }
+            futile = search.futilityPruning() && remainingDepth < FUTILITY_MARGINS.length
+                     && staticScore + FUTILITY_MARGINS[remainingDepth] <= alpha;
+        }
+        MovePicker picker = pickers[ply];
+        picker.start(entry == TranspositionTable.NO_ENTRY ? CompactMove.NONE : TranspositionTable.move(entry),
+                     killers[ply][0], killers[ply][1]);
+        int originalAlpha = alpha;
+        int bestScore = -MiniMax.INFINITY - 1;
+        int bestMove = CompactMove.NONE;
+        int tried = 0;
+        for (int move = picker.next(); move != CompactMove.NONE; move = picker.next()) {
+            boolean quiet = !CompactMove.isCapture(move) && !CompactMove.isPromotion(move);
+            board.makeMove(move);
+            int reduction = 0;
+            if (quiet && tried > 0 && (futile || (search.lateMoveReductions() && tried >= LMR_MIN_MOVES
+                    && remainingDepth >= LMR_MIN_DEPTH && !inCheck)) && !board.playerInCheck(board.turn())) {
+                if (futile) {
+                    board.unmakeMove();
+                    futilityPrunes++;
+                    continue;
+                }
+                reduction = REDUCTIONS[Math.min(remainingDepth, MiniMax.MAX_DEPTH)][tried];
+                if (principalVariation) {
+                    reduction--;
+                }
+                reduction = Math.max(0, Math.min(reduction, remainingDepth - 2));
+                if (reduction > 0) {
+                    reductions++;
+                }
+            }
+            int score = principalVariationSearch(tried == 0, remainingDepth - 1, reduction, ply + 1, alpha, beta);
+            board.unmakeMove();
+            if (aborted) {
+                return 0;
+            }
+            tried++;
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        cutoffs++;
+                        if (tried == 1) {
+                            firstMoveCutoffs++;
+                        }
+                        if (quiet) {
+                            recordCutoff(move, remainingDepth, ply);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (tried == 0) {
+            //checkmate, scored by how soon so the search goes for the quickest mate, or stalemate
+            return board.playerInCheck(board.turn()) ? -(MiniMax.INFINITY - ply) : 0;
+        }
+        int bound;
+        if (bestScore >= beta) {
+            bound = TranspositionTable.LOWER_BOUND;
+        } else if (bestScore <= originalAlpha) {
+            bound = TranspositionTable.UPPER_BOUND;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        table.store(board.zobristKey(), remainingDepth, bound, toTable(bestScore, ply), CompactMove.code(bestMove));
+        return bestScore;
+    }
+    
+    /**
+     * Turns a mate score (or tablebase win) into one counted from the board instead of the root,
+     * for the transposition table, where the board may be met again at another ply
+     * @param score The score
+     * @param ply How many moves deep the board is
+     * @return the score to store
+     */
+    private static int toTable(int score, int ply) {
+        if (score > Tablebase.WIN_BOUND) {
+            return score + ply;
+        }
+        return score < -Tablebase.WIN_BOUND ? score - ply : score;
+    }
+    
+    /**
+     * Turns a mate score (or tablebase win) from the transposition table back into one counted from the root
+     * @param score The stored score
+     * @param ply How many moves deep the board is
+     * @return the score
+     */
+    private static int fromTable(int score, int ply) {
+        if (score > Tablebase.WIN_BOUND) {
+            return score - ply;
+        }
+        return score < -Tablebase.WIN_BOUND ? score + ply : score;
+    }
+    
+    /**
+     * Scores the board from the point of view of the player whose turn it is
+     * @return the score
+     */
+    private int evaluate() {
+        int score = evaluator.evaluate(board);
+        return board.turn().equals("white") ? score : -score;
+    }
+    
+    /**
+     * Searches only captures and promotions until the board is quiet, so a
+     * leaf is never scored halfway through an exchange. The mover may always
+     * stop capturing (stand pat), so the board's own score is a lower bound.
+     * Captures that can't bring the score up to alpha even if they win the
+     * piece for free are skipped (delta pruning). Checks are not looked at,
+     * so a leaf in check is scored as if it weren't.
+     * @param ply How many moves deep the board is, which picks the move buffer
+     * @param alpha The score the mover is already guaranteed
+     * @param beta The score the opponent is already guaranteed, from the mover's side
+     * @return the score of the board. If it is outside (alpha, beta) it is only a bound
+     */
+    private int quiescence(int ply, int alpha, int beta) {
+        nodes++;
+        qnodes++;
+        if (checkAbort()) {
+            return 0;
+        }
+        int standPat = evaluate();
+        if (standPat >= beta || ply >= pickers.length) {
+            return standPat;
+        }
+        if (standPat > alpha) {
+            alpha = standPat;
+        }
+        MovePicker picker = pickers[ply];
+        picker.startCaptures();
+        int bestScore = standPat;
+        for (int move = picker.next(); move != CompactMove.NONE; move = picker.next()) {
+            if (standPat + MovePicker.gain(move) + DELTA_MARGIN <= alpha && !CompactMove.isPromotion(move)) {
+                continue;
+            }
+            board.makeMove(move);
+            int score = -quiescence(ply + 1, -beta, -alpha);
+            board.unmakeMove();
+            if (aborted) {
+                return 0;
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) {
+                        break;
+                    }
+                }
+            }
+        }
+        return bestScore;
+    }
+    
+    /**
+     * Searches the move just made, from the point of view of the player who
+     * made it. The first move gets the full window; later ones get a null
+     * window and are only re-searched if they might be better. A reduced move
+     * is searched shallower first, and to full depth only if that beats alpha.
+     * @param firstMove true if this is the first move tried at its node
+     * @param remainingDepth How much deeper to search
+     * @param reduction How much shallower to search the move at first
+     * @param ply How many moves deep the board is
+     * @param alpha alpha for the node the move was made from
+     * @param beta beta for the node the move was made from
+     * @return the score of the move for the player who made it
+     */
+    private int principalVariationSearch(boolean firstMove, int remainingDepth, int reduction, int ply, int alpha,
+                                         int beta) {
+        if (firstMove) {
+            return -alphaBeta(remainingDepth, ply, -beta, -alpha);
+        }
+        if (reduction > 0) {
+            int score = -alphaBeta(remainingDepth - reduction, ply, -alpha - 1, -alpha);
+            if (score <= alpha) {
+                return score;
+            }
+        }
+        int score = -alphaBeta(remainingDepth, ply, -alpha - 1, -alpha);
+        if (score > alpha && score < beta) {
+            score = -alphaBeta(remainingDepth, ply, -beta, -alpha);
+        }
+        return score;
+    }
+}
@@ -0,0 +1,465 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Endgame tablebases: for every position with a few pieces, how many moves
+ * the side to move needs to mate, or to be mated, with best play. The tables
+ * are files TablebaseBuilder makes, one per set of pieces, named after its
+ * signature (see TablebaseIndex), such as KRvK.tb. A file is
+ * <pre>
+ *   int   MAGIC
+ *   int   number of positions
+ *   int   positions per block
+ *   int   number of blocks
+ *   long  offset of every block in the file, and of the end of the last one
+ *   ...   the blocks, each one byte per position compressed with Deflater
+ * </pre>
+ * all big-endian. A position's byte is 0 for a draw (and for numbers no
+ * position has), n &gt; 0 if the side to move mates in n moves and -n if it
+ * is mated in n - 1 moves, so -1 is checkmate. The files are memory mapped,
+ * and the blocks probes need are inflated into a cache every thread reads
+ * without locking. The cache is set associative: a block can go in any of
+ * CACHE_WAYS entries picked by its key, and a new block replaces the one of
+ * them used least recently. Boards are looked up through a Prober per
+ * thread, which allocates nothing once the blocks it needs are cached.
+ * <p>
+ * Positions are looked up without castling or en passant rights, so boards
+ * where either is possible are never probed. Neither is the fifty move rule, which
+ * this game doesn't have.
+ */
+public class Tablebase {
+    
+    public static final int MAGIC = 0x43544231; //"CTB1"
+    public static final int HEADER_SIZE = 16; //not counting the block offsets
+    public static final String EXTENSION = ".tb";
+    public static final String DIRECTORY_PROPERTY = "chess.tablebases";
+    public static final String DEFAULT_DIRECTORY = "tablebases";
+    public static final int BLOCK_SIZE = 1 << 14; //positions per block written by TablebaseBuilder
+    public static final int CACHE_BLOCKS = 1024; //default cache size, in blocks (16 MB of them). power of 2
+    public static final int CACHE_WAYS = 8; //entries a block may go in, the least recently used of them replaced. power of 2
+    public static final int UNKNOWN = Integer.MIN_VALUE; //probe result for a board the tables don't have
+    public static final int WIN_SCORE = MiniMax.INFINITY / 2; //search score of mating in 0 moves, see score
+    public static final int WIN_BOUND = WIN_SCORE - 1000; //scores further from 0 than this, and not mates, are tablebase wins
+    
+    private static Tablebase defaultTablebase; //loaded the first time it is asked for
+    private static boolean defaultTablebaseLoaded = false;
+    
+    //a side's material: 3 bits counting each piece but the king, in PIECE_ORDER. white's are above black's
+    private static final int SIDE_BITS = 15;
+    private static final int[] MATERIAL = new int[12]; //[BitBoard piece index] what one of it adds to a material key
+    
+    static {
+        for (int order = 1; order < TablebaseIndex.PIECE_TYPES.length; order++) {
+            MATERIAL[TablebaseIndex.PIECE_TYPES[order]] = 1 << (SIDE_BITS + 3 * (order - 1));
+            MATERIAL[TablebaseIndex.PIECE_TYPES[order] + 6] = 1 << (3 * (order - 1));
+        }
+    }
+    
+    private final List<Table> tables = new ArrayList<Table>();
+    private int[] materialKeys = new int[0]; //sorted, both ways round for each table
+    private Table[] byMaterial = new Table[0]; //[i] the table for materialKeys[i]
+    private boolean[] swapped = new boolean[0]; //[i] true if materialKeys[i] has the table's black pieces as white
+    private final Block[] cache; //inflated blocks, CACHE_WAYS entries per set, in the set their key hashes to
+    private final int setMask;
+    private final AtomicLong clock = new AtomicLong(); //ticks on every cache lookup, for the blocks' lastUsed
+    private final ThreadLocal<Prober> probers = ThreadLocal.withInitial(() -> new Prober()); //for probe and bestMove
+    private int maxPieces = 0; //most pieces of any table
+    
+    /**
+     * An inflated block. Only lastUsed changes once it is made, so threads can share it without locking
+     */
+    private static class Block {
+        final long key; //table number and block number
+        final byte[] values;
+        volatile long lastUsed; //clock when it was last looked up
+        
+        Block(long key, byte[] values) {
+            this.key = key;
+            this.values = values;
+        }
+    }
+    
+    /**
+     * One table's file
+     */
+    private static class Table {
+        final TablebaseIndex index;
+        final int number; //tells its blocks apart from other tables' in the cache
+        final MappedByteBuffer data;
+        final int blockSize;
+        final int blocks;
+        
+        Table(TablebaseIndex index, int number, MappedByteBuffer data, int blockSize, int blocks) {
+            this.index = index;
+            this.number = number;
+            this.data = data;
+            this.blockSize = blockSize;
+            this.blocks = blocks;
+        }
+        
+        /**
+         * Reads and inflates one block
+         * @param block The block number
+         * @return the block's values, one per position
+         */
+        byte[] inflate(int block) {
+            int start = (int) data.getLong(HEADER_SIZE + 8 * block);
+            int end = (int) data.getLong(HEADER_SIZE + 8 * (block + 1));
+            byte[] compressed = new byte[end - start];
+            ByteBuffer view = data.duplicate(); //its own position, so threads don't get in each other's way
+            view.position(start);
+            view.get(compressed);
+            byte[] values = new byte[Math.min(blockSize, index.size - block * blockSize)];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(compressed);
+                inflater.inflate(values);
+            } catch (DataFormatException e) {
+                throw new IllegalStateException(index.signature + EXTENSION + " block " + block + " is corrupt", e);
+            } finally {
+                inflater.end();
+            }
+            return values;
+        }
+    }
+    
+    /**
+     * Opens every table in a folder
+     * @param directory The folder
+     * @param cacheBlocks How many inflated blocks to keep, rounded down to a power of 2 and at least CACHE_WAYS
+     * @throws IOException if a table can't be read or isn't a table
+     */
+    public Tablebase(File directory, int cacheBlocks) throws IOException {
+        cache = new Block[Integer.highestOneBit(Math.max(CACHE_WAYS, cacheBlocks))];
+        setMask = cache.length / CACHE_WAYS - 1;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException(directory + " is not a folder");
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(EXTENSION)) {
+                TablebaseIndex index = new TablebaseIndex(name.substring(0, name.length() - EXTENSION.length()));
+                Table table = open(file, index, tables.size());
+                tables.add(table);
+                maxPieces = Math.max(maxPieces, index.pieces.length);
+                int material = 0;
+                for (int piece : index.pieces) {
+                    material += MATERIAL[piece];
+                }
+                addMaterial(material, table, false);
+                if (swap(material) != material) {
+                    addMaterial(swap(material), table, true);
+                }
+            }
+        }
+    }
+    
+    private void addMaterial(int material, Table table, boolean colorsSwapped) {
+        int at = -Arrays.binarySearch(materialKeys, material) - 1;
+        if (at < 0) {
+            return; //two files for the same pieces
+        }
+        int[] keys = new int[materialKeys.length + 1];
+        Table[] found = new Table[keys.length];
+        boolean[] swaps = new boolean[keys.length];
+        for (int i = 0, j = 0; i < keys.length; i++) {
+            if (i == at) {
+                keys[i] = material;
+                found[i] = table;
+                swaps[i] = colorsSwapped;
+            } else {
+                keys[i] = materialKeys[j];
+                found[i] = byMaterial[j];
+                swaps[i] = swapped[j++];
+            }
+        }
+        materialKeys = keys;
+        byMaterial = found;
+        swapped = swaps;
+    }
+    
+    /**
+     * Returns a material key with white's and black's pieces the other way round
+     */
+    private static int swap(int material) {
+        return (material >>> SIDE_BITS) | ((material & ((1 << SIDE_BITS) - 1)) << SIDE_BITS);
+    }
+    
+    private static Table open(File file, TablebaseIndex index, int number) throws IOException {
+        MappedByteBuffer data;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            //the mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC || data.getInt(4) != index.size) {
+            throw new IOException(file + " is not a " + index.signature + " table");
+        }
+        int blockSize = data.getInt(8);
+        int blocks = data.getInt(12);
+        if (blockSize <= 0 || (long) blocks * blockSize < index.size
+                || HEADER_SIZE + 8L * (blocks + 1) > data.capacity()
+                || data.getLong(HEADER_SIZE + 8 * blocks) > data.capacity()) {
+            throw new IOException(file + " is cut short");
+        }
+        return new Table(index, number, data, blockSize, blocks);
+    }
+    
+    /**
+     * Returns the tables in the folder named by the chess.tablebases system
+     * property, or the tablebases folder in the working directory, opened the
+     * first time they're asked for
+     * @return the tables, or null if there is no such folder
+     */
+    public static synchronized Tablebase defaultTablebase() {
+        if (!defaultTablebaseLoaded) {
+            defaultTablebaseLoaded = true;
+            File directory = new File(System.getProperty(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY));
+            if (directory.isDirectory()) {
+                try {
+                    defaultTablebase = new Tablebase(directory, CACHE_BLOCKS);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return defaultTablebase;
+    }
+    
+    /**
+     * Returns true if there is a table for a set of pieces
+     * @param signature The signature, such as "KQvK"
+     */
+    public boolean has(String signature) {
+        for (Table table : tables) {
+            if (table.index.signature.equals(signature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Returns the most pieces any of the tables has, kings included
+     * @return the number of pieces, 0 if there are no tables
+     */
+    public int maxPieces() {
+        return maxPieces;
+    }
+    
+    /**
+     * Returns a Prober for one thread to look boards up with
+     */
+    public Prober prober() {
+        return new Prober();
+    }
+    
+    /**
+     * Looks a board up with the calling thread's Prober
+     * @param board The board
+     * @return as Prober.probe returns it
+     */
+    public int probe(Board board) {
+        return probers.get().probe(board);
+    }
+    
+    /**
+     * Looks boards up for one thread. Its arrays are reused from one probe to
+     * the next, so it must not be shared between threads
+     */
+    public class Prober {
+        
+        private final int[] pieces = new int[Math.max(maxPieces, 2)];
+        private final int[] squares = new int[pieces.length];
+        private final int[] ordered = new int[pieces.length]; //the squares in the table's order
+        private final int[] moved = new int[pieces.length]; //for TablebaseIndex.index
+        private long cacheHits = 0;
+        private long cacheMisses = 0;
+        
+        private Prober() {
+        }
+        
+        /**
+         * Looks a board up
+         * @param board The board
+         * @return 0 for a draw, n &gt; 0 if the side to move mates in n moves, -n if it
+         *         is mated in n - 1 moves, or UNKNOWN if there's no table for the board
+         *         or castling or taking en passant is possible on it
+         */
+        public int probe(Board board) {
+            long occupied = board.occupied();
+            if (Long.bitCount(occupied) > maxPieces || board.promotingPawn() != null || canCastle(board)
+                    || board.canTakeEnPassant()) {
+                return UNKNOWN;
+            }
+            int count = 0;
+            for (long left = occupied; left != 0; left &= left - 1) {
+                int square = Long.numberOfTrailingZeros(left);
+                squares[count] = square;
+                pieces[count++] = BitBoard.PIECES.indexOf(board.fenChar(square));
+            }
+            return probe(pieces, squares, count, board.turn().equals("white") ? BitBoard.WHITE : BitBoard.BLACK);
+        }
+        
+        /**
+         * Looks a position up
+         * @param pieces The BitBoard piece index of every piece, in any order
+         * @param squares The fen index of every piece
+         * @param count How many pieces there are
+         * @param sideToMove BitBoard.WHITE or BitBoard.BLACK
+         * @return the value, as probe(Board) returns it, or UNKNOWN if there's no table for the pieces
+         */
+        int probe(int[] pieces, int[] squares, int count, int sideToMove) {
+            int material = 0;
+            for (int i = 0; i < count; i++) {
+                material += MATERIAL[pieces[i]];
+            }
+            int found = Arrays.binarySearch(materialKeys, material);
+            if (found < 0 || count > ordered.length) {
+                return UNKNOWN;
+            }
+            Table table = byMaterial[found];
+            boolean swap = swapped[found];
+            //the table's white pieces first, each side in PIECE_ORDER. swapped, the board is turned around too
+            int n = 0;
+            for (int color = 0; color < 2; color++) {
+                int offset = (color == 0) == swap ? 6 : 0;
+                for (int type : TablebaseIndex.PIECE_TYPES) {
+                    for (int i = 0; i < count; i++) {
+                        if (pieces[i] == type + offset) {
+                            ordered[n++] = swap ? squares[i] ^ 56 : squares[i];
+                        }
+                    }
+                }
+            }
+            if (n != table.index.pieces.length) {
+                return UNKNOWN; //not one king a side
+            }
+            return value(table, table.index.index(ordered, swap ? sideToMove ^ 1 : sideToMove, moved));
+        }
+        
+        /**
+         * Returns the part of this prober's block lookups the cache answered
+         * @return between 0 and 1
+         */
+        public double cacheHitRate() {
+            return cacheHits + cacheMisses == 0 ? 0 : cacheHits * 1.0 / (cacheHits + cacheMisses);
+        }
+        
+        /**
+         * Returns a table's value for one position
+         * @param table The table
+         * @param index The position's number
+         * @return the value, as probe returns it
+         */
+        private int value(Table table, int index) {
+            int block = index / table.blockSize;
+            long key = ((long) table.number << 32) | block;
+            int set = ((int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & setMask) * CACHE_WAYS;
+            long now = clock.incrementAndGet();
+            int oldest = set;
+            long oldestUse = Long.MAX_VALUE;
+            for (int slot = set; slot < set + CACHE_WAYS; slot++) {
+                Block cached = cache[slot];
+                if (cached == null) {
+                    oldest = slot;
+                    oldestUse = Long.MIN_VALUE; //nothing to throw out here
+                } else if (cached.key == key) {
+                    cached.lastUsed = now;
+                    cacheHits++;
+                    return cached.values[index % table.blockSize];
+                } else if (cached.lastUsed < oldestUse) {
+                    oldest = slot;
+                    oldestUse = cached.lastUsed;
+                }
+            }
+            //two threads missing on the same block both inflate it, and one copy is thrown out later, which is harmless
+            Block cached = new Block(key, table.inflate(block));
+            cached.lastUsed = now;
+            cache[oldest] = cached;
+            cacheMisses++;
+            return cached.values[index % table.blockSize];
+        }
+    }
+    
+    /**
+     * Picks the best move by the tables: the quickest mate if the board is
+     * won, a move that keeps the draw if it is drawn, and the slowest way to be
+     * mated if it is lost
+     * @param board The board
+     * @return the move, or CompactMove.NONE if the tables don't have the board
+     *         and every board after it
+     */
+    public int bestMove(Board board) {
+        Prober prober = probers.get();
+        if (prober.probe(board) == UNKNOWN) {
+            return CompactMove.NONE;
+        }
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int end = board.generateMoves(moves, 0);
+        int bestMove = CompactMove.NONE;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < end; i++) {
+            board.makeMove(moves[i]);
+            int value = prober.probe(board);
+            board.unmakeMove();
+            if (value == UNKNOWN) {
+                return CompactMove.NONE;
+            }
+            int score = -score(value);
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = moves[i];
+            }
+        }
+        return bestMove;
+    }
+    
+    /**
+     * Turns a value from probe into a search score for the board itself
+     * @param value The value, not UNKNOWN
+     * @return the score, as score(value, 0)
+     */
+    public static int score(int value) {
+        return score(value, 0);
+    }
+    
+    /**
+     * Turns a value from probe into a search score the way the search scores
+     * mates: WIN_SCORE less the plies from the root to the mate for a win, so
+     * quicker mates score higher, and the negative of that for a loss. Real
+     * mates found by the search still score more
+     * @param value The value, not UNKNOWN
+     * @param ply How many moves deep in the search the board is
+     * @return the score, from the side to move's side
+     */
+    public static int score(int value, int ply) {
+        if (value > 0) {
+            return WIN_SCORE - (2 * value - 1) - ply; //mating in n moves is 2n - 1 plies
+        }
+        return value < 0 ? -(WIN_SCORE - 2 * (-value - 1) - ply) : 0;
+    }
+    
+    /**
+     * Returns true if a king and a rook are still on the squares they started
+     * on and haven't moved, so castling may still be possible
+     */
+    private static boolean canCastle(Board board) {
+        return (board.fenChar(FenUtility.WHITE_KING_HAS_MOVED) == 'f' && board.fenChar(4) == 'k'
+                && (board.fenChar(FenUtility.WHITE_LEFT_ROOK_HAS_MOVED) == 'f' && board.fenChar(0) == 'r'
+                    || board.fenChar(FenUtility.WHITE_RIGHT_ROOK_HAS_MOVED) == 'f' && board.fenChar(7) == 'r'))
+               || (board.fenChar(FenUtility.BLACK_KING_HAS_MOVED) == 'f' && board.fenChar(60) == 'K'
+                   && (board.fenChar(FenUtility.BLACK_LEFT_ROOK_HAS_MOVED) == 'f' && board.fenChar(56) == 'R'
+                       || board.fenChar(FenUtility.BLACK_RIGHT_ROOK_HAS_MOVED) == 'f' && board.fenChar(63) == 'R'));
+    }
+}
@@ -0,0 +1,566 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+/**
+ * Builds the files of a Tablebase by retrograde analysis. For one set of
+ * pieces, every position's legal moves are counted first. Mates and the moves
+ * that capture or promote (into tables built before this one) give the first
+ * results; from then on, level by level, every position lost in n plies makes
+ * the positions that can move into it won in n + 1, and a position whose
+ * every move has turned out to lose for it is lost in one more than its
+ * slowest. The tables a set of pieces captures and promotes into are built
+ * first, if they aren't there yet.
+ * <p>
+ * Usage: java TablebaseBuilder &lt;folder&gt; &lt;signature or number of pieces&gt;...
+ * <p>
+ * such as "KRvK" or "3" for every table with 3 pieces. A 4 piece table takes
+ * up to a minute and 100 MB; a 5 piece one without pawns a few GB of heap
+ * (-Xmx), and with pawns more.
+ * Wins and losses longer than 127 moves are written as draws.
+ */
+public class TablebaseBuilder {
+    
+    private static final int MAX_PLIES = 254; //longest result that fits a table's byte
+    //states of a position while building
+    private static final byte UNRESOLVED = 0;
+    private static final byte WIN = 1;
+    private static final byte LOSS = 2;
+    private static final byte DRAW = 3;
+    private static final byte INVALID = 4; //a number no legal position has
+    private static final int DRAW_ESCAPE = 0x80; //pending bit: a capture or promotion reaches a draw
+    
+    private final TablebaseIndex index;
+    private final Tablebase.Prober converted; //looks up the tables captures and promotions lead into
+    private final int[] pieces;
+    private final int[] squares;
+    private int captured = -1; //slot of the piece captured by the move being looked at, or -1
+    private final int[] neighbours = new int[CompactMove.MAX_MOVES]; //positions a move leads to or comes from
+    private final byte[] state;
+    private final byte[] plies; //unsigned. how long a WIN or LOSS takes
+    private final byte[] pending; //unsigned. moves that stay in the table and aren't known to lose yet, and DRAW_ESCAPE
+    private final byte[] winLevel; //unsigned. the quickest win found so far in plies, 0 for none
+    private final byte[] lossLevel; //unsigned. the slowest loss found so far in plies
+    private final int[][] levels = new int[MAX_PLIES + 1][]; //positions to look at again on each level
+    private final int[] levelSizes = new int[MAX_PLIES + 1];
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: TablebaseBuilder <folder> <signature or number of pieces>...");
+            System.exit(2);
+        }
+        File directory = new File(args[0]);
+        directory.mkdirs();
+        for (int i = 1; i < args.length; i++) {
+            if (Character.isDigit(args[i].charAt(0))) {
+                for (String signature : signatures(Integer.parseInt(args[i]))) {
+                    build(directory, signature);
+                }
+            } else {
+                build(directory, args[i]);
+            }
+        }
+    }
+    
+    /**
+     * Returns the signature of every table with the given number of pieces
+     * @param count The number of pieces, kings included
+     * @return the signatures, in alphabetical order
+     */
+    public static List<String> signatures(int count) {
+        TreeSet<String> signatures = new TreeSet<String>();
+        List<String> sets = new ArrayList<String>();
+        pieceSets("", 0, count - 2, sets);
+        for (String all : sets) {
+            //split the pieces between the sides every way
+            for (int mask = 0; mask < 1 << all.length(); mask++) {
+                StringBuilder white = new StringBuilder("K");
+                StringBuilder black = new StringBuilder("K");
+                for (int i = 0; i < all.length(); i++) {
+                    ((mask & 1 << i) != 0 ? white : black).append(all.charAt(i));
+                }
+                signatures.add(TablebaseIndex.signature(white.toString(), black.toString()));
+            }
+        }
+        return new ArrayList<String>(signatures);
+    }
+    
+    /**
+     * Lists every multiset of non-king pieces of the given size, in PIECE_ORDER
+     */
+    private static void pieceSets(String prefix, int from, int left, List<String> sets) {
+        if (left == 0) {
+            sets.add(prefix);
+            return;
+        }
+        for (int order = Math.max(from, 1); order < TablebaseIndex.PIECE_ORDER.length(); order++) {
+            pieceSets(prefix + TablebaseIndex.PIECE_ORDER.charAt(order), order, left - 1, sets);
+        }
+    }
+    
+    /**
+     * Builds a table, and first the tables it depends on, unless their files are already there
+     * @param directory The folder the tables go in
+     * @param signature The table's signature, such as "KRvK"
+     * @throws IOException if a file can't be read or written
+     */
+    public static void build(File directory, String signature) throws IOException {
+        TablebaseIndex index = new TablebaseIndex(signature); //checks the signature
+        if (new File(directory, index.signature + Tablebase.EXTENSION).isFile()) {
+            return;
+        }
+        for (String dependency : dependencies(signature)) {
+            build(directory, dependency);
+        }
+        long start = System.currentTimeMillis();
+        byte[] values = new TablebaseBuilder(index, new Tablebase(directory, Tablebase.CACHE_BLOCKS)).solve();
+        write(values, new File(directory, index.signature + Tablebase.EXTENSION));
+        System.out.println(signature + ": " + index.size + " positions in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    
+    /**
+     * Returns the signatures of the tables a set of pieces captures and promotes into
+     */
+    private static List<String> dependencies(String signature) {
+        int v = signature.indexOf('v');
+        String[] sides = {signature.substring(0, v), signature.substring(v + 1)};
+        List<String> dependencies = new ArrayList<String>();
+        for (int side = 0; side < 2; side++) {
+            for (int i = 1; i < sides[side].length(); i++) {
+                String rest = sides[side].substring(0, i) + sides[side].substring(i + 1);
+                dependencies.add(side == 0 ? TablebaseIndex.signature(rest, sides[1])
+                                           : TablebaseIndex.signature(sides[0], rest));
+                if (sides[side].charAt(i) == 'P') {
+                    for (char promotion : "QRBN".toCharArray()) {
+                        String sorted = sort((rest + promotion).toCharArray());
+                        dependencies.add(side == 0 ? TablebaseIndex.signature(sorted, sides[1])
+                                                   : TablebaseIndex.signature(sides[0], sorted));
+                    }
+                }
+            }
+        }
+        return dependencies;
+    }
+    
+    /**
+     * Puts pieces in PIECE_ORDER
+     */
+    private static String sort(char[] pieces) {
+        StringBuilder sorted = new StringBuilder();
+        for (char piece : TablebaseIndex.PIECE_ORDER.toCharArray()) {
+            for (char c : pieces) {
+                if (c == piece) {
+                    sorted.append(c);
+                }
+            }
+        }
+        return sorted.toString();
+    }
+    
+    /**
+     * Writes a table's file
+     * @param values The value of every position
+     * @param file The file
+     */
+    private static void write(byte[] values, File file) throws IOException {
+        int blocks = (values.length + Tablebase.BLOCK_SIZE - 1) / Tablebase.BLOCK_SIZE;
+        List<byte[]> compressed = new ArrayList<byte[]>();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] buffer = new byte[Tablebase.BLOCK_SIZE];
+        for (int block = 0; block < blocks; block++) {
+            int start = block * Tablebase.BLOCK_SIZE;
+            deflater.reset();
+            deflater.setInput(values, start, Math.min(Tablebase.BLOCK_SIZE, values.length - start));
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            compressed.add(out.toByteArray());
+        }
+        deflater.end();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(values.length);
+            out.writeInt(Tablebase.BLOCK_SIZE);
+            out.writeInt(blocks);
+            long offset = Tablebase.HEADER_SIZE + 8L * (blocks + 1);
+            for (byte[] block : compressed) {
+                out.writeLong(offset);
+                offset += block.length;
+            }
+            out.writeLong(offset);
+            for (byte[] block : compressed) {
+                out.write(block);
+            }
+        }
+    }
+    
+    /**
+     * Sets up the building of one table
+     * @param index The table's numbering
+     * @param converted The tables the pieces capture and promote into
+     */
+    private TablebaseBuilder(TablebaseIndex index, Tablebase converted) {
+        this.index = index;
+        this.converted = converted.prober();
+        pieces = index.pieces;
+        squares = new int[pieces.length];
+        state = new byte[index.size];
+        plies = new byte[index.size];
+        pending = new byte[index.size];
+        winLevel = new byte[index.size];
+        lossLevel = new byte[index.size];
+    }
+    
+    /**
+     * Works out every position of the table
+     * @return the value of every position, as Tablebase.probe returns it
+     */
+    private byte[] solve() {
+        for (int position = 0; position < index.size; position++) {
+            countMoves(position);
+        }
+        for (int level = 0; level <= MAX_PLIES; level++) {
+            for (int i = 0; i < levelSizes[level]; i++) {
+                int position = levels[level][i];
+                if (state[position] != UNRESOLVED) {
+                    continue;
+                }
+                if (level % 2 == 1) {
+                    if ((winLevel[position] & 0xFF) != level) {
+                        continue;
+                    }
+                    state[position] = WIN;
+                } else {
+                    if (pending[position] != 0 || winLevel[position] != 0 || (lossLevel[position] & 0xFF) != level) {
+                        continue;
+                    }
+                    state[position] = LOSS;
+                }
+                plies[position] = (byte) level;
+                unmoves(position, level);
+            }
+            levels[level] = null;
+        }
+        byte[] values = new byte[index.size];
+        for (int position = 0; position < index.size; position++) {
+            int length = plies[position] & 0xFF;
+            if (state[position] == WIN) {
+                values[position] = (byte) ((length + 1) / 2);
+            } else if (state[position] == LOSS) {
+                values[position] = (byte) (-(length / 2) - 1);
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Decodes a position and, if it is legal, goes through its moves: counts
+     * the ones that stay in the table and looks up the ones that capture or
+     * promote. Positions whose result that already settles are put on the
+     * level they'll be settled on
+     */
+    private void countMoves(int position) {
+        int side = index.decode(position, squares);
+        if (!legal(position, side)) {
+            state[position] = INVALID;
+            return;
+        }
+        int inTable = 0;
+        int legalMoves = 0;
+        int win = 0;
+        int loss = 0;
+        boolean drawEscape = false;
+        long occupied = occupied();
+        long own = occupiedBy(side);
+        for (int slot = 0; slot < pieces.length; slot++) {
+            if (pieces[slot] / 6 != side) {
+                continue;
+            }
+            int from = squares[slot];
+            for (long targets = targets(slot, occupied, own); targets != 0; targets &= targets - 1) {
+                int to = Long.numberOfTrailingZeros(targets);
+                captured = slotAt(to);
+                squares[slot] = to;
+                if (!attacked(squares[kingSlot(side)], side ^ 1)) {
+                    legalMoves++;
+                    boolean promotion = pieces[slot] % 6 == BitBoard.PAWN && (to < 8 || to >= 56);
+                    if (captured < 0 && !promotion) {
+                        neighbours[inTable++] = index.index(squares, side ^ 1);
+                    } else {
+                        int[] promotions = promotion ? new int[] {BitBoard.QUEEN, BitBoard.ROOK, BitBoard.BISHOP, BitBoard.HORSE}
+                                                     : new int[] {pieces[slot] % 6};
+                        for (int type : promotions) {
+                            //the opponent's value after the move
+                            int value = probeConverted(slot, type + 6 * side, side ^ 1);
+                            if (value < 0) {
+                                int length = 2 * (-value - 1) + 1;
+                                win = win == 0 ? length : Math.min(win, length);
+                            } else if (value > 0) {
+                                loss = Math.max(loss, 2 * value);
+                            } else {
+                                drawEscape = true;
+                            }
+                        }
+                    }
+                }
+                squares[slot] = from;
+                captured = -1;
+            }
+        }
+        if (legalMoves == 0) {
+            if (attacked(squares[kingSlot(side)], side ^ 1)) {
+                schedule(position, 0);
+            } else {
+                state[position] = DRAW;
+            }
+            return;
+        }
+        //moves to positions that are the same up to symmetry count once, since they are settled once
+        inTable = distinct(inTable);
+        pending[position] = (byte) (inTable | (drawEscape ? DRAW_ESCAPE : 0));
+        lossLevel[position] = (byte) loss;
+        if (win > 0) {
+            if (win <= MAX_PLIES) {
+                winLevel[position] = (byte) win;
+                schedule(position, win);
+            }
+        } else if (inTable == 0 && !drawEscape) {
+            schedule(position, loss);
+        }
+    }
+    
+    /**
+     * Goes through the moves that lead into a position just settled on the
+     * given level: the positions they come from are won on the next level if
+     * this one is lost, and are one move closer to being lost if it is won
+     */
+    private void unmoves(int position, int level) {
+        int side = index.decode(position, squares);
+        int mover = side ^ 1;
+        long occupied = occupied();
+        int count = 0;
+        for (int slot = 0; slot < pieces.length; slot++) {
+            if (pieces[slot] / 6 != mover) {
+                continue;
+            }
+            int to = squares[slot];
+            for (long origins = origins(slot, occupied); origins != 0; origins &= origins - 1) {
+                squares[slot] = Long.numberOfTrailingZeros(origins);
+                if (!attacked(squares[kingSlot(side)], mover)) {
+                    neighbours[count++] = index.index(squares, mover);
+                }
+            }
+            squares[slot] = to;
+        }
+        count = distinct(count);
+        for (int i = 0; i < count; i++) {
+            int previous = neighbours[i];
+            if (state[previous] != UNRESOLVED) {
+                continue;
+            }
+            if (state[position] == LOSS) {
+                if (level + 1 <= MAX_PLIES) {
+                    winLevel[previous] = (byte) (level + 1);
+                    schedule(previous, level + 1);
+                }
+            } else {
+                if ((pending[previous] & ~DRAW_ESCAPE & 0xFF) == 0) {
+                    throw new IllegalStateException(index.signature + ": moves miscounted at " + previous);
+                }
+                pending[previous]--;
+                lossLevel[previous] = (byte) Math.max(lossLevel[previous] & 0xFF, level + 1);
+                if (pending[previous] == 0 && winLevel[previous] == 0) {
+                    schedule(previous, lossLevel[previous] & 0xFF);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Sorts the first positions in neighbours and drops the repeats
+     * @param count How many there are
+     * @return how many different ones there are, now at the front
+     */
+    private int distinct(int count) {
+        Arrays.sort(neighbours, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || neighbours[i] != neighbours[distinct - 1]) {
+                neighbours[distinct++] = neighbours[i];
+            }
+        }
+        return distinct;
+    }
+    
+    /**
+     * Returns true if the decoded position is one the table has: the number is
+     * the position's own, pieces are on different squares, pawns aren't on the
+     * first or last rank and the side that just moved isn't in check
+     */
+    private boolean legal(int position, int side) {
+        long occupied = 0;
+        for (int slot = 0; slot < pieces.length; slot++) {
+            int square = squares[slot];
+            if ((occupied & 1L << square) != 0
+                    || (pieces[slot] % 6 == BitBoard.PAWN && (square < 8 || square >= 56))) {
+                return false;
+            }
+            occupied |= 1L << square;
+        }
+        return index.index(squares, side) == position && !attacked(squares[kingSlot(side ^ 1)], side);
+    }
+    
+    /**
+     * Returns the squares a piece can move to: empty or enemy squares, and
+     * for pawns the pushes and captures (no en passant)
+     */
+    private long targets(int slot, long occupied, long own) {
+        int square = squares[slot];
+        int side = pieces[slot] / 6;
+        if (pieces[slot] % 6 != BitBoard.PAWN) {
+            return attacks(slot, occupied) & ~own;
+        }
+        long targets = BitBoard.PAWN_ATTACKS[side][square] & occupied & ~own;
+        int forward = side == BitBoard.WHITE ? 8 : -8;
+        if ((occupied & 1L << (square + forward)) == 0) {
+            targets |= 1L << (square + forward);
+            int rank = square / 8;
+            if (rank == (side == BitBoard.WHITE ? 1 : 6) && (occupied & 1L << (square + 2 * forward)) == 0) {
+                targets |= 1L << (square + 2 * forward);
+            }
+        }
+        return targets;
+    }
+    
+    /**
+     * Returns the squares a piece can have come from without capturing or promoting
+     */
+    private long origins(int slot, long occupied) {
+        int square = squares[slot];
+        int side = pieces[slot] / 6;
+        if (pieces[slot] % 6 != BitBoard.PAWN) {
+            return attacks(slot, occupied) & ~occupied;
+        }
+        int back = side == BitBoard.WHITE ? -8 : 8;
+        int rank = square / 8;
+        long origins = 0;
+        //a pawn can't have come from its first rank
+        if (rank != (side == BitBoard.WHITE ? 1 : 6) && (occupied & 1L << (square + back)) == 0) {
+            origins |= 1L << (square + back);
+            if (rank == (side == BitBoard.WHITE ? 3 : 4) && (occupied & 1L << (square + 2 * back)) == 0) {
+                origins |= 1L << (square + 2 * back);
+            }
+        }
+        return origins;
+    }
+    
+    /**
+     * Returns the squares a piece attacks
+     */
+    private long attacks(int slot, long occupied) {
+        int square = squares[slot];
+        switch (pieces[slot] % 6) {
+        case BitBoard.PAWN:
+            return BitBoard.PAWN_ATTACKS[pieces[slot] / 6][square];
+        case BitBoard.HORSE:
+            return BitBoard.HORSE_ATTACKS[square];
+        case BitBoard.KING:
+            return BitBoard.KING_ATTACKS[square];
+        case BitBoard.ROOK:
+            return MagicBitboards.rookAttacks(square, occupied);
+        case BitBoard.BISHOP:
+            return MagicBitboards.bishopAttacks(square, occupied);
+        default:
+            return MagicBitboards.queenAttacks(square, occupied);
+        }
+    }
+    
+    /**
+     * Returns true if a square is attacked by a side's pieces, leaving out the captured one
+     */
+    private boolean attacked(int square, int by) {
+        long occupied = occupied();
+        for (int slot = 0; slot < pieces.length; slot++) {
+            if (slot != captured && pieces[slot] / 6 == by && (attacks(slot, occupied) & 1L << square) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private long occupied() {
+        return occupiedBy(BitBoard.WHITE) | occupiedBy(BitBoard.BLACK);
+    }
+    
+    private long occupiedBy(int side) {
+        long occupied = 0;
+        for (int slot = 0; slot < pieces.length; slot++) {
+            if (slot != captured && pieces[slot] / 6 == side) {
+                occupied |= 1L << squares[slot];
+            }
+        }
+        return occupied;
+    }
+    
+    /**
+     * Returns the slot of the piece on a square (not counting the one just moved there), or -1
+     */
+    private int slotAt(int square) {
+        for (int slot = 0; slot < pieces.length; slot++) {
+            if (squares[slot] == square) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+    
+    private int kingSlot(int side) {
+        return side == BitBoard.WHITE ? 0 : index.signature.indexOf('v');
+    }
+    
+    /**
+     * Looks up the position after a capture or promotion in the table it leads into
+     * @param moved The slot of the piece that moved
+     * @param piece What it is after the move
+     * @param side The side to move after the move
+     * @return the value, as Tablebase.probe returns it
+     */
+    private int probeConverted(int moved, int piece, int side) {
+        int[] after = new int[pieces.length];
+        int[] afterSquares = new int[pieces.length];
+        int count = 0;
+        for (int slot = 0; slot < pieces.length; slot++) {
+            if (slot != captured) {
+                after[count] = slot == moved ? piece : pieces[slot];
+                afterSquares[count++] = squares[slot];
+            }
+        }
+        int value = converted.probe(after, afterSquares, count, side);
+        if (value == Tablebase.UNKNOWN) {
+            throw new IllegalStateException(index.signature + " needs a table that isn't there");
+        }
+        return value;
+    }
+    
+    /**
+     * Puts a position on the list of the level its result should be settled on
+     */
+    private void schedule(int position, int level) {
+        if (levels[level] == null) {
+            levels[level] = new int[1024];
+        } else if (levelSizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], levels[level].length * 2);
+        }
+        levels[level][levelSizes[level]++] = position;
+    }
+}
@@ -0,0 +1,187 @@
+
+/**
+ * Numbers the positions of one tablebase, that is of one set of pieces such as
+ * "KRPvKR": the white pieces, "v", the black pieces, each side's king first
+ * and the rest in PIECE_ORDER. Both TablebaseBuilder and Tablebase number
+ * positions through this class, so they always agree.
+ * <p>
+ * A position is the side to move and the square of every piece. Positions
+ * that are the same up to a symmetry of the board share one number: without
+ * pawns the white king is moved into the a1-d1-d4 triangle by the board's 8
+ * rotations and reflections, with pawns (which can't be reflected across the
+ * ranks) into files a to d by the left-right mirror. Of the numbers a position
+ * could get, the lowest is used, which also orders pieces of the same kind.
+ * Numbers no position gets that way are never read.
+ */
+class TablebaseIndex {
+    
+    static final String PIECE_ORDER = "KQRBNP";
+    static final int[] PIECE_TYPES = {BitBoard.KING, BitBoard.QUEEN, BitBoard.ROOK, BitBoard.BISHOP,
+                                              BitBoard.HORSE, BitBoard.PAWN}; //by PIECE_ORDER
+    private static final int[] MATERIAL = {0, 9, 5, 3, 3, 1}; //by PIECE_ORDER
+    
+    final String signature;
+    final int[] pieces; //BitBoard piece index of every slot, white king first, then the black pieces from the black king
+    final boolean pawns;
+    final int size; //numbers 0 to size - 1
+    private final int[] region = new int[64]; //[fen index] number of the white king's square, or -1 outside the region
+    private final int[] regionSquares; //[number] fen index, the other way around
+    private final int regionSize;
+    private final int transforms; //how many of the symmetries to try, see transform
+    
+    /**
+     * Creates the numbering of a set of pieces
+     * @param signature The pieces, such as "KQvK". Each side's pieces must be in PIECE_ORDER
+     * @throws IllegalArgumentException if the signature doesn't name a king for each side
+     */
+    TablebaseIndex(String signature) {
+        int v = signature.indexOf('v');
+        if (v < 1 || signature.charAt(0) != 'K' || signature.length() < v + 2 || signature.charAt(v + 1) != 'K') {
+            throw new IllegalArgumentException("not a tablebase signature: " + signature);
+        }
+        this.signature = signature;
+        pieces = new int[signature.length() - 1];
+        boolean hasPawns = false;
+        for (int i = 0, slot = 0; i < signature.length(); i++) {
+            if (i != v) {
+                int order = PIECE_ORDER.indexOf(signature.charAt(i));
+                if (order < 0 || (i != 0 && i != v + 1 && order == 0)) {
+                    throw new IllegalArgumentException("not a tablebase signature: " + signature);
+                }
+                pieces[slot++] = PIECE_TYPES[order] + (i > v ? 6 : 0);
+                hasPawns |= PIECE_TYPES[order] == BitBoard.PAWN;
+            }
+        }
+        pawns = hasPawns;
+        transforms = pawns ? 2 : 8;
+        int count = 0;
+        for (int square = 0; square < 64; square++) {
+            int file = square % 8;
+            int rank = square / 8;
+            region[square] = (pawns ? file < 4 : file < 4 && rank <= file) ? count++ : -1;
+        }
+        regionSize = count;
+        regionSquares = new int[regionSize];
+        for (int square = 0; square < 64; square++) {
+            if (region[square] >= 0) {
+                regionSquares[region[square]] = square;
+            }
+        }
+        long positions = 2L * regionSize;
+        for (int i = 1; i < pieces.length; i++) {
+            positions *= 64;
+        }
+        if (positions > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many pieces: " + signature);
+        }
+        size = (int) positions;
+    }
+    
+    /**
+     * Returns the number of a position
+     * @param squares The fen index of the piece in every slot
+     * @param sideToMove BitBoard.WHITE or BitBoard.BLACK
+     * @return the number, or -1 if two pieces of the same kind share a square
+     */
+    int index(int[] squares, int sideToMove) {
+        return index(squares, sideToMove, new int[pieces.length]);
+    }
+    
+    /**
+     * Returns the number of a position without allocating
+     * @param squares The fen index of the piece in every slot. Only the first pieces.length are read
+     * @param sideToMove BitBoard.WHITE or BitBoard.BLACK
+     * @param moved Room for the transformed squares, at least pieces.length long
+     * @return the number, or -1 if two pieces of the same kind share a square
+     */
+    int index(int[] squares, int sideToMove, int[] moved) {
+        int best = -1;
+        for (int t = 0; t < transforms; t++) {
+            if (region[transform(t, squares[0])] < 0) {
+                continue;
+            }
+            for (int i = 0; i < pieces.length; i++) {
+                int square = transform(t, squares[i]);
+                //insertion sort within each run of identical pieces
+                int j = i;
+                while (j > 0 && pieces[j - 1] == pieces[i] && moved[j - 1] > square) {
+                    moved[j] = moved[j - 1];
+                    j--;
+                }
+                if (j > 0 && pieces[j - 1] == pieces[i] && moved[j - 1] == square) {
+                    return -1;
+                }
+                moved[j] = square;
+            }
+            int index = sideToMove * regionSize + region[moved[0]];
+            for (int i = 1; i < pieces.length; i++) {
+                index = index * 64 + moved[i];
+            }
+            if (best < 0 || index < best) {
+                best = index;
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Reads a position back from its number
+     * @param index The number
+     * @param squares Filled with the fen index of the piece in every slot
+     * @return the side to move, BitBoard.WHITE or BitBoard.BLACK
+     */
+    int decode(int index, int[] squares) {
+        for (int i = squares.length - 1; i > 0; i--) {
+            squares[i] = index % 64;
+            index /= 64;
+        }
+        squares[0] = regionSquares[index % regionSize];
+        return index / regionSize;
+    }
+    
+    /**
+     * Applies one of the board's symmetries to a square. Bit 0 of the
+     * transform mirrors the files, bit 1 the ranks and bit 2 swaps files and
+     * ranks, so 0 and 1 are the ones that keep pawns moving the same way
+     */
+    private static int transform(int t, int square) {
+        if ((t & 4) != 0) {
+            square = (square % 8) * 8 + square / 8;
+        }
+        if ((t & 1) != 0) {
+            square ^= 7;
+        }
+        if ((t & 2) != 0) {
+            square ^= 56;
+        }
+        return square;
+    }
+    
+    /**
+     * Returns the canonical signature of a set of pieces, the side with more
+     * material first (by the letters' order, when equal)
+     * @param white The white pieces in PIECE_ORDER, king included, such as "KQ"
+     * @param black The black pieces, such as "K"
+     * @return the signature, such as "KQvK"
+     */
+    static String signature(String white, String black) {
+        return stronger(white, black) ? white + "v" + black : black + "v" + white;
+    }
+    
+    /**
+     * Returns true if the signature names white's pieces first, so a board with
+     * these pieces can be looked up without swapping colors
+     */
+    static boolean stronger(String white, String black) {
+        int difference = material(white) - material(black);
+        return difference != 0 ? difference > 0 : white.compareTo(black) <= 0;
+    }
+    
+    private static int material(String pieces) {
+        int material = 0;
+        for (int i = 0; i < pieces.length(); i++) {
+            material += MATERIAL[PIECE_ORDER.indexOf(pieces.charAt(i))];
+        }
+        return material;
+    }
+}
@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * Fixed size hash table of search results, keyed by Zobrist key. Entries
+ * live in two parallel long arrays (key, packed data) so the table is one
+ * allocation no matter how many positions it holds. The number of entries
+ * is the largest power of two that fits in the requested size, so the slot
+ * for a key is just its low bits.
+ * <p>
+ * The table is shared by every search thread without locking. Each slot's
+ * key is stored XORed with its data, so if two threads write a slot at once
+ * and the key and data end up from different writes, the key check in probe
+ * fails and the torn entry reads as a miss.
+ */
+public class TranspositionTable {
+    
+    //bound types
+    public static final int EXACT = 0;
+    public static final int LOWER_BOUND = 1; //real score is >= the stored score (failed high)
+    public static final int UPPER_BOUND = 2; //real score is <= the stored score (failed low)
+    
+    //replacement policies
+    public static final int ALWAYS_REPLACE = 0; //newest result wins
+    public static final int DEPTH_PREFERRED = 1; //keep deeper results from the current search
+    
+    public static final long NO_ENTRY = 0L; //returned by probe on a miss
+    public static final int NO_MOVE = 0xFFFF;
+    
+    private static final int BYTES_PER_ENTRY = 16;
+    
+    //layout of the packed data
+    private static final int DEPTH_SHIFT = 32;
+    private static final int BOUND_SHIFT = 40;
+    private static final int MOVE_SHIFT = 42;
+    private static final int AGE_SHIFT = 58;
+    private static final long VALID_BIT = 1L << 63; //so a stored entry is never NO_ENTRY
+    
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+    private final int policy;
+    private int age; //bumped every search so stale entries can be replaced first
+    
+    /**
+     * Creates a table
+     * @param sizeMb The most memory the table may use, in megabytes
+     * @param policy ALWAYS_REPLACE or DEPTH_PREFERRED
+     */
+    public TranspositionTable(int sizeMb, int policy) {
+        long maxEntries = Math.max(1L, (long) sizeMb * 1024 * 1024 / BYTES_PER_ENTRY);
+        int entries = (int) Math.min(Long.highestOneBit(maxEntries), 1 << 30);
+        keys = new long[entries];
+        data = new long[entries];
+        mask = entries - 1;
+        this.policy = policy;
+    }
+    
+    /**
+     * Returns the number of entries the table holds
+     * @return the number of entries
+     */
+    public int capacity() {
+        return keys.length;
+    }
+    
+    /**
+     * Marks the start of a new search. Entries from earlier searches are
+     * replaced before entries from this one.
+     */
+    public void newSearch() {
+        age = (age + 1) & 0x1F;
+    }
+    
+    /**
+     * Empties the table
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        Arrays.fill(data, 0L);
+    }
+    
+    /**
+     * Looks up a position
+     * @param key The position's Zobrist key
+     * @return the packed entry, or NO_ENTRY if the position isn't stored
+     */
+    public long probe(long key) {
+        int slot = (int) key & mask;
+        long entry = data[slot];
+        if ((keys[slot] ^ entry) == key) {
+            return entry;
+        }
+        return NO_ENTRY;
+    }
+    
+    /**
+     * Stores a search result, subject to the replacement policy
+     * @param key The position's Zobrist key
+     * @param depth The depth the position was searched to
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score The score, from the point of view of the player to move
+     * @param move The CompactMove.code of the best move found, or NO_MOVE
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int slot = (int) key & mask;
+        long old = data[slot];
+        if (policy == DEPTH_PREFERRED && old != NO_ENTRY && (keys[slot] ^ old) != key
+                && age(old) == age && depth(old) > depth) {
+            return;
+        }
+        long entry = VALID_BIT
+                | ((long) age << AGE_SHIFT)
+                | ((long) (move & NO_MOVE) << MOVE_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) (depth & 0xFF) << DEPTH_SHIFT)
+                | (score & 0xFFFFFFFFL);
+        keys[slot] = key ^ entry;
+        data[slot] = entry;
+    }
+    
+    public static int score(long entry) {
+        return (int) entry;
+    }
+    
+    public static int depth(long entry) {
+        return (int) (entry >>> DEPTH_SHIFT) & 0xFF;
+    }
+    
+    public static int bound(long entry) {
+        return (int) (entry >>> BOUND_SHIFT) & 0x3;
+    }
+    
+    public static int move(long entry) {
+        return (int) (entry >>> MOVE_SHIFT) & NO_MOVE;
+    }
+    
+    private static int age(long entry) {
+        return (int) (entry >>> AGE_SHIFT) & 0x1F;
+    }
+}
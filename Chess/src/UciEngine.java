@@ -0,0 +1,366 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+/**
+ * The AI without the Display: a text engine speaking UCI (the Universal
+ * Chess Interface) on standard in and out, for chess GUIs and for running
+ * analysis on machines without a screen. Boards come in as standard FEN and
+ * moves as long algebraic (e2e4, e7e8q), and are turned into this game's fens
+ * and CompactMoves by FenUtility and parseMove.
+ * <p>
+ * Commands understood: uci, isready, ucinewgame, setoption (Hash, Threads,
+ * OwnBook), position [startpos | fen ...] [moves ...], go [depth n] [movetime ms]
+ * [nodes n] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite] [ponder],
+ * stop, ponderhit, quit, and d to print the board as FEN. While searching, an info line
+ * with the depth, score, nodes, nps, time and principal variation is printed
+ * after every iteration.
+ * <p>
+ * Usage: java UciEngine
+ */
+public class UciEngine implements SearchListener {
+    
+    public static final String NAME = "Chess";
+    public static final int DEFAULT_MOVES_TO_GO = 30; //moves the clock is shared between when go doesn't say
+    public static final int MOVE_OVERHEAD = 50; //ms kept back from the clock for talking to the GUI
+    public static final int MAX_HASH_MB = 4096;
+    
+    private final BufferedReader in;
+    private final PrintStream out;
+    private MiniMax ai;
+    private Board board = Board.fromFen(Game.startFen);
+    private Thread search; //the running search, or null
+    private boolean waitForStop = false; //go infinite: bestmove waits for stop even if the search is done. guarded by this
+    private int hashMb = MiniMax.TABLE_SIZE_MB;
+    private int threads = MiniMax.THREADS;
+    private boolean ownBook = false;
+    
+    public static void main(String[] args) throws IOException {
+        new UciEngine(new BufferedReader(new InputStreamReader(System.in)), System.out).run();
+    }
+    
+    /**
+     * Creates an engine
+     * @param in Where the commands come from
+     * @param out Where the replies go
+     */
+    public UciEngine(BufferedReader in, PrintStream out) {
+        this.in = in;
+        this.out = out;
+        createAi();
+    }
+    
+    private void createAi() {
+        ai = new MiniMax(MiniMax.MAX_DEPTH, hashMb, TranspositionTable.DEPTH_PREFERRED);
+        ai.setThreads(threads);
+        ai.setPrintStats(false); //standard out is for the protocol
+        ai.setSearchListener(this);
+    }
+    
+    /**
+     * Reads and answers commands until quit or the end of the input
+     * @throws IOException if the input can't be read
+     */
+    public void run() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] words = line.trim().split("\\s+");
+            if (words[0].equals("quit")) {
+                break;
+            }
+            try {
+                command(words);
+            } catch (IllegalArgumentException e) {
+                send("info string " + e.getMessage());
+            }
+        }
+        stopSearch();
+    }
+    
+    /**
+     * Answers one command
+     * @param words The command line, split at spaces
+     * @throws IllegalArgumentException if the command is malformed
+     */
+    private void command(String[] words) {
+        switch (words[0]) {
+        case "uci":
+            send("id name " + NAME);
+            send("id author Ian");
+            send("option name Hash type spin default " + MiniMax.TABLE_SIZE_MB + " min 1 max " + MAX_HASH_MB);
+            send("option name Threads type spin default " + MiniMax.THREADS + " min 1 max 256");
+            send("option name OwnBook type check default false");
+            send("uciok");
+            break;
+        case "isready":
+            //the first move generation sets up the magic bitboards, which takes a while, so do it before saying ready
+            board.generateMoves(new int[CompactMove.MAX_MOVES], 0);
+            send("readyok");
+            break;
+        case "ucinewgame":
+            stopSearch();
+            ai.table.clear();
+            break;
+        case "setoption":
+            stopSearch();
+            setOption(words);
+            break;
+        case "position":
+            stopSearch();
+            position(words);
+            break;
+        case "go":
+            stopSearch();
+            go(words);
+            break;
+        case "stop":
+        case "ponderhit": //pondering is searched as go infinite, so the hit ends it the same way
+            stopSearch();
+            break;
+        case "d":
+            send("info string " + FenUtility.toStandardFen(board.getFen()));
+            break;
+        case "":
+            break;
+        default:
+            send("info string unknown command " + words[0]);
+        }
+    }
+    
+    /**
+     * setoption name &lt;name&gt; value &lt;value&gt;
+     */
+    private void setOption(String[] words) {
+        if (words.length < 5 || !words[1].equals("name") || !words[3].equals("value")) {
+            throw new IllegalArgumentException("usage: setoption name <name> value <value>");
+        }
+        switch (words[2].toLowerCase()) {
+        case "hash":
+            hashMb = Math.max(1, Math.min(MAX_HASH_MB, Integer.parseInt(words[4])));
+            createAi();
+            break;
+        case "threads":
+            threads = Math.max(1, Integer.parseInt(words[4]));
+            ai.setThreads(threads);
+            break;
+        case "ownbook":
+            ownBook = Boolean.parseBoolean(words[4]);
+            break;
+        default:
+            throw new IllegalArgumentException("unknown option " + words[2]);
+        }
+    }
+    
+    /**
+     * position [startpos | fen &lt;FEN&gt;] [moves &lt;move&gt;...]
+     */
+    private void position(String[] words) {
+        int i = 1;
+        String fen;
+        if (i < words.length && words[i].equals("startpos")) {
+            fen = Game.startFen;
+            i++;
+        } else if (i < words.length && words[i].equals("fen")) {
+            StringBuilder standardFen = new StringBuilder();
+            for (i++; i < words.length && !words[i].equals("moves"); i++) {
+                standardFen.append(words[i]).append(' ');
+            }
+            fen = FenUtility.fromStandardFen(standardFen.toString());
+        } else {
+            throw new IllegalArgumentException("usage: position [startpos | fen <FEN>] [moves <move>...]");
+        }
+        Board newBoard = Board.fromFen(fen);
+        if (i < words.length && words[i].equals("moves")) {
+            for (i++; i < words.length; i++) {
+                int move = parseMove(newBoard, words[i]);
+                if (move == CompactMove.NONE) {
+                    throw new IllegalArgumentException("illegal move " + words[i]);
+                }
+                newBoard.makeMove(move);
+            }
+        }
+        board = Board.fromFen(newBoard.getFen()); //so the board doesn't keep every move to unmake
+    }
+    
+    /**
+     * go [depth n] [movetime ms] [nodes n] [wtime ms] [btime ms] [winc ms] [binc ms] [movestogo n] [infinite] [ponder].
+     * Starts the search on its own thread, which prints bestmove when it is done. With
+     * infinite or ponder the search has no limit, and bestmove waits for stop or ponderhit
+     * even if the search finishes first, as UCI says
+     */
+    private void go(String[] words) {
+        int depth = MiniMax.MAX_DEPTH;
+        long moveTime = 0;
+        long nodes = 0;
+        long[] clock = new long[2]; //[side] time left
+        long[] increment = new long[2];
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean infinite = false;
+        for (int i = 1; i < words.length; i++) {
+            switch (words[i]) {
+            case "depth":
+                depth = (int) Math.max(1, Math.min(MiniMax.MAX_DEPTH, number(words, ++i)));
+                break;
+            case "movetime":
+                moveTime = number(words, ++i);
+                break;
+            case "nodes":
+                nodes = number(words, ++i);
+                break;
+            case "wtime":
+                clock[BitBoard.WHITE] = number(words, ++i);
+                break;
+            case "btime":
+                clock[BitBoard.BLACK] = number(words, ++i);
+                break;
+            case "winc":
+                increment[BitBoard.WHITE] = number(words, ++i);
+                break;
+            case "binc":
+                increment[BitBoard.BLACK] = number(words, ++i);
+                break;
+            case "movestogo":
+                movesToGo = (int) Math.max(1, number(words, ++i));
+                break;
+            case "infinite":
+            case "ponder":
+                infinite = true;
+                break;
+            default:
+                break; //anything not supported
+            }
+        }
+        int side = board.turn().equals("white") ? BitBoard.WHITE : BitBoard.BLACK;
+        if (infinite) {
+            depth = MiniMax.MAX_DEPTH;
+            moveTime = 0;
+            nodes = 0;
+        } else if (moveTime == 0 && clock[side] > 0) {
+            //an even share of the clock, never more than is left
+            moveTime = Math.max(1, Math.min(clock[side] / movesToGo + increment[side] / 2, clock[side] - MOVE_OVERHEAD));
+        }
+        ai.setDepth(depth);
+        ai.setTimeLimit(moveTime);
+        ai.setNodeLimit(nodes);
+        final Board searchBoard = Board.fromFen(board.getFen());
+        synchronized (this) {
+            waitForStop = infinite;
+        }
+        search = new Thread(() -> {
+            int move = CompactMove.NONE;
+            OpeningBook book = ownBook ? OpeningBook.defaultBook() : null;
+            if (book != null) {
+                move = book.move(searchBoard);
+            }
+            if (move == CompactMove.NONE && searchBoard.generateMoves(new int[CompactMove.MAX_MOVES], 0) > 0) {
+                move = ai.search(searchBoard);
+            }
+            synchronized (this) {
+                while (waitForStop) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+            send("bestmove " + (move == CompactMove.NONE ? "0000" : uciMove(move)));
+        }, "uci search");
+        search.start();
+    }
+    
+    /**
+     * Stops the running search, if any, and waits for it to print its move
+     */
+    private void stopSearch() {
+        if (search != null) {
+            synchronized (this) {
+                waitForStop = false;
+                notifyAll();
+            }
+            ai.stop();
+            try {
+                search.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            search = null;
+        }
+    }
+    
+    @Override
+    public void iterationFinished(int depth, int score, long nodes, long millis, int[] principalVariation) {
+        StringBuilder info = new StringBuilder("info depth ").append(depth).append(" score ");
+        if (Math.abs(score) > MiniMax.MATE_BOUND) {
+            //INFINITY less the plies to the mate, the last of them the mating move
+            int moves = (MiniMax.INFINITY - Math.abs(score) + 1) / 2;
+            info.append("mate ").append(score > 0 ? moves : -moves);
+        } else if (Math.abs(score) > Tablebase.WIN_BOUND) {
+            //the same, counted from WIN_SCORE: a mate the tablebases know of
+            int moves = (Tablebase.WIN_SCORE - Math.abs(score) + 1) / 2;
+            info.append("mate ").append(score > 0 ? moves : -moves);
+        } else {
+            info.append("cp ").append(score);
+        }
+        info.append(" nodes ").append(nodes).append(" nps ").append(millis == 0 ? 0 : nodes * 1000 / millis)
+            .append(" time ").append(millis).append(" pv");
+        for (int move : principalVariation) {
+            info.append(' ').append(uciMove(move));
+        }
+        send(info.toString());
+    }
+    
+    /**
+     * Writes a move the way UCI does: from and to squares, and the piece a
+     * pawn promotes to. Castling is the king's move, as it already is here
+     * @param move The move
+     * @return the move, e.g. "e2e4" or "e7e8q"
+     */
+    public static String uciMove(int move) {
+        String s = CompactMove.squareName(CompactMove.from(move)) + CompactMove.squareName(CompactMove.to(move));
+        if (CompactMove.isPromotion(move)) {
+            s += "prnbqk".charAt(CompactMove.promotion(move) % 6);
+        }
+        return s;
+    }
+    
+    /**
+     * Finds the legal move a UCI move stands for
+     * @param board The board
+     * @param text The move, e.g. "e2e4" or "e7e8q"
+     * @return the move, or CompactMove.NONE if no legal move is written that way
+     */
+    public static int parseMove(Board board, String text) {
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int end = board.generateMoves(moves, 0);
+        for (int i = 0; i < end; i++) {
+            if (uciMove(moves[i]).equals(text.toLowerCase())) {
+                return moves[i];
+            }
+        }
+        return CompactMove.NONE;
+    }
+    
+    /**
+     * Reads the number after a go parameter
+     * @param words The command line
+     * @param i Where the number should be
+     * @return the number
+     * @throws IllegalArgumentException if it is missing or not a number
+     */
+    private static long number(String[] words, int i) {
+        if (i >= words.length) {
+            throw new IllegalArgumentException("go " + words[i - 1] + " needs a number");
+        }
+        return Long.parseLong(words[i]);
+    }
+    
+    private void send(String message) {
+        synchronized (out) {
+            out.println(message);
+            out.flush();
+        }
+    }
+}
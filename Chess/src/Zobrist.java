@@ -0,0 +1,122 @@
+import java.util.Random;
+
+/**
+ * Random keys for Zobrist hashing. A position's key is the XOR of the key for
+ * every piece on its square plus the keys for the non-board parts of the fen,
+ * so moves can update it incrementally by XORing out what changed and XORing
+ * in the new values. The status character (fen index 64) is not hashed. The
+ * pawn that just jumped two squares is only hashed when a pawn can take it en
+ * passant, so boards that play the same share a key however they were
+ * reached (1.e4 e5 2.Nf3 and 1.Nf3 e5 2.e4, say).
+ */
+public class Zobrist {
+    
+    private static final long SEED = 1070372L; //fixed so keys are the same every run
+    
+    static final long[][] PIECE_KEYS = new long[12][64]; //[piece index][fen index]
+    static final long BLACK_TO_MOVE;
+    static final long[] HAS_MOVED_KEYS = new long[6]; //in fen order
+    static final long[] DOUBLE_JUMPER_Y_KEYS = new long[16];
+    static final long[] DOUBLE_JUMPER_X_KEYS = new long[16];
+    
+    static {
+        Random random = new Random(SEED);
+        for (int piece = 0; piece < 12; piece++) {
+            for (int square = 0; square < 64; square++) {
+                PIECE_KEYS[piece][square] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        for (int i = 0; i < HAS_MOVED_KEYS.length; i++) {
+            HAS_MOVED_KEYS[i] = random.nextLong();
+        }
+        for (int i = 0; i < 16; i++) {
+            DOUBLE_JUMPER_Y_KEYS[i] = random.nextLong();
+            DOUBLE_JUMPER_X_KEYS[i] = random.nextLong();
+        }
+    }
+    
+    /**
+     * Returns the key for a piece on a square
+     * @param piece The piece index (see BitBoard.PIECES)
+     * @param square The fen index of the square
+     * @return the key
+     */
+    public static long pieceKey(int piece, int square) {
+        return PIECE_KEYS[piece][square];
+    }
+    
+    /**
+     * Returns the combined key for a BitBoard's packed state: turn and
+     * has-moved flags. The double jumper is left to doubleJumperKey
+     * @param state The packed state
+     * @return the key
+     */
+    public static long stateKey(int state) {
+        long key = 0L;
+        if ((state & BitBoard.TURN_BIT) != 0) {
+            key ^= BLACK_TO_MOVE;
+        }
+        for (int i = 0; i < HAS_MOVED_KEYS.length; i++) {
+            if ((state & (1 << (BitBoard.HAS_MOVED_SHIFT + i))) != 0) {
+                key ^= HAS_MOVED_KEYS[i];
+            }
+        }
+        return key;
+    }
+    
+    /**
+     * Returns the key for the pawn that just jumped two squares
+     * @param y The double jumper's fen value (1 to 8), or 0 for none
+     * @param x Its file, 1 to 8, or 0 for none
+     * @param canTakeEnPassant Whether a pawn can take it. If not the key is the same as for no double jumper
+     * @return the key
+     */
+    public static long doubleJumperKey(int y, int x, boolean canTakeEnPassant) {
+        return canTakeEnPassant ? DOUBLE_JUMPER_Y_KEYS[y] ^ DOUBLE_JUMPER_X_KEYS[x]
+                                : DOUBLE_JUMPER_Y_KEYS[0] ^ DOUBLE_JUMPER_X_KEYS[0];
+    }
+    
+    /**
+     * Computes the key for a board from scratch
+     * @param board The board
+     * @return the key
+     */
+    public static long hash(Board board) {
+        long key = 0L;
+        for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++) {
+            int piece = BitBoard.pieceIndex(board.fenChar(i));
+            if (piece != BitBoard.EMPTY) {
+                key ^= PIECE_KEYS[piece][i];
+            }
+        }
+        if (board.fenChar(FenUtility.TURN) != 'w') {
+            key ^= BLACK_TO_MOVE;
+        }
+        for (int i = 0; i < HAS_MOVED_KEYS.length; i++) {
+            if (board.fenChar(FenUtility.WHITE_LEFT_ROOK_HAS_MOVED + i) == 't') {
+                key ^= HAS_MOVED_KEYS[i];
+            }
+        }
+        key ^= doubleJumperKey(board.fenChar(FenUtility.DOUBLE_JUMPER_Y) - '0',
+                               board.fenChar(FenUtility.DOUBLE_JUMPER_X) - '0', board.canTakeEnPassant());
+        return key;
+    }
+    
+    /**
+     * Computes the pawn key for a board from scratch: the XOR of the piece
+     * keys of its pawns only, so it changes only when a pawn moves or is taken
+     * @param board The board
+     * @return the key. 0 for a board without pawns
+     */
+    public static long pawnHash(Board board) {
+        long key = 0L;
+        for (int i = FenUtility.BOARD_START; i <= FenUtility.BOARD_END; i++) {
+            int piece = BitBoard.pieceIndex(board.fenChar(i));
+            if (piece != BitBoard.EMPTY && piece % 6 == BitBoard.PAWN) {
+                key ^= PIECE_KEYS[piece][i];
+            }
+        }
+        return key;
+    }
+}
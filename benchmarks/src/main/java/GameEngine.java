@@ -0,0 +1,111 @@
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import chess.bench.Engine;
+
+/**
+ * Engine on the game classes. Lives in the default package so it can use them.
+ */
+public class GameEngine implements Engine {
+    
+    private static final int TABLE_SIZE_MB = 1; //small, since the table is cleared before every search
+    
+    private final boolean useBitBoards;
+    private final Map<String, MiniMax> searches = new HashMap<String, MiniMax>(); //by depth and evaluator
+    private final PositionalBoardEvaluator positional = new PositionalBoardEvaluator();
+    private String fen;
+    private Board board;
+    private Move firstMove;
+    
+    /**
+     * Creates an engine
+     * @param backend "board" for the fen String Board, "bitboard" for the BitBoard
+     */
+    public GameEngine(String backend) {
+        if (!backend.equals("board") && !backend.equals("bitboard")) {
+            throw new IllegalArgumentException("unknown backend " + backend);
+        }
+        useBitBoards = backend.equals("bitboard");
+    }
+    
+    @Override
+    public void load(String fen) {
+        this.fen = fen;
+        board = useBitBoards ? new BitBoard(fen) : new Board(fen);
+        List<Move> moves = board.generateMoves();
+        firstMove = moves.isEmpty() ? new Move() : moves.get(0);
+    }
+    
+    @Override
+    public int generateMoves() {
+        return board.generateMoves().size();
+    }
+    
+    @Override
+    public int generateCompactMoves(int[] moves) {
+        return board.generateMoves(moves, 0);
+    }
+    
+    @Override
+    public boolean playerInCheck() {
+        return board.playerInCheck(board.turn());
+    }
+    
+    @Override
+    public boolean checkMate() {
+        return board.checkMate();
+    }
+    
+    @Override
+    public boolean draw() {
+        return board.draw();
+    }
+    
+    @Override
+    public String applyToFen() {
+        return firstMove.applyToFen(fen);
+    }
+    
+    @Override
+    public int evaluate() {
+        return BasicBoardEvaluator.evaluate(board);
+    }
+    
+    @Override
+    public int pieceSquareScore() {
+        return board.pieceSquareScore();
+    }
+    
+    @Override
+    public int evaluatePositional() {
+        return positional.evaluate(board);
+    }
+    
+    @Override
+    public Object doMiniMax(int depth, String evaluator) {
+        MiniMax ai = searches.get(depth + evaluator);
+        if (ai == null) {
+            ai = new MiniMax(depth, TABLE_SIZE_MB, TranspositionTable.DEPTH_PREFERRED, evaluator(evaluator));
+            ai.setThreads(1);
+            ai.setPrintStats(false);
+            searches.put(depth + evaluator, ai);
+        }
+        ai.table.clear();
+        return ai.doMiniMax(board);
+    }
+    
+    /**
+     * Returns the evaluator with the given name
+     * @param name "positional", "pieceSquare" or "basic"
+     * @return the evaluator
+     */
+    private static BoardEvaluator evaluator(String name) {
+        switch (name) {
+            case "positional": return new PositionalBoardEvaluator();
+            case "pieceSquare": return BoardEvaluator.PIECE_SQUARE;
+            case "basic": return BoardEvaluator.BASIC;
+            default: throw new IllegalArgumentException("unknown evaluator " + name);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import chess.bench.Positions;
+
+/**
+ * Checks the alpha-beta search against plain minimax on every benchmark
+ * position. With quiescence search, the selective search and aspiration
+ * windows off, both search exactly the given depth and must give the root
+ * the same score. Their moves must be the same, or tie: plain minimax gives
+ * alpha-beta's move the best score too. Both run on one thread from an empty
+ * transposition table.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar SearchCheck [depth]
+ * <p>
+ * Exits with 1 if any position disagrees, so it can fail a build.
+ */
+public class SearchCheck {
+    
+    public static final int DEFAULT_DEPTH = 4;
+    private static final int TABLE_SIZE_MB = 16;
+    
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        System.exit(check(depth) ? 0 : 1);
+    }
+    
+    /**
+     * Searches every position both ways and prints what each found
+     * @param depth The depth both search to
+     * @return true if they agreed on every position
+     */
+    public static boolean check(int depth) {
+        MiniMax alphaBeta = create(depth, true);
+        MiniMax miniMax = create(depth, false);
+        boolean passed = true;
+        for (String name : Positions.names()) {
+            Board board = Board.fromFen(Positions.fen(name));
+            alphaBeta.table.clear();
+            int abMove = alphaBeta.search(board);
+            int abScore = alphaBeta.completedScore;
+            int mmMove = compact(board, miniMax.doMiniMax(board));
+            int mmScore = miniMax.completedScore;
+            //the score plain minimax gives alpha-beta's move, which has to be the best there is
+            int abMoveScore = abMove == CompactMove.NONE ? mmScore : miniMax.miniMaxScore(board, abMove);
+            boolean agree = abScore == mmScore && abMoveScore == mmScore;
+            passed &= agree;
+            System.out.println(String.format("%-10s depth %d: alpha-beta %-5s %8d, minimax %-5s %8d, %s", name, depth,
+                    name(abMove), abScore, name(mmMove), mmScore,
+                    !agree ? "FAIL (minimax scores alpha-beta's move " + abMoveScore + ")"
+                           : abMove == mmMove ? "ok" : "ok, tied"));
+        }
+        System.out.println(passed ? "passed" : "FAILED");
+        return passed;
+    }
+    
+    /**
+     * Finds the CompactMove that makes the same change to the board as a Move
+     * @param board The board
+     * @param move The move, or null
+     * @return the move, or CompactMove.NONE if there is none
+     */
+    private static int compact(Board board, Move move) {
+        if (move == null) {
+            return CompactMove.NONE;
+        }
+        String after = move.applyToFen(board.getFen());
+        int[] moves = new int[CompactMove.MAX_MOVES];
+        int end = board.generateMoves(moves, 0);
+        for (int i = 0; i < end; i++) {
+            if (board.toMove(moves[i]).applyToFen(board.getFen()).equals(after)) {
+                return moves[i];
+            }
+        }
+        return CompactMove.NONE;
+    }
+    
+    private static String name(int move) {
+        return move == CompactMove.NONE ? "none" : UciEngine.uciMove(move);
+    }
+    
+    /**
+     * Creates a MiniMax searching exactly to the given depth on one thread
+     * @param depth The depth
+     * @param useAlphaBeta true for alpha-beta, false for plain minimax
+     * @return the MiniMax
+     */
+    private static MiniMax create(int depth, boolean useAlphaBeta) {
+        MiniMax ai = new MiniMax(depth, TABLE_SIZE_MB, TranspositionTable.DEPTH_PREFERRED);
+        ai.setAlphaBeta(useAlphaBeta);
+        ai.setQuiescence(false);
+        ai.setNullMovePruning(false);
+        ai.setLateMoveReductions(false);
+        ai.setFutilityPruning(false);
+        ai.setAspirationWindows(false);
+        ai.setThreads(1);
+        ai.setPrintStats(false);
+        return ai;
+    }
+}
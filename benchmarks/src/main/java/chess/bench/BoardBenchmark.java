@@ -0,0 +1,88 @@
+package chess.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move generation, check detection and evaluation on every position of the
+ * suite, on both Board backends
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+    
+    @Param({"start", "opening", "middlegame", "kiwipete", "endgame", "check", "mate"})
+    String position;
+    
+    @Param({"board", "bitboard"})
+    String backend;
+    
+    private Engine engine;
+    private final int[] moves = new int[256]; //CompactMove.MAX_MOVES
+    
+    @Setup
+    public void setUp() {
+        engine = Engine.create(backend);
+        engine.load(Positions.fen(position));
+    }
+    
+    @Benchmark
+    public int generateMoves() {
+        return engine.generateMoves();
+    }
+    
+    @Benchmark
+    public int generateCompactMoves() {
+        return engine.generateCompactMoves(moves);
+    }
+    
+    @Benchmark
+    public boolean playerInCheck() {
+        return engine.playerInCheck();
+    }
+    
+    @Benchmark
+    public boolean checkMate() {
+        return engine.checkMate();
+    }
+    
+    @Benchmark
+    public boolean draw() {
+        return engine.draw();
+    }
+    
+    @Benchmark
+    public String applyToFen() {
+        return engine.applyToFen();
+    }
+    
+    @Benchmark
+    public int evaluate() {
+        return engine.evaluate();
+    }
+    
+    @Benchmark
+    public int pieceSquareScore() {
+        return engine.pieceSquareScore();
+    }
+    
+    @Benchmark
+    public int evaluatePositional() {
+        return engine.evaluatePositional();
+    }
+}
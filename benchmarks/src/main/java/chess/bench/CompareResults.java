@@ -0,0 +1,179 @@
+package chess.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares two JSON result files written by RunBenchmarks, benchmark by
+ * benchmark, and flags every benchmark that got slower by more than the
+ * threshold and more than the two runs' error margins.
+ * <p>
+ * Usage: java -cp benchmarks/target/benchmarks.jar chess.bench.CompareResults
+ *        &lt;baseline.json&gt; &lt;new.json&gt; [thresholdPercent]
+ * <p>
+ * Exits with 1 if anything got slower, so it can fail a build.
+ */
+public class CompareResults {
+
+    public static final double DEFAULT_THRESHOLD_PERCENT = 5;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: CompareResults <baseline.json> <new.json> [thresholdPercent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_THRESHOLD_PERCENT;
+        Map<String, double[]> baseline = read(args[0]);
+        Map<String, double[]> current = read(args[1]);
+        int regressions = 0;
+        for (Map.Entry<String, double[]> e : current.entrySet()) {
+            double[] now = e.getValue();
+            double[] before = baseline.get(e.getKey());
+            if (before == null) {
+                System.out.println(String.format("%-80s %12s %12.3f  new", e.getKey(), "-", now[0]));
+                continue;
+            }
+            double change = (now[0] - before[0]) * 100 / before[0];
+            //every mode the suite uses is time per op, so higher is slower
+            boolean slower = change > threshold && now[0] - now[1] > before[0] + before[1];
+            if (slower) {
+                regressions++;
+            }
+            System.out.println(String.format("%-80s %12.3f %12.3f %+7.1f%%%s", e.getKey(), before[0], now[0], change,
+                    slower ? "  SLOWER" : ""));
+        }
+        System.out.println(regressions + " slower");
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /**
+     * Reads a JMH JSON result file
+     * @param file The file
+     * @return score and score error by benchmark name plus parameters
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, double[]> read(String file) throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+        Map<String, double[]> scores = new LinkedHashMap<String, double[]>();
+        for (Object o : (List<Object>) new JsonReader(json).value()) {
+            Map<String, Object> result = (Map<String, Object>) o;
+            StringBuilder name = new StringBuilder((String) result.get("benchmark"));
+            Map<String, Object> params = (Map<String, Object>) result.get("params");
+            if (params != null) {
+                for (Map.Entry<String, Object> p : params.entrySet()) {
+                    name.append(' ').append(p.getKey()).append('=').append(p.getValue());
+                }
+            }
+            Map<String, Object> metric = (Map<String, Object>) result.get("primaryMetric");
+            Object error = metric.get("scoreError");
+            scores.put(name.toString(), new double[] {
+                ((Number) metric.get("score")).doubleValue(),
+                error instanceof Number ? ((Number) error).doubleValue() : 0, //"NaN" with a single iteration
+            });
+        }
+        return scores;
+    }
+
+    /**
+     * Just enough of a JSON parser for JMH's output: objects become maps,
+     * arrays lists, numbers doubles
+     */
+    private static class JsonReader {
+
+        private final String s;
+        private int i = 0;
+
+        JsonReader(String s) {
+            this.s = s;
+        }
+
+        Object value() {
+            skipSpace();
+            char c = s.charAt(i);
+            if (c == '{') {
+                Map<String, Object> map = new LinkedHashMap<String, Object>();
+                i++;
+                while (!consume('}')) {
+                    consume(',');
+                    skipSpace();
+                    String key = string();
+                    skipSpace();
+                    expect(':');
+                    map.put(key, value());
+                }
+                return map;
+            }
+            if (c == '[') {
+                List<Object> list = new ArrayList<Object>();
+                i++;
+                while (!consume(']')) {
+                    consume(',');
+                    list.add(value());
+                }
+                return list;
+            }
+            if (c == '"') {
+                return string();
+            }
+            int start = i;
+            while (i < s.length() && ",}] \t\r\n".indexOf(s.charAt(i)) < 0) {
+                i++;
+            }
+            String word = s.substring(start, i);
+            switch (word) {
+                case "true": return true;
+                case "false": return false;
+                case "null": return null;
+                default: return Double.parseDouble(word);
+            }
+        }
+
+        private String string() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            char c;
+            while ((c = s.charAt(i++)) != '"') {
+                if (c == '\\') {
+                    c = s.charAt(i++);
+                    if (c == 'u') {
+                        c = (char) Integer.parseInt(s.substring(i, i + 4), 16);
+                        i += 4;
+                    } else if (c == 'n') {
+                        c = '\n';
+                    } else if (c == 't') {
+                        c = '\t';
+                    }
+                }
+                sb.append(c);
+            }
+            return sb.toString();
+        }
+
+        private boolean consume(char c) {
+            skipSpace();
+            if (s.charAt(i) == c) {
+                i++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("expected " + c + " at " + i);
+            }
+        }
+
+        private void skipSpace() {
+            while (Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package chess.bench;
+
+/**
+ * The game operations the benchmarks time. JMH won't run benchmarks in the
+ * default package, and classes in the default package can't be imported
+ * from any other, so the benchmarks call the game through this interface.
+ * GameEngine, in the default package, implements it on the real classes.
+ */
+public interface Engine {
+    
+    /**
+     * Sets up a position. Every other method works on the last loaded position
+     * @param fen The position, in the project's fen format
+     */
+    void load(String fen);
+    
+    /**
+     * Board.generateMoves
+     * @return the number of moves
+     */
+    int generateMoves();
+    
+    /**
+     * Board.generateMoves into an int buffer
+     * @param moves The buffer, with room for CompactMove.MAX_MOVES moves
+     * @return the number of moves
+     */
+    int generateCompactMoves(int[] moves);
+    
+    /**
+     * Board.playerInCheck for the player whose turn it is
+     */
+    boolean playerInCheck();
+    
+    /**
+     * Board.checkMate
+     */
+    boolean checkMate();
+    
+    /**
+     * Board.draw
+     */
+    boolean draw();
+    
+    /**
+     * Move.applyToFen with the position's first legal move
+     * @return the new fen
+     */
+    String applyToFen();
+    
+    /**
+     * BasicBoardEvaluator.evaluate
+     * @return the score
+     */
+    int evaluate();
+    
+    /**
+     * Board.pieceSquareScore
+     * @return the score
+     */
+    int pieceSquareScore();
+    
+    /**
+     * PositionalBoardEvaluator.evaluate
+     * @return the score
+     */
+    int evaluatePositional();
+    
+    /**
+     * MiniMax.doMiniMax on one thread, starting from an empty transposition table
+     * @param depth The depth to search to
+     * @param evaluator "positional", "pieceSquare" or "basic"
+     * @return the best move
+     */
+    Object doMiniMax(int depth, String evaluator);
+    
+    /**
+     * Creates the engine
+     * @param backend "board" for the fen String Board, "bitboard" for the BitBoard
+     * @return the engine
+     */
+    static Engine create(String backend) {
+        try {
+            return (Engine) Class.forName("GameEngine").getConstructor(String.class).newInstance(backend);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("can't create GameEngine", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package chess.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole MiniMax.doMiniMax call at several depths. Every call starts from an
+ * empty transposition table, so calls don't get faster by reusing the last one.
+ * Only the BitBoard and the default evaluator by default; add e.g.
+ * -p backend=board,bitboard or -p evaluator=positional,pieceSquare,basic to compare.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MiniMaxBenchmark {
+    
+    @Param({"start", "middlegame", "endgame"})
+    String position;
+    
+    @Param({"1", "2", "3", "4"})
+    int depth;
+    
+    @Param({"bitboard"})
+    String backend;
+    
+    @Param({"positional"})
+    String evaluator;
+    
+    private Engine engine;
+    
+    @Setup
+    public void setUp() {
+        engine = Engine.create(backend);
+        engine.load(Positions.fen(position));
+    }
+    
+    @Benchmark
+    public Object doMiniMax() {
+        return engine.doMiniMax(depth, evaluator);
+    }
+}
@@ -0,0 +1,60 @@
+package chess.bench;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The fixed positions every benchmark runs on, in the project's fen format.
+ * Don't change a position once results have been recorded for it, or old and
+ * new results stop being comparable; add a new one instead.
+ */
+public final class Positions {
+    
+    private static final Map<String, String> FENS = new LinkedHashMap<String, String>();
+    
+    static {
+        FENS.put("start", "rhbqkbhrpppppppp--------------------------------PPPPPPPPRHBQKBHR wffffff00");
+        //after 1. e4 e5 2. Nf3 Nc6 3. Bc4 Bc5
+        FENS.put("opening", "rhbqk--rpppp-ppp-----h----b-p-----B-P-----H-----PPPP-PPPR-BQK-HR wffffff00");
+        //perft position 6
+        FENS.put("middlegame", "r----rk--pp-qpppp-hp-h----b-p-B---B-P-b-P-HP-H---PP-QPPPR----RK- wtttttt00");
+        //perft kiwipete: castling, pins, en passant and promotions close by
+        FENS.put("kiwipete", "r---k--rpppbbppp--h--q-P-P--p------ph---BH--PHP-P-PPQPB-R---K--R wffffff00");
+        //perft position 3
+        FENS.put("endgame", "------------p-p----------r---P-Kkp-----R---P------P------------- wtttttt00");
+        //after 1. e4 f6 2. Qh5+
+        FENS.put("check", "rhb-kbhrpppp-ppp------------p----------q-----P--PPPPP-PPRHBQKBHR bffffff00");
+        //fool's mate, white is mated
+        FENS.put("mate", "rhbqkbhrppppp--p-----p--------pQ----P-----------PPPP-PPPRHB-KBHR wffffff00");
+        //white promotes on f8, and mates with a queen or a rook
+        FENS.put("promotion", "----------------------------------------------k------p---------K wtttttt00");
+        //black is stalemated
+        FENS.put("stalemate", "----------------------------------------------k------q---------K btttttt00");
+    }
+    
+    private Positions() {
+    }
+    
+    /**
+     * Returns the names of every position, in the order they were added
+     * @return the names
+     */
+    public static Set<String> names() {
+        return Collections.unmodifiableSet(FENS.keySet());
+    }
+    
+    /**
+     * Returns the fen of a position
+     * @param name The position's name
+     * @return the fen
+     */
+    public static String fen(String name) {
+        String fen = FENS.get(name);
+        if (fen == null) {
+            throw new IllegalArgumentException("unknown position " + name + ", expected one of " + FENS.keySet());
+        }
+        return fen;
+    }
+}
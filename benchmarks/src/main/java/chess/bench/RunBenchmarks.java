@@ -0,0 +1,28 @@
+package chess.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks and writes the results as JSON, to keep as a baseline
+ * and compare later runs against with CompareResults.
+ * <p>
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options]
+ * <p>
+ * Without -rff the results go to benchmarks.json. Every other option is passed
+ * on to JMH, e.g. "BoardBenchmark.generate" to run only the move generation
+ * benchmarks, or -h for the full list.
+ */
+public class RunBenchmarks {
+    
+    public static final String DEFAULT_RESULT_FILE = "benchmarks.json";
+    
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rff")) {
+            jmhArgs.addAll(Arrays.asList("-rf", "json", "-rff", DEFAULT_RESULT_FILE));
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}